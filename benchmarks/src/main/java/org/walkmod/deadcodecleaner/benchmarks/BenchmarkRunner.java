@@ -0,0 +1,33 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that the allocation rate is
+ * reported next to the throughput. Accepts the JMH command line options.
+ */
+public class BenchmarkRunner {
+
+   public static void main(String[] args) throws Exception {
+      CommandLineOptions options = new CommandLineOptions(args);
+      new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+   }
+}
@@ -0,0 +1,182 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.benchmarks;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.walkmod.deadcodecleaner.visitors.CleanDeadDeclarationsVisitor;
+import org.walkmod.javalang.ast.CompilationUnit;
+import org.walkmod.javalang.test.SemanticTest;
+
+import com.alibaba.fastjson.JSONArray;
+
+/**
+ * Throughput of {@link CleanDeadDeclarationsVisitor} over compilation units
+ * that have already been semantically analyzed. The analysis of each
+ * compilation unit happens in the invocation setup, out of the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CleanDeadDeclarationsBenchmark {
+
+   @Param({ "unusedImports", "deadMethodsCascade", "hugeFieldList", "deepBlocks", "bigExclusionList" })
+   private String scenario;
+
+   @Param({ "100", "1000" })
+   private int size;
+
+   private Compiler compiler;
+
+   private String[] sources;
+
+   private JSONArray exclusions;
+
+   private CompilationUnit cu;
+
+   private CleanDeadDeclarationsVisitor<Object> visitor;
+
+   @Setup(Level.Trial)
+   public void prepare() throws Exception {
+      compiler = new Compiler();
+      compiler.prepare();
+      if ("unusedImports".equals(scenario)) {
+         sources = unusedImports(size);
+      } else if ("deadMethodsCascade".equals(scenario)) {
+         sources = new String[] { deadMethodsCascade(size) };
+      } else if ("hugeFieldList".equals(scenario)) {
+         sources = new String[] { hugeFieldList(size) };
+      } else if ("deepBlocks".equals(scenario)) {
+         sources = new String[] { deepBlocks(size) };
+      } else if ("bigExclusionList".equals(scenario)) {
+         sources = new String[] { unusedMethods(size) };
+         exclusions = exclusionList(size);
+      } else {
+         throw new IllegalArgumentException("Unknown scenario " + scenario);
+      }
+   }
+
+   @Setup(Level.Invocation)
+   public void analyze() throws Exception {
+      cu = compiler.compile(sources);
+      visitor = new CleanDeadDeclarationsVisitor<Object>();
+      if (exclusions != null) {
+         visitor.setExcludedMethods(exclusions);
+      }
+   }
+
+   @TearDown(Level.Trial)
+   public void clean() throws Exception {
+      compiler.clean();
+   }
+
+   @Benchmark
+   public CompilationUnit cleanDeadDeclarations() {
+      cu.accept(visitor, null);
+      return cu;
+   }
+
+   static String[] unusedImports(int size) {
+      StringBuilder main = new StringBuilder("package bench; ");
+      StringBuilder types = new StringBuilder("package bench.types; public class Types { ");
+      for (int i = 0; i < size; i++) {
+         main.append("import bench.types.Types.T").append(i).append("; ");
+         types.append("public static class T").append(i).append(" {} ");
+      }
+      main.append("public class Foo { public Object bar() { return new T0(); } }");
+      types.append("}");
+      return new String[] { main.toString(), types.toString() };
+   }
+
+   static String deadMethodsCascade(int size) {
+      StringBuilder code = new StringBuilder("public class Foo { ");
+      for (int i = 0; i < size; i++) {
+         code.append("private int m").append(i).append("() { return ");
+         code.append(i + 1 < size ? "m" + (i + 1) + "()" : "0").append("; } ");
+      }
+      return code.append("}").toString();
+   }
+
+   static String unusedMethods(int size) {
+      StringBuilder code = new StringBuilder("public class Foo { ");
+      for (int i = 0; i < size; i++) {
+         code.append("private void m").append(i).append("() {} ");
+      }
+      return code.append("}").toString();
+   }
+
+   static String hugeFieldList(int size) {
+      StringBuilder code = new StringBuilder("public class Foo { ");
+      StringBuilder reads = new StringBuilder("public int sum() { return 0");
+      for (int i = 0; i < size; i++) {
+         code.append("private int f").append(i).append(" = ").append(i).append("; ");
+         if (i % 2 == 0) {
+            reads.append(" + f").append(i);
+         }
+      }
+      return code.append(reads).append("; } }").toString();
+   }
+
+   static String deepBlocks(int size) {
+      // five dead locals per level, to keep the parser recursion bounded
+      int depth = Math.max(size / 5, 1);
+      StringBuilder code = new StringBuilder("public class Foo { public int bar(int x) { ");
+      for (int i = 0; i < depth; i++) {
+         for (int j = 0; j < 5; j++) {
+            code.append("int v").append(i).append('_').append(j).append(" = x; ");
+         }
+         code.append("if (x > ").append(i).append(") { ");
+      }
+      code.append("x++; ");
+      for (int i = 0; i < depth; i++) {
+         code.append("} ");
+      }
+      return code.append("return x; } }").toString();
+   }
+
+   static JSONArray exclusionList(int size) {
+      List<Object> links = new LinkedList<Object>();
+      for (int i = 0; i < size * 10; i++) {
+         links.add("bench.Callbacks" + (i % 50) + "#on" + i + "(java.lang.String)");
+      }
+      for (int i = 0; i < size; i += 10) {
+         // excluded methods of the benchmarked class
+         links.add("Foo#m" + i + "()");
+      }
+      return new JSONArray(links);
+   }
+
+   static class Compiler extends SemanticTest {
+   }
+}
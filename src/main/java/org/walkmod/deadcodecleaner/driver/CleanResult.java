@@ -0,0 +1,100 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.driver;
+
+import org.walkmod.javalang.ast.CompilationUnit;
+
+public class CleanResult {
+
+   private final String name;
+
+   private final CompilationUnit compilationUnit;
+
+   private final Throwable error;
+
+   private final boolean cached;
+
+   private final boolean partial;
+
+   private final boolean skipped;
+
+   public CleanResult(String name, CompilationUnit compilationUnit, Throwable error) {
+      this(name, compilationUnit, error, false);
+   }
+
+   public CleanResult(String name, CompilationUnit compilationUnit, Throwable error, boolean cached) {
+      this(name, compilationUnit, error, cached, false);
+   }
+
+   public CleanResult(String name, CompilationUnit compilationUnit, Throwable error, boolean cached,
+         boolean partial) {
+      this(name, compilationUnit, error, cached, partial, false);
+   }
+
+   public CleanResult(String name, CompilationUnit compilationUnit, Throwable error, boolean cached,
+         boolean partial, boolean skipped) {
+      this.name = name;
+      this.compilationUnit = compilationUnit;
+      this.error = error;
+      this.cached = cached;
+      this.partial = partial;
+      this.skipped = skipped;
+   }
+
+   public String getName() {
+      return name;
+   }
+
+   /**
+    * @return the cleaned compilation unit, or null if it has failed or it has
+    *         not been loaded because of the cache or the candidate filter
+    */
+   public CompilationUnit getCompilationUnit() {
+      return compilationUnit;
+   }
+
+   public Throwable getError() {
+      return error;
+   }
+
+   /**
+    * @return if the source was at its fixpoint according to the cache, so it
+    *         has been neither parsed nor cleaned
+    */
+   public boolean isCached() {
+      return cached;
+   }
+
+   /**
+    * @return if the cleanup has been stopped by a budget, so the compilation
+    *         unit is consistent but may still contain dead code
+    */
+   public boolean isPartial() {
+      return partial;
+   }
+
+   /**
+    * @return if the source had nothing that the cleaner could remove, so it
+    *         has been parsed but neither analyzed nor cleaned
+    */
+   public boolean isSkipped() {
+      return skipped;
+   }
+
+   public boolean isSuccessful() {
+      return error == null;
+   }
+}
@@ -0,0 +1,164 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.driver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.walkmod.deadcodecleaner.visitors.CleanerConfiguration;
+
+/**
+ * On-disk record of the sources that were already at their fixpoint: the
+ * cleaner did not remove anything from them. A source is identified by the
+ * SHA-256 of its content, the classpath and the configuration of the
+ * cleaner, so any change in them misses the cache. The file has one
+ * hexadecimal key per line and new keys are appended by {@link #save()}.
+ */
+public class FixpointCache {
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   private static final String VERSION = "1";
+
+   private final File file;
+
+   private final byte[] environment;
+
+   private final Set<String> keys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+   private final Queue<String> added = new ConcurrentLinkedQueue<String>();
+
+   public FixpointCache(File file, List<File> classpath, CleanerConfiguration configuration) throws IOException {
+      this.file = file;
+      String env = VERSION + '\n' + getFingerprint(classpath) + '\n' + configuration.getFingerprint() + '\n';
+      this.environment = env.getBytes(UTF8);
+      if (file.exists()) {
+         BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+         try {
+            String line = reader.readLine();
+            while (line != null) {
+               if (line.length() > 0) {
+                  keys.add(line);
+               }
+               line = reader.readLine();
+            }
+         } finally {
+            reader.close();
+         }
+      }
+   }
+
+   public String getKey(byte[] source) {
+      MessageDigest digest = newDigest();
+      digest.update(environment);
+      byte[] hash = digest.digest(source);
+      StringBuilder sb = new StringBuilder(hash.length * 2);
+      for (byte b : hash) {
+         sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return sb.toString();
+   }
+
+   public boolean isAtFixpoint(String key) {
+      return keys.contains(key);
+   }
+
+   public void record(String key) {
+      if (keys.add(key)) {
+         added.add(key);
+      }
+   }
+
+   /**
+    * Appends the keys recorded since the last save.
+    */
+   public void save() throws IOException {
+      if (added.isEmpty()) {
+         return;
+      }
+      File parent = file.getAbsoluteFile().getParentFile();
+      if (parent != null && !parent.exists() && !parent.mkdirs()) {
+         throw new IOException("Unable to create " + parent);
+      }
+      Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF8));
+      try {
+         String key = added.poll();
+         while (key != null) {
+            writer.write(key);
+            writer.write('\n');
+            key = added.poll();
+         }
+      } finally {
+         writer.close();
+      }
+   }
+
+   /**
+    * Path, size and modification time of each classpath entry, and of each
+    * file inside the directories.
+    */
+   static String getFingerprint(List<File> classpath) {
+      StringBuilder sb = new StringBuilder();
+      if (classpath != null) {
+         for (File entry : classpath) {
+            appendFingerprint(entry, sb);
+         }
+      }
+      return sb.toString();
+   }
+
+   private static void appendFingerprint(File file, StringBuilder sb) {
+      if (file.isDirectory()) {
+         File[] children = file.listFiles();
+         if (children != null) {
+            List<File> sorted = new ArrayList<File>(Arrays.asList(children));
+            Collections.sort(sorted);
+            for (File child : sorted) {
+               appendFingerprint(child, sb);
+            }
+         }
+      } else {
+         sb.append(file.getPath()).append(':').append(file.length()).append(':').append(file.lastModified())
+               .append(';');
+      }
+   }
+
+   private static MessageDigest newDigest() {
+      try {
+         return MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException("SHA-256 is not available", e);
+      }
+   }
+}
@@ -0,0 +1,505 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.driver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.walkmod.deadcodecleaner.visitors.CleanerConfiguration;
+import org.walkmod.deadcodecleaner.visitors.EntryPoints;
+import org.walkmod.deadcodecleaner.visitors.IndexSegment;
+
+/**
+ * On-disk store of the index segments of the sources of a project, so that
+ * the sources that have not changed do not need to be analyzed again to
+ * build the project index. The file starts with a header with the format
+ * version and the SHA-256 of the classpath, the configuration and the entry
+ * points, and any change in them discards the stored segments. Then it has
+ * an append-only log of records, each one with its length and CRC-32: a
+ * segment with the name of its source, the SHA-256 of its content and the
+ * signature of the project it was extracted from, or a tombstone of a
+ * removed source. Only the last record of each name is live.
+ * <p>
+ * Opening the store only reads the headers of the records, and the segments
+ * are read from a memory mapping of the file when they are requested. A run
+ * that crashes can only leave an incomplete record at the end of the log,
+ * which is discarded on the next open. The log is rewritten without the dead
+ * records by {@link #compact()}, into a temporary file that atomically
+ * replaces the store. The file is never truncated or replaced while this
+ * store maps it, because Windows does not allow it. If the store can not be
+ * replaced yet, the compacted file is kept aside and moved over the store
+ * when it is opened again, unless a record is appended to the store first.
+ * The store is never overwritten in place.
+ */
+public class IndexStore implements Closeable {
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   private static final int MAGIC = 0x57444349;
+
+   private static final int VERSION = 1;
+
+   private static final int HEADER = 4 + 4 + 32;
+
+   private static final byte SEGMENT = 1;
+
+   private static final byte TOMBSTONE = 0;
+
+   private final File file;
+
+   private final File pending;
+
+   private final byte[] environment;
+
+   private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+   private FileChannel channel;
+
+   private MappedByteBuffer mapping;
+
+   private long size;
+
+   private long live;
+
+   private boolean hasPending;
+
+   public IndexStore(File file, List<File> classpath, CleanerConfiguration configuration, EntryPoints entryPoints)
+         throws IOException {
+      this.file = file;
+      String env = FixpointCache.getFingerprint(classpath) + '\n' + configuration.getFingerprint() + '\n'
+            + entryPoints.getFingerprint() + '\n';
+      this.environment = newDigest().digest(env.getBytes(UTF8));
+      this.pending = new File(file.getPath() + ".compact");
+      if (pending.isFile()) {
+         try {
+            move(pending, file);
+         } catch (FileSystemException e) {
+            // the store is still mapped by another run, so it is moved later
+            hasPending = true;
+         }
+      }
+      if (!hasHeader()) {
+         create();
+      }
+      open();
+   }
+
+   /**
+    * SHA-256 of the content of a source.
+    */
+   public static byte[] getKey(byte[] content) {
+      return newDigest().digest(content);
+   }
+
+   /**
+    * @return the signature of the segment stored for the source, or null if
+    *         there is none for the same content
+    */
+   public synchronized Long getSignature(String name, byte[] key) {
+      Entry entry = entries.get(name);
+      return entry != null && Arrays.equals(entry.key, key) ? entry.signature : null;
+   }
+
+   public synchronized Set<String> getNames() {
+      return new HashSet<String>(entries.keySet());
+   }
+
+   /**
+    * @param project
+    *           signature of the whole project, which must be the same as the
+    *           one of the project from which the segment was extracted
+    * @return the segment stored for the source, or null if there is none for
+    *         the same content and project signature or it is corrupted
+    */
+   public synchronized IndexSegment get(String name, byte[] key, long project) throws IOException {
+      Entry entry = entries.get(name);
+      if (entry == null || !Arrays.equals(entry.key, key) || entry.project != project) {
+         return null;
+      }
+      if (entry.offset + entry.length > mapping.capacity()) {
+         mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+      ByteBuffer buffer = mapping.duplicate();
+      if (!entry.verified) {
+         if (!isValid(buffer, entry.offset)) {
+            return null;
+         }
+         entry.verified = true;
+      }
+      buffer.position(entry.segment);
+      buffer.limit((int) (entry.offset + entry.length));
+      try {
+         return IndexSegment.read(buffer);
+      } catch (IllegalArgumentException e) {
+         return null;
+      }
+   }
+
+   public synchronized void put(String name, byte[] key, long project, IndexSegment segment) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeByte(SEGMENT);
+      writeName(name, out);
+      out.write(key);
+      out.writeLong(project);
+      segment.write(out);
+      out.flush();
+      Entry entry = new Entry(key, project, segment.getSignature());
+      append(name, bytes.toByteArray(), entry);
+   }
+
+   public synchronized void remove(String name) throws IOException {
+      if (entries.containsKey(name)) {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         DataOutputStream out = new DataOutputStream(bytes);
+         out.writeByte(TOMBSTONE);
+         writeName(name, out);
+         out.flush();
+         append(name, bytes.toByteArray(), null);
+      }
+   }
+
+   /**
+    * Bytes of the records that are no longer live.
+    */
+   public synchronized long getDeadBytes() {
+      return size - HEADER - live;
+   }
+
+   /**
+    * Rewrites the store without the dead records, if they take more space
+    * than the live ones. If the file can not be replaced, because a mapping
+    * of it has not been released yet, the store keeps the dead records and
+    * the rewritten file replaces it when the store is opened again.
+    *
+    * @return if the store has been rewritten
+    */
+   public synchronized boolean compact() throws IOException {
+      if (getDeadBytes() <= live) {
+         return false;
+      }
+      File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+      Map<Entry, Long> offsets = new HashMap<Entry, Long>();
+      RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+      try {
+         FileChannel target = raf.getChannel();
+         target.write(header(), 0);
+         long position = HEADER;
+         for (Entry entry : entries.values()) {
+            long copied = 0;
+            while (copied < entry.length) {
+               copied += channel.transferTo(entry.offset + copied, entry.length - copied, target.position(position
+                     + copied));
+            }
+            offsets.put(entry, position);
+            position += entry.length;
+         }
+         target.force(true);
+      } finally {
+         raf.close();
+      }
+      // only a complete file is kept aside
+      try {
+         move(temp, pending);
+      } catch (IOException e) {
+         if (!temp.delete()) {
+            temp.deleteOnExit();
+         }
+         throw e;
+      }
+      hasPending = true;
+      mapping = null;
+      channel.close();
+      try {
+         move(pending, file);
+         hasPending = false;
+      } catch (FileSystemException e) {
+         // Windows does not rename over a file until its mappings are collected
+         open();
+         return false;
+      }
+      for (Map.Entry<Entry, Long> offset : offsets.entrySet()) {
+         Entry entry = offset.getKey();
+         entry.segment += offset.getValue() - entry.offset;
+         entry.offset = offset.getValue();
+      }
+      open();
+      return true;
+   }
+
+   public synchronized void flush() throws IOException {
+      channel.force(false);
+   }
+
+   @Override
+   public synchronized void close() throws IOException {
+      if (channel.isOpen()) {
+         channel.force(false);
+         channel.close();
+      }
+      mapping = null;
+   }
+
+   private void append(String name, byte[] payload, Entry entry) throws IOException {
+      if (hasPending) {
+         // the file kept aside would lose this record
+         if (pending.exists() && !pending.delete()) {
+            throw new IOException("Unable to delete " + pending);
+         }
+         hasPending = false;
+      }
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+      ByteBuffer record = ByteBuffer.allocate(8 + payload.length);
+      record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+      long offset = size;
+      while (record.hasRemaining()) {
+         channel.write(record, offset + record.position());
+      }
+      size += record.capacity();
+      Entry previous = entry != null ? entries.put(name, entry) : entries.remove(name);
+      if (previous != null) {
+         live -= previous.length;
+      }
+      if (entry != null) {
+         entry.offset = offset;
+         entry.length = record.capacity();
+         entry.segment = (int) (offset + 8 + 1 + 4 + name.getBytes(UTF8).length + 32 + 8);
+         entry.verified = true;
+         live += entry.length;
+      }
+   }
+
+   private boolean hasHeader() throws IOException {
+      if (!file.isFile() || file.length() < HEADER) {
+         return false;
+      }
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         ByteBuffer header = ByteBuffer.allocate(HEADER);
+         raf.readFully(header.array());
+         return header.equals(header());
+      } finally {
+         raf.close();
+      }
+   }
+
+   private ByteBuffer header() {
+      ByteBuffer header = ByteBuffer.allocate(HEADER);
+      header.putInt(MAGIC).putInt(VERSION).put(environment).flip();
+      return header;
+   }
+
+   /**
+    * Replaces the file, if any, by an empty store.
+    */
+   private void create() throws IOException {
+      File parent = file.getAbsoluteFile().getParentFile();
+      if (parent != null && !parent.exists() && !parent.mkdirs()) {
+         throw new IOException("Unable to create " + parent);
+      }
+      File temp = File.createTempFile(file.getName(), ".tmp", parent);
+      RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+      try {
+         raf.getChannel().write(header(), 0);
+         raf.getChannel().force(true);
+      } finally {
+         raf.close();
+      }
+      try {
+         move(temp, file);
+      } catch (IOException e) {
+         if (!temp.delete()) {
+            temp.deleteOnExit();
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * Renames the file over the target, atomically if the file system can.
+    */
+   static void move(File source, File target) throws IOException {
+      try {
+         Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+               StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+         Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+   }
+
+   /**
+    * Reads the headers of the records and maps the file. Only the CRC of the
+    * last record is checked, because a crash can only leave the last one
+    * incomplete; the others are checked once they are read. An incomplete
+    * record is truncated before the file is mapped.
+    */
+   @SuppressWarnings("resource")
+   private void open() throws IOException {
+      channel = new RandomAccessFile(file, "rw").getChannel();
+      size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+         channel.close();
+         throw new IOException("The index store " + file + " is too big");
+      }
+      boolean reload = entries.isEmpty();
+      List<Long> records = new ArrayList<Long>();
+      ByteBuffer length = ByteBuffer.allocate(4);
+      long position = HEADER;
+      while (position + 8 < size) {
+         read(length, position);
+         if (length.getInt(0) < 1 || position + 8 + length.getInt(0) > size) {
+            break;
+         }
+         records.add(position);
+         position += 8 + length.getInt(0);
+      }
+      if (!records.isEmpty()) {
+         long last = records.get(records.size() - 1);
+         ByteBuffer record = ByteBuffer.allocate((int) (position - last));
+         read(record, last);
+         if (!isValid(record, 0)) {
+            position = records.remove(records.size() - 1);
+         }
+      }
+      if (position < size) {
+         channel.truncate(position);
+         channel.force(true);
+         size = position;
+      }
+      mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      if (reload) {
+         live = 0;
+         for (Long offset : records) {
+            scan(offset);
+         }
+      }
+   }
+
+   private void read(ByteBuffer buffer, long position) throws IOException {
+      buffer.clear();
+      while (buffer.hasRemaining()) {
+         if (channel.read(buffer, position + buffer.position()) < 0) {
+            throw new IOException("Unexpected end of " + file);
+         }
+      }
+   }
+
+   private void scan(long offset) {
+      ByteBuffer buffer = mapping.duplicate();
+      int length = buffer.getInt((int) offset);
+      buffer.position((int) offset + 8);
+      try {
+         byte type = buffer.get();
+         byte[] name = new byte[buffer.getInt()];
+         buffer.get(name);
+         Entry entry = null;
+         if (type == SEGMENT) {
+            entry = new Entry(new byte[32], 0, 0);
+            buffer.get(entry.key);
+            entry.project = buffer.getLong();
+            entry.segment = buffer.position();
+            entry.signature = buffer.getLong();
+            entry.offset = offset;
+            entry.length = 8 + length;
+            live += entry.length;
+         }
+         String key = new String(name, UTF8);
+         Entry previous = entry != null ? entries.put(key, entry) : entries.remove(key);
+         if (previous != null) {
+            live -= previous.length;
+         }
+      } catch (RuntimeException e) {
+         // a corrupted record is dead, and the next one is still readable
+      }
+   }
+
+   private static boolean isValid(ByteBuffer buffer, long offset) {
+      int length = buffer.getInt((int) offset);
+      int expected = buffer.getInt((int) offset + 4);
+      buffer.position((int) offset + 8);
+      CRC32 crc = new CRC32();
+      byte[] chunk = new byte[Math.min(length, 8192)];
+      int remaining = length;
+      while (remaining > 0) {
+         int read = Math.min(remaining, chunk.length);
+         buffer.get(chunk, 0, read);
+         crc.update(chunk, 0, read);
+         remaining -= read;
+      }
+      return (int) crc.getValue() == expected;
+   }
+
+   private static void writeName(String name, DataOutputStream out) throws IOException {
+      byte[] utf8 = name.getBytes(UTF8);
+      out.writeInt(utf8.length);
+      out.write(utf8);
+   }
+
+   private static MessageDigest newDigest() {
+      try {
+         return MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+         throw new IllegalStateException("SHA-256 is not available", e);
+      }
+   }
+
+   private static class Entry {
+
+      private final byte[] key;
+
+      private long project;
+
+      private long signature;
+
+      private long offset;
+
+      private int length;
+
+      // absolute position of the segment
+      private int segment;
+
+      private boolean verified;
+
+      public Entry(byte[] key, long project, long signature) {
+         this.key = key;
+         this.project = project;
+         this.signature = signature;
+      }
+   }
+}
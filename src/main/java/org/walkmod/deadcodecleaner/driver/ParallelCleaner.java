@@ -0,0 +1,285 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.driver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.walkmod.deadcodecleaner.metrics.CleanerStatistics;
+import org.walkmod.deadcodecleaner.metrics.CleanupMetrics;
+import org.walkmod.deadcodecleaner.report.SourceEdit;
+import org.walkmod.deadcodecleaner.visitors.CandidateFilter;
+import org.walkmod.deadcodecleaner.visitors.CleanDeadDeclarationsVisitor;
+import org.walkmod.deadcodecleaner.visitors.CleanerConfiguration;
+import org.walkmod.deadcodecleaner.visitors.ImportCleaner;
+import org.walkmod.javalang.ast.CompilationUnit;
+
+/**
+ * Cleans many compilation units over a work stealing pool. The configured
+ * visitor is shared, because each run keeps its state apart and the removals
+ * of a compilation unit only affect its private and local declarations. The
+ * results are returned in the order of the sources and the failure of a
+ * source does not stop the others. When only the imports are removed, the
+ * sources are just parsed with their own encoding, and only the ones with
+ * wildcard imports are loaded with their semantic analysis.
+ */
+public class ParallelCleaner {
+
+   private final CleanDeadDeclarationsVisitor<?> visitor;
+
+   private final int parallelism;
+
+   private FixpointCache cache;
+
+   private boolean candidateFilter = false;
+
+   public ParallelCleaner(CleanDeadDeclarationsVisitor<?> visitor) {
+      this(visitor, Runtime.getRuntime().availableProcessors());
+   }
+
+   public ParallelCleaner(CleanDeadDeclarationsVisitor<?> visitor, int parallelism) {
+      if (parallelism < 1) {
+         throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+      }
+      this.visitor = visitor;
+      this.parallelism = parallelism;
+   }
+
+   public FixpointCache getCache() {
+      return cache;
+   }
+
+   /**
+    * Sources found in the cache are skipped, and the sources without
+    * removals are recorded in it and saved at the end of each
+    * {@link #clean(List)}.
+    */
+   public void setCache(FixpointCache cache) {
+      this.cache = cache;
+   }
+
+   public boolean isCandidateFilter() {
+      return candidateFilter;
+   }
+
+   /**
+    * Parses each source before loading it, and skips the ones that have
+    * nothing that the cleaner could remove, without their semantic analysis.
+    * The filter is not applied when the visitor has a project index.
+    */
+   public void setCandidateFilter(boolean candidateFilter) {
+      this.candidateFilter = candidateFilter;
+   }
+
+   public List<CleanResult> clean(List<? extends SourceUnit> sources) throws IOException {
+      CleanResult[] results = new CleanResult[sources.size()];
+      if (results.length > 0) {
+         ForkJoinPool pool = new ForkJoinPool(parallelism);
+         try {
+            CandidateFilter filter = null;
+            if (candidateFilter && visitor.getProjectIndex() == null) {
+               filter = new CandidateFilter(visitor.getConfiguration());
+            }
+            ImportCleaner importCleaner = isImportsOnly() ? new ImportCleaner() : null;
+            pool.invoke(new CleanTask(new ArrayList<SourceUnit>(sources), filter, importCleaner, results, 0,
+                  results.length));
+         } finally {
+            pool.shutdown();
+         }
+         if (cache != null) {
+            cache.save();
+         }
+      }
+      return Arrays.asList(results);
+   }
+
+   /**
+    * Runs the analysis of {@link #clean(List)} without modifying the
+    * compilation units, and collects the edits of the sources that have dead
+    * code. The sources that can not be loaded or analyzed are recorded as
+    * failures of the plan.
+    */
+   public RemovalPlan plan(List<? extends SourceUnit> sources) {
+      RemovalPlan plan = new RemovalPlan();
+      if (!sources.isEmpty()) {
+         ForkJoinPool pool = new ForkJoinPool(parallelism);
+         try {
+            pool.invoke(new PlanTask(new ArrayList<SourceUnit>(sources), plan, 0, sources.size()));
+         } finally {
+            pool.shutdown();
+         }
+      }
+      return plan;
+   }
+
+   void plan(SourceUnit source, RemovalPlan plan) {
+      try {
+         byte[] content = source.getContent();
+         CompilationUnit cu = source.load();
+         if (cu != null) {
+            List<SourceEdit> edits = visitor.plan(cu);
+            if (!edits.isEmpty()) {
+               plan.add(source.getName(), content, edits);
+            }
+         }
+      } catch (Exception e) {
+         plan.addFailure(source.getName(), e);
+      } catch (StackOverflowError e) {
+         plan.addFailure(source.getName(), e);
+      }
+   }
+
+   /**
+    * If the cleaner only removes imports, which can be done without the
+    * semantic analysis, and does not fold the constant conditions, which
+    * needs it to find the values of the fields.
+    */
+   private boolean isImportsOnly() {
+      CleanerConfiguration configuration = visitor.getConfiguration();
+      return configuration.isRemoveUnusedImports() && !configuration.isRemoveUnusedVariables()
+            && !configuration.isRemoveUnusedClasses() && !configuration.isRemoveUnusedInterfaces()
+            && !configuration.isRemoveUnusedEnumerations() && !configuration.isRemoveUnusedAnnotationTypes()
+            && !configuration.isRemoveUnusedMethods() && !configuration.isRemoveUnusedFields()
+            && !configuration.isFoldConstantConditions() && !configuration.isReportOnly()
+            && visitor.getProjectIndex() == null;
+   }
+
+   /**
+    * @param importCleaner
+    *           cleaner of the imports of the sources that do not need the
+    *           semantic analysis, or null to always load the sources
+    */
+   CleanResult clean(SourceUnit source, CandidateFilter filter, ImportCleaner importCleaner) {
+      CompilationUnit cu = null;
+      boolean partial = false;
+      try {
+         String key = null;
+         if (cache != null) {
+            key = cache.getKey(source.getContent());
+            if (cache.isAtFixpoint(key)) {
+               return new CleanResult(source.getName(), null, null, true);
+            }
+         }
+         // parsed once for the import cleaner and the filter
+         CompilationUnit parsed = importCleaner != null || filter != null ? source.parse() : null;
+         if (importCleaner != null && !importCleaner.hasAmbiguousImports(parsed)) {
+            if (importCleaner.clean(parsed) == 0 && key != null) {
+               cache.record(key);
+            }
+            return new CleanResult(source.getName(), parsed, null);
+         }
+         if (filter != null && !filter.hasCandidates(parsed)) {
+            CleanerStatistics statistics = visitor.getStatistics();
+            if (statistics != null) {
+               statistics.skipped();
+            }
+            if (key != null) {
+               cache.record(key);
+            }
+            return new CleanResult(source.getName(), null, null, false, false, true);
+         }
+         cu = source.load();
+         if (cu != null) {
+            CleanupMetrics metrics = visitor.measure(cu);
+            partial = metrics.isPartial();
+            if (!partial && metrics.getRemovals() == 0 && key != null) {
+               cache.record(key);
+            }
+         }
+      } catch (Exception e) {
+         return new CleanResult(source.getName(), null, e);
+      } catch (StackOverflowError e) {
+         return new CleanResult(source.getName(), null, e);
+      }
+      return new CleanResult(source.getName(), cu, null, false, partial);
+   }
+
+   /**
+    * Splits the range of sources in halves, so that idle workers steal the
+    * pending halves of the busy ones.
+    */
+   private class CleanTask extends RecursiveAction {
+
+      private static final long serialVersionUID = 1L;
+
+      private final List<SourceUnit> sources;
+
+      private final CandidateFilter filter;
+
+      private final ImportCleaner importCleaner;
+
+      private final CleanResult[] results;
+
+      private final int from;
+
+      private final int to;
+
+      public CleanTask(List<SourceUnit> sources, CandidateFilter filter, ImportCleaner importCleaner,
+            CleanResult[] results, int from, int to) {
+         this.sources = sources;
+         this.filter = filter;
+         this.importCleaner = importCleaner;
+         this.results = results;
+         this.from = from;
+         this.to = to;
+      }
+
+      @Override
+      protected void compute() {
+         if (to - from == 1) {
+            results[from] = clean(sources.get(from), filter, importCleaner);
+         } else {
+            int middle = (from + to) >>> 1;
+            invokeAll(new CleanTask(sources, filter, importCleaner, results, from, middle), new CleanTask(sources,
+                  filter, importCleaner, results, middle, to));
+         }
+      }
+   }
+
+   private class PlanTask extends RecursiveAction {
+
+      private static final long serialVersionUID = 1L;
+
+      private final List<SourceUnit> sources;
+
+      private final RemovalPlan plan;
+
+      private final int from;
+
+      private final int to;
+
+      public PlanTask(List<SourceUnit> sources, RemovalPlan plan, int from, int to) {
+         this.sources = sources;
+         this.plan = plan;
+         this.from = from;
+         this.to = to;
+      }
+
+      @Override
+      protected void compute() {
+         if (to - from == 1) {
+            plan(sources.get(from), plan);
+         } else {
+            int middle = (from + to) >>> 1;
+            invokeAll(new PlanTask(sources, plan, from, middle), new PlanTask(sources, plan, middle, to));
+         }
+      }
+   }
+}
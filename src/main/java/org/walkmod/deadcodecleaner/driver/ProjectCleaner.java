@@ -0,0 +1,303 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.driver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.walkmod.deadcodecleaner.visitors.CleanDeadDeclarationsVisitor;
+import org.walkmod.deadcodecleaner.visitors.EntryPoints;
+import org.walkmod.deadcodecleaner.visitors.IndexSegment;
+import org.walkmod.deadcodecleaner.visitors.ProjectIndex;
+import org.walkmod.javalang.ast.CompilationUnit;
+
+/**
+ * Cleans all the compilation units of a closed project, also removing the
+ * types and members of any visibility that are not reachable from the entry
+ * points. The sources are loaded twice: first to index their declarations and
+ * references, and then to clean them with the solved index. If any source
+ * can not be indexed, the project index is not used and only the private and
+ * local declarations are cleaned.
+ * <p>
+ * With an {@link IndexStore}, the index segments of the sources whose content
+ * has not changed are read from the store instead of analyzing the sources
+ * again. The references of a source depend on the declarations of the other
+ * ones, so a stored segment is only reused if it was extracted from a project
+ * with the same signature: the same sources, declaring the same non private
+ * types and members.
+ */
+public class ProjectCleaner {
+
+   private final CleanDeadDeclarationsVisitor<?> visitor;
+
+   private final EntryPoints entryPoints;
+
+   private final int parallelism;
+
+   private IndexStore indexStore;
+
+   private volatile ProjectIndex projectIndex;
+
+   public ProjectCleaner(CleanDeadDeclarationsVisitor<?> visitor, EntryPoints entryPoints) {
+      this(visitor, entryPoints, Runtime.getRuntime().availableProcessors());
+   }
+
+   public ProjectCleaner(CleanDeadDeclarationsVisitor<?> visitor, EntryPoints entryPoints, int parallelism) {
+      if (parallelism < 1) {
+         throw new IllegalArgumentException("Invalid parallelism " + parallelism);
+      }
+      this.visitor = visitor;
+      this.entryPoints = entryPoints;
+      this.parallelism = parallelism;
+   }
+
+   public IndexStore getIndexStore() {
+      return indexStore;
+   }
+
+   /**
+    * Store that keeps the index segments between runs, or null to analyze
+    * all the sources on each run. The store is updated, compacted if needed
+    * and flushed by {@link #clean(List)}, but never closed.
+    */
+   public void setIndexStore(IndexStore indexStore) {
+      this.indexStore = indexStore;
+   }
+
+   /**
+    * @return the index of the last {@link #clean(List)}, or null if it could
+    *         not be built
+    */
+   public ProjectIndex getProjectIndex() {
+      return projectIndex;
+   }
+
+   public List<CleanResult> clean(List<? extends SourceUnit> sources) throws IOException {
+      Indexing indexing = new Indexing(new ArrayList<SourceUnit>(sources),
+            new ProjectIndex(entryPoints, visitor.getConfiguration()), indexStore);
+      if (!sources.isEmpty()) {
+         ForkJoinPool pool = new ForkJoinPool(parallelism);
+         try {
+            pool.invoke(new IndexTask(indexing, false, 0, sources.size()));
+            if (indexStore != null) {
+               indexing.project = indexing.getProjectSignature();
+               pool.invoke(new IndexTask(indexing, true, 0, sources.size()));
+            }
+         } finally {
+            pool.shutdown();
+         }
+      }
+      if (indexStore != null) {
+         indexing.save();
+      }
+      ProjectIndex index = indexing.index;
+      AtomicBoolean complete = indexing.complete;
+      CleanDeadDeclarationsVisitor<Object> runVisitor = new CleanDeadDeclarationsVisitor<Object>(
+            visitor.getConfiguration());
+      runVisitor.setFindingListener(visitor.getFindingListener());
+      runVisitor.setStatistics(visitor.getStatistics());
+      if (complete.get()) {
+         index.solve();
+         runVisitor.setProjectIndex(index);
+         projectIndex = index;
+      } else {
+         projectIndex = null;
+      }
+      return new ParallelCleaner(runVisitor, parallelism).clean(sources);
+   }
+
+   /**
+    * State of the indexing of the sources, shared by its tasks.
+    */
+   private static class Indexing {
+
+      private final List<SourceUnit> sources;
+
+      private final ProjectIndex index;
+
+      private final IndexStore store;
+
+      private final AtomicBoolean complete = new AtomicBoolean(true);
+
+      // content keys of the sources, when they can be stored
+      private final byte[][] keys;
+
+      private final long[] signatures;
+
+      // if the stored segment of the source has the same content key
+      private final boolean[] stored;
+
+      // segments extracted in this run
+      private final IndexSegment[] extracted;
+
+      private volatile long project;
+
+      public Indexing(List<SourceUnit> sources, ProjectIndex index, IndexStore store) {
+         this.sources = sources;
+         this.index = index;
+         this.store = store;
+         int size = sources.size();
+         keys = new byte[size][];
+         signatures = new long[size];
+         stored = new boolean[size];
+         extracted = new IndexSegment[size];
+      }
+
+      /**
+       * FNV-1a of the names and signatures of all the sources, in name order.
+       */
+      public long getProjectSignature() {
+         Map<String, Long> sorted = new TreeMap<String, Long>();
+         for (int i = 0; i < sources.size(); i++) {
+            sorted.put(sources.get(i).getName(), signatures[i]);
+         }
+         long hash = 0xcbf29ce484222325L;
+         for (Map.Entry<String, Long> entry : sorted.entrySet()) {
+            String name = entry.getKey();
+            for (int i = 0; i < name.length(); i++) {
+               hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+            }
+            long signature = entry.getValue();
+            for (int i = 0; i < 64; i += 8) {
+               hash = (hash ^ ((signature >>> i) & 0xff)) * 0x100000001b3L;
+            }
+         }
+         return hash;
+      }
+
+      /**
+       * Stores the extracted segments and removes the ones of the sources
+       * that no longer exist.
+       */
+      public void save() throws IOException {
+         for (int i = 0; i < sources.size(); i++) {
+            if (extracted[i] != null && keys[i] != null) {
+               store.put(sources.get(i).getName(), keys[i], project, extracted[i]);
+            }
+         }
+         Set<String> removed = store.getNames();
+         for (SourceUnit source : sources) {
+            removed.remove(source.getName());
+         }
+         for (String name : removed) {
+            store.remove(name);
+         }
+         store.compact();
+         store.flush();
+      }
+   }
+
+   /**
+    * Adds the segments of a range of sources to the index. The first pass
+    * analyzes the sources without a stored segment for their content, and
+    * the second one, once the signature of the project is known, adds the
+    * stored segments of the same project signature and analyzes again the
+    * other sources.
+    */
+   private class IndexTask extends RecursiveAction {
+
+      private static final long serialVersionUID = 1L;
+
+      private final Indexing indexing;
+
+      private final boolean reuse;
+
+      private final int from;
+
+      private final int to;
+
+      public IndexTask(Indexing indexing, boolean reuse, int from, int to) {
+         this.indexing = indexing;
+         this.reuse = reuse;
+         this.from = from;
+         this.to = to;
+      }
+
+      @Override
+      protected void compute() {
+         if (to - from == 1) {
+            if (reuse) {
+               reuse(from);
+            } else {
+               index(from);
+            }
+         } else {
+            int middle = (from + to) >>> 1;
+            invokeAll(new IndexTask(indexing, reuse, from, middle), new IndexTask(indexing, reuse, middle, to));
+         }
+      }
+
+      private void index(int i) {
+         SourceUnit source = indexing.sources.get(i);
+         if (indexing.store != null) {
+            try {
+               byte[] key = IndexStore.getKey(source.getContent());
+               Long signature = indexing.store.getSignature(source.getName(), key);
+               indexing.keys[i] = key;
+               if (signature != null) {
+                  indexing.signatures[i] = signature;
+                  indexing.stored[i] = true;
+                  return;
+               }
+            } catch (IOException e) {
+               // the source is indexed, but not stored
+            }
+         }
+         extract(i);
+      }
+
+      private void reuse(int i) {
+         if (indexing.stored[i]) {
+            SourceUnit source = indexing.sources.get(i);
+            IndexSegment segment;
+            try {
+               segment = indexing.store.get(source.getName(), indexing.keys[i], indexing.project);
+            } catch (IOException e) {
+               segment = null;
+            }
+            if (segment != null) {
+               indexing.index.add(segment);
+            } else {
+               extract(i);
+            }
+         }
+      }
+
+      private void extract(int i) {
+         try {
+            CompilationUnit cu = indexing.sources.get(i).load();
+            if (cu != null) {
+               IndexSegment segment = indexing.index.extract(cu);
+               indexing.index.add(segment);
+               indexing.signatures[i] = segment.getSignature();
+               indexing.extracted[i] = segment;
+               return;
+            }
+         } catch (Exception e) {
+            // its references are unknown, so nothing else can be removed
+         } catch (StackOverflowError e) {
+         }
+         indexing.complete.set(false);
+      }
+   }
+}
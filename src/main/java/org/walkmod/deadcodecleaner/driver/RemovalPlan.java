@@ -0,0 +1,336 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.driver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.walkmod.deadcodecleaner.report.SourceEdit;
+
+/**
+ * Edits planned for each source, with the SHA-256 of the content that they
+ * were planned for. A plan is computed once by
+ * {@link ParallelCleaner#plan(List)}, written into a compact binary file, and
+ * applied elsewhere without analyzing the sources again. A plan is rejected
+ * as a whole if any of its sources has changed or is outside of the root
+ * where it is applied. The sources that could not be analyzed are recorded
+ * with their errors, so an incomplete plan can be told apart from a source
+ * without dead code, and it is only applied if the caller accepts it.
+ */
+public class RemovalPlan {
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   private static final int MAGIC = 0x57444350;
+
+   private static final int VERSION = 1;
+
+   private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+   private final Map<String, String> failures = new LinkedHashMap<String, String>();
+
+   public synchronized void add(String name, byte[] content, List<SourceEdit> edits) {
+      entries.put(name, new Entry(IndexStore.getKey(content), new ArrayList<SourceEdit>(edits)));
+   }
+
+   public synchronized Set<String> getNames() {
+      return entries.keySet();
+   }
+
+   public synchronized void addFailure(String name, Throwable error) {
+      failures.put(name, String.valueOf(error));
+   }
+
+   /**
+    * @return the messages of the errors of the sources that could not be
+    *         analyzed, by their names
+    */
+   public synchronized Map<String, String> getFailures() {
+      return new LinkedHashMap<String, String>(failures);
+   }
+
+   /**
+    * @return if all the sources have been analyzed
+    */
+   public synchronized boolean isComplete() {
+      return failures.isEmpty();
+   }
+
+   /**
+    * @return the edits of the source, in the order in which they were found,
+    *         or null if the plan does not modify it
+    */
+   public synchronized List<SourceEdit> getEdits(String name) {
+      Entry entry = entries.get(name);
+      return entry != null ? entry.edits : null;
+   }
+
+   public synchronized boolean isStale(String name, byte[] content) {
+      Entry entry = entries.get(name);
+      return entry != null && !Arrays.equals(entry.key, IndexStore.getKey(content));
+   }
+
+   /**
+    * Sources, relative to the root, whose content is not the planned one.
+    *
+    * @throws IOException
+    *            if any source is outside of the root
+    */
+   public synchronized List<String> getStale(File root) throws IOException {
+      List<String> stale = new ArrayList<String>();
+      for (String name : entries.keySet()) {
+         File file = resolve(root, name);
+         if (!file.isFile() || isStale(name, readContent(file))) {
+            stale.add(name);
+         }
+      }
+      return stale;
+   }
+
+   /**
+    * Patches the sources of a complete plan.
+    *
+    * @see #apply(File, Charset, boolean)
+    */
+   public long apply(File root, Charset charset) throws IOException {
+      return apply(root, charset, false);
+   }
+
+   /**
+    * Patches the sources, relative to the root, once all of them have been
+    * checked against the plan. A patched source that does not parse is left
+    * untouched.
+    *
+    * @param charset
+    *           encoding of the sources
+    * @param incomplete
+    *           if the plan is applied even if some sources could not be
+    *           analyzed
+    * @return the bytes written
+    * @throws IOException
+    *            if the plan is incomplete and it is not accepted, or any
+    *            source has changed since the plan was computed or is outside
+    *            of the root, in which case no source is modified, or if any
+    *            patched source does not parse
+    */
+   public synchronized long apply(File root, Charset charset, boolean incomplete) throws IOException {
+      if (!incomplete && !isComplete()) {
+         throw new IOException("The removal plan is incomplete for " + failures.keySet());
+      }
+      List<String> stale = getStale(root);
+      if (!stale.isEmpty()) {
+         throw new IOException("The removal plan is stale for " + stale);
+      }
+      SourcePatcher patcher = new SourcePatcher(charset);
+      List<String> invalid = new ArrayList<String>();
+      long written = 0;
+      for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+         long bytes = patcher.patch(resolve(root, entry.getKey()), entry.getValue().edits);
+         if (bytes < 0) {
+            invalid.add(entry.getKey());
+         } else {
+            written += bytes;
+         }
+      }
+      if (!invalid.isEmpty()) {
+         throw new IOException("The removal plan does not parse for " + invalid);
+      }
+      return written;
+   }
+
+   /**
+    * Writes the plan with the qualified names of the removed declarations
+    * shared between the edits, and the positions as variable length ints.
+    */
+   public synchronized void write(File file) throws IOException {
+      File parent = file.getAbsoluteFile().getParentFile();
+      if (parent != null && !parent.exists() && !parent.mkdirs()) {
+         throw new IOException("Unable to create " + parent);
+      }
+      Map<String, Integer> symbols = new LinkedHashMap<String, Integer>();
+      for (Entry entry : entries.values()) {
+         for (SourceEdit edit : entry.edits) {
+            if (edit.getSymbol() != null && !symbols.containsKey(edit.getSymbol())) {
+               symbols.put(edit.getSymbol(), symbols.size());
+            }
+         }
+      }
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      try {
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         writeVarInt(symbols.size(), out);
+         for (String symbol : symbols.keySet()) {
+            writeString(symbol, out);
+         }
+         writeVarInt(entries.size(), out);
+         for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            writeString(entry.getKey(), out);
+            out.write(entry.getValue().key);
+            List<SourceEdit> edits = entry.getValue().edits;
+            writeVarInt(edits.size(), out);
+            for (SourceEdit edit : edits) {
+               writeVarInt(edit.getBeginLine(), out);
+               writeVarInt(edit.getBeginColumn(), out);
+               writeVarInt(edit.getEndLine(), out);
+               writeVarInt(edit.getEndColumn(), out);
+               writeString(edit.getReplacement(), out);
+               writeVarInt(edit.getSymbol() != null ? symbols.get(edit.getSymbol()) + 1 : 0, out);
+            }
+         }
+         writeVarInt(failures.size(), out);
+         for (Map.Entry<String, String> failure : failures.entrySet()) {
+            writeString(failure.getKey(), out);
+            writeString(failure.getValue(), out);
+         }
+      } finally {
+         out.close();
+      }
+   }
+
+   public static RemovalPlan read(File file) throws IOException {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+         if (in.readInt() != MAGIC) {
+            throw new IOException("Invalid removal plan " + file);
+         }
+         if (in.readInt() != VERSION) {
+            throw new IOException("Invalid removal plan " + file);
+         }
+         String[] symbols = new String[readVarInt(in)];
+         for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = readString(in);
+         }
+         RemovalPlan plan = new RemovalPlan();
+         int files = readVarInt(in);
+         for (int i = 0; i < files; i++) {
+            String name = readString(in);
+            byte[] key = new byte[32];
+            in.readFully(key);
+            int size = readVarInt(in);
+            List<SourceEdit> edits = new ArrayList<SourceEdit>(size);
+            for (int j = 0; j < size; j++) {
+               int beginLine = readVarInt(in);
+               int beginColumn = readVarInt(in);
+               int endLine = readVarInt(in);
+               int endColumn = readVarInt(in);
+               String replacement = readString(in);
+               int symbol = readVarInt(in);
+               if (symbol > symbols.length) {
+                  throw new IOException("Invalid removal plan " + file);
+               }
+               edits.add(new SourceEdit(beginLine, beginColumn, endLine, endColumn, replacement,
+                     symbol > 0 ? symbols[symbol - 1] : null));
+            }
+            plan.entries.put(name, new Entry(key, edits));
+         }
+         int failed = readVarInt(in);
+         for (int i = 0; i < failed; i++) {
+            String name = readString(in);
+            plan.failures.put(name, readString(in));
+         }
+         return plan;
+      } finally {
+         in.close();
+      }
+   }
+
+   /**
+    * @return the canonical file of the source, which the plan may have
+    *         brought from another machine
+    * @throws IOException
+    *            if the source is not inside of the root
+    */
+   private static File resolve(File root, String name) throws IOException {
+      File base = root.getCanonicalFile();
+      File file = new File(base, name).getCanonicalFile();
+      if (new File(name).isAbsolute() || !file.getPath().startsWith(base.getPath() + File.separator)) {
+         throw new IOException("The removal plan has a source outside of " + root + ": " + name);
+      }
+      return file;
+   }
+
+   private static byte[] readContent(File file) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         byte[] content = new byte[(int) raf.length()];
+         raf.readFully(content);
+         return content;
+      } finally {
+         raf.close();
+      }
+   }
+
+   private static void writeVarInt(int value, DataOutput out) throws IOException {
+      while ((value & ~0x7f) != 0) {
+         out.writeByte((value & 0x7f) | 0x80);
+         value >>>= 7;
+      }
+      out.writeByte(value);
+   }
+
+   private static int readVarInt(DataInput in) throws IOException {
+      int value = 0;
+      for (int shift = 0; shift < 32; shift += 7) {
+         int b = in.readUnsignedByte();
+         value |= (b & 0x7f) << shift;
+         if ((b & 0x80) == 0) {
+            return value;
+         }
+      }
+      throw new IOException("Invalid variable length int");
+   }
+
+   private static void writeString(String value, DataOutput out) throws IOException {
+      byte[] utf8 = value.getBytes(UTF8);
+      writeVarInt(utf8.length, out);
+      out.write(utf8);
+   }
+
+   private static String readString(DataInput in) throws IOException {
+      byte[] utf8 = new byte[readVarInt(in)];
+      in.readFully(utf8);
+      return new String(utf8, UTF8);
+   }
+
+   private static class Entry {
+
+      private final byte[] key;
+
+      private final List<SourceEdit> edits;
+
+      public Entry(byte[] key, List<SourceEdit> edits) {
+         this.key = key;
+         this.edits = edits;
+      }
+   }
+}
@@ -0,0 +1,285 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.driver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.walkmod.deadcodecleaner.report.SourceEdit;
+import org.walkmod.javalang.ASTManager;
+import org.walkmod.javalang.ParseException;
+import org.walkmod.javalang.ast.CompilationUnit;
+
+/**
+ * Applies the edits planned by
+ * {@link org.walkmod.deadcodecleaner.visitors.CleanDeadDeclarationsVisitor#plan}
+ * to the bytes of a source, so the regions that are not edited stay byte for
+ * byte the same. A deletion that leaves its lines blank removes the whole
+ * lines. The patched source is written into a temporary file that
+ * atomically replaces the original one, so a failure never leaves it half
+ * written, and it is not modified at all if the patched source can not be
+ * parsed.
+ * <p>
+ * The columns of the edits are the ones of the parser, which counts the
+ * chars of the decoded source and moves a tab to the next tab stop, so the
+ * patcher needs the charset of the source and the tab size of the parser.
+ * The charset must encode the ASCII characters as single bytes, as the
+ * encodings of Java sources do.
+ */
+public class SourcePatcher {
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   /**
+    * Tab size of the parser, found from the column that it gives to a type
+    * indented with a tab.
+    */
+   private static final int PARSER_TAB_SIZE = getParserTabSize();
+
+   private final Charset charset;
+
+   private final int tabSize;
+
+   private boolean verify = true;
+
+   public SourcePatcher() {
+      this(UTF8);
+   }
+
+   public SourcePatcher(Charset charset) {
+      this(charset, PARSER_TAB_SIZE);
+   }
+
+   /**
+    * @param tabSize
+    *           columns that a tab advances in the positions of the parser
+    */
+   public SourcePatcher(Charset charset, int tabSize) {
+      if (tabSize < 1) {
+         throw new IllegalArgumentException("Invalid tab size " + tabSize);
+      }
+      if (!Arrays.equals("\t\r\n ".getBytes(charset), new byte[] { '\t', '\r', '\n', ' ' })) {
+         throw new IllegalArgumentException("Unsupported charset " + charset);
+      }
+      this.charset = charset;
+      this.tabSize = tabSize;
+   }
+
+   public int getTabSize() {
+      return tabSize;
+   }
+
+   public boolean isVerify() {
+      return verify;
+   }
+
+   /**
+    * Whether the patched source is parsed before writing it. It can be
+    * disabled when the edits are known to be planned for the same content.
+    */
+   public void setVerify(boolean verify) {
+      this.verify = verify;
+   }
+
+   public byte[] apply(byte[] content, List<SourceEdit> edits) {
+      return patched(content, toRanges(content, edits));
+   }
+
+   private static byte[] patched(byte[] content, List<Range> ranges) {
+      int size = content.length;
+      for (Range range : ranges) {
+         size += range.replacement.length - (range.to - range.from);
+      }
+      ByteBuffer patched = ByteBuffer.allocate(size);
+      int position = 0;
+      for (Range range : ranges) {
+         patched.put(content, position, range.from - position).put(range.replacement);
+         position = range.to;
+      }
+      patched.put(content, position, content.length - position);
+      return patched.array();
+   }
+
+   /**
+    * @return the bytes written, or -1 if the patched source can not be
+    *         parsed and the file has been left untouched
+    */
+   public long patch(File file, List<SourceEdit> edits) throws IOException {
+      byte[] content = Files.readAllBytes(file.toPath());
+      List<Range> ranges = toRanges(content, edits);
+      if (ranges.isEmpty()) {
+         return 0;
+      }
+      byte[] patched = patched(content, ranges);
+      if (verify) {
+         try {
+            ASTManager.parse(new String(patched, charset));
+         } catch (ParseException e) {
+            return -1;
+         }
+      }
+      File temp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+      try {
+         FileOutputStream out = new FileOutputStream(temp);
+         try {
+            out.write(patched);
+            out.getFD().sync();
+         } finally {
+            out.close();
+         }
+         IndexStore.move(temp, file);
+      } finally {
+         if (temp.exists() && !temp.delete()) {
+            temp.deleteOnExit();
+         }
+      }
+      return patched.length;
+   }
+
+   /**
+    * Byte ranges of the edits, sorted and without overlaps.
+    */
+   private List<Range> toRanges(byte[] content, List<SourceEdit> edits) {
+      List<Integer> lines = new ArrayList<Integer>();
+      lines.add(0);
+      for (int i = 0; i < content.length; i++) {
+         if (content[i] == '\n') {
+            lines.add(i + 1);
+         }
+      }
+      List<Range> ranges = new ArrayList<Range>(edits.size());
+      for (SourceEdit edit : edits) {
+         int from = getOffset(content, lines, edit.getBeginLine(), edit.getBeginColumn());
+         int to = getOffset(content, lines, edit.getEndLine(), edit.getEndColumn());
+         if (from < to) {
+            Range range = new Range(from, to, edit.getReplacement().getBytes(charset));
+            if (range.replacement.length == 0) {
+               extendToLines(content, range);
+            }
+            ranges.add(range);
+         }
+      }
+      Collections.sort(ranges, new Comparator<Range>() {
+         @Override
+         public int compare(Range a, Range b) {
+            return a.from != b.from ? (a.from < b.from ? -1 : 1) : (a.to > b.to ? -1 : (a.to < b.to ? 1 : 0));
+         }
+      });
+      List<Range> merged = new ArrayList<Range>(ranges.size());
+      for (Range range : ranges) {
+         Range last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+         if (last != null && range.from < last.to) {
+            // the first of the overlapping edits wins
+            last.to = Math.max(last.to, range.to);
+         } else {
+            merged.add(range);
+         }
+      }
+      return merged;
+   }
+
+   /**
+    * @return the offset of the column, or of the end of the line if the
+    *         column is beyond it
+    */
+   private int getOffset(byte[] content, List<Integer> lines, int line, int column) {
+      if (line < 1) {
+         return 0;
+      }
+      if (line > lines.size()) {
+         return content.length;
+      }
+      int start = lines.get(line - 1);
+      int end = start;
+      while (end < content.length && content[end] != '\n' && content[end] != '\r') {
+         end++;
+      }
+      String text = new String(content, start, end - start, charset);
+      int current = 1;
+      int chars = 0;
+      while (current < column && chars < text.length()) {
+         if (text.charAt(chars) == '\t') {
+            current = ((current - 1) / tabSize + 1) * tabSize + 1;
+         } else {
+            // as the parser, a supplementary character takes two columns
+            current++;
+         }
+         chars++;
+      }
+      return start + text.substring(0, chars).getBytes(charset).length;
+   }
+
+   private static int getParserTabSize() {
+      try {
+         CompilationUnit cu = ASTManager.parse("\tclass A {}");
+         int column = cu.getTypes().get(0).getBeginColumn();
+         return column > 1 ? column - 1 : 1;
+      } catch (ParseException e) {
+         throw new IllegalStateException("Unable to find the tab size of the parser", e);
+      }
+   }
+
+   private static void extendToLines(byte[] content, Range range) {
+      int from = range.from;
+      while (from > 0 && isBlank(content[from - 1])) {
+         from--;
+      }
+      int to = range.to;
+      while (to < content.length && isBlank(content[to])) {
+         to++;
+      }
+      boolean lineStart = from == 0 || content[from - 1] == '\n';
+      boolean lineEnd = to == content.length || content[to] == '\n' || content[to] == '\r';
+      if (lineStart && lineEnd) {
+         if (to < content.length && content[to] == '\r') {
+            to++;
+         }
+         if (to < content.length && content[to] == '\n') {
+            to++;
+         }
+         range.from = from;
+         range.to = to;
+      }
+   }
+
+   private static boolean isBlank(byte b) {
+      return b == ' ' || b == '\t';
+   }
+
+   private static class Range {
+
+      private int from;
+
+      private int to;
+
+      private final byte[] replacement;
+
+      public Range(int from, int to, byte[] replacement) {
+         this.from = from;
+         this.to = to;
+         this.replacement = replacement;
+      }
+   }
+}
@@ -0,0 +1,42 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.driver;
+
+import java.io.IOException;
+
+import org.walkmod.javalang.ast.CompilationUnit;
+
+/**
+ * Source file that is parsed and semantically analyzed on demand, in the
+ * thread that cleans it.
+ */
+public interface SourceUnit {
+
+   String getName();
+
+   /**
+    * Raw content of the source, to look it up in the {@link FixpointCache}
+    * without parsing it.
+    */
+   byte[] getContent() throws IOException;
+
+   /**
+    * Parses the source with its encoding, without the semantic analysis.
+    */
+   CompilationUnit parse() throws Exception;
+
+   CompilationUnit load() throws Exception;
+}
@@ -0,0 +1,319 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.walkmod.deadcodecleaner.report.Finding.Kind;
+
+/**
+ * Totals of all the cleanups. Each compilation unit is counted apart and
+ * added once, so the threads only meet on a few atomic additions per
+ * compilation unit.
+ */
+public class CleanerStatistics implements CleanerStatisticsMBean {
+
+   private final AtomicLong compilationUnits = new AtomicLong();
+
+   private final AtomicLong partialCompilationUnits = new AtomicLong();
+
+   private final AtomicLong skippedCompilationUnits = new AtomicLong();
+
+   private final AtomicLong wallTimeNanos = new AtomicLong();
+
+   private final AtomicLong visitedNodes = new AtomicLong();
+
+   private final AtomicLong[] removals = new AtomicLong[Kind.values().length];
+
+   private final AtomicLong sweeps = new AtomicLong();
+
+   private final AtomicLong savedInstanceBytes = new AtomicLong();
+
+   private final AtomicLong exclusionLookups = new AtomicLong();
+
+   private final AtomicLong cascadeSteps = new AtomicLong();
+
+   private final AtomicReference<Peak> deepestCascade = new AtomicReference<Peak>(Peak.NONE);
+
+   private final AtomicReference<Peak> slowest = new AtomicReference<Peak>(Peak.NONE);
+
+   public CleanerStatistics() {
+      for (int i = 0; i < removals.length; i++) {
+         removals[i] = new AtomicLong();
+      }
+   }
+
+   public void record(CleanupMetrics metrics) {
+      compilationUnits.incrementAndGet();
+      if (metrics.isPartial()) {
+         partialCompilationUnits.incrementAndGet();
+      }
+      wallTimeNanos.addAndGet(metrics.getWallTimeNanos());
+      visitedNodes.addAndGet(metrics.getVisitedNodes());
+      for (Kind kind : Kind.values()) {
+         long count = metrics.getRemovals(kind);
+         if (count > 0) {
+            removals[kind.ordinal()].addAndGet(count);
+         }
+      }
+      sweeps.addAndGet(metrics.getSweeps());
+      savedInstanceBytes.addAndGet(metrics.getSavedInstanceBytes());
+      exclusionLookups.addAndGet(metrics.getExclusionLookups());
+      cascadeSteps.addAndGet(metrics.getCascadeSteps());
+      update(deepestCascade, new Peak(metrics.getMaxCascadeDepth(), metrics.getName()));
+      update(slowest, new Peak(metrics.getWallTimeNanos(), metrics.getName()));
+   }
+
+   /**
+    * Counts a compilation unit that has not been analyzed nor cleaned,
+    * because it has nothing that the cleaner could remove.
+    */
+   public void skipped() {
+      skippedCompilationUnits.incrementAndGet();
+   }
+
+   private static void update(AtomicReference<Peak> ref, Peak candidate) {
+      Peak current = ref.get();
+      while (candidate.value > current.value && !ref.compareAndSet(current, candidate)) {
+         current = ref.get();
+      }
+   }
+
+   @Override
+   public long getCompilationUnits() {
+      return compilationUnits.get();
+   }
+
+   /**
+    * Compilation units whose cleanup has been stopped by a budget.
+    */
+   @Override
+   public long getPartialCompilationUnits() {
+      return partialCompilationUnits.get();
+   }
+
+   @Override
+   public long getSkippedCompilationUnits() {
+      return skippedCompilationUnits.get();
+   }
+
+   /**
+    * Fraction of the compilation units that have been skipped.
+    */
+   @Override
+   public double getSkipRate() {
+      long skipped = getSkippedCompilationUnits();
+      long total = skipped + getCompilationUnits();
+      return total > 0 ? (double) skipped / total : 0;
+   }
+
+   @Override
+   public long getWallTimeNanos() {
+      return wallTimeNanos.get();
+   }
+
+   @Override
+   public long getVisitedNodes() {
+      return visitedNodes.get();
+   }
+
+   public long getRemovals(Kind kind) {
+      return removals[kind.ordinal()].get();
+   }
+
+   @Override
+   public long getImportRemovals() {
+      return getRemovals(Kind.IMPORT);
+   }
+
+   @Override
+   public long getVariableRemovals() {
+      return getRemovals(Kind.VARIABLE);
+   }
+
+   @Override
+   public long getFieldRemovals() {
+      return getRemovals(Kind.FIELD);
+   }
+
+   @Override
+   public long getMethodRemovals() {
+      return getRemovals(Kind.METHOD);
+   }
+
+   @Override
+   public long getTypeRemovals() {
+      return getRemovals(Kind.TYPE);
+   }
+
+   @Override
+   public long getEmptyIfRemovals() {
+      return getRemovals(Kind.STATEMENT);
+   }
+
+   @Override
+   public long getSweeps() {
+      return sweeps.get();
+   }
+
+   @Override
+   public long getFoldedConditions() {
+      return getRemovals(Kind.CONDITION);
+   }
+
+   /**
+    * Estimated bytes per instance saved by the removed instance fields,
+    * added up over all their classes.
+    */
+   @Override
+   public long getSavedInstanceBytes() {
+      return savedInstanceBytes.get();
+   }
+
+   @Override
+   public long getExclusionLookups() {
+      return exclusionLookups.get();
+   }
+
+   @Override
+   public long getCascadeSteps() {
+      return cascadeSteps.get();
+   }
+
+   @Override
+   public int getMaxCascadeDepth() {
+      return (int) deepestCascade.get().value;
+   }
+
+   @Override
+   public String getDeepestCascade() {
+      return deepestCascade.get().name;
+   }
+
+   @Override
+   public long getMaxWallTimeNanos() {
+      return slowest.get().value;
+   }
+
+   @Override
+   public String getSlowestCompilationUnit() {
+      return slowest.get().name;
+   }
+
+   @Override
+   public void reset() {
+      compilationUnits.set(0);
+      partialCompilationUnits.set(0);
+      skippedCompilationUnits.set(0);
+      wallTimeNanos.set(0);
+      visitedNodes.set(0);
+      for (AtomicLong count : removals) {
+         count.set(0);
+      }
+      sweeps.set(0);
+      savedInstanceBytes.set(0);
+      exclusionLookups.set(0);
+      cascadeSteps.set(0);
+      deepestCascade.set(Peak.NONE);
+      slowest.set(Peak.NONE);
+   }
+
+   public ObjectName registerMBean(String name) throws JMException {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = new ObjectName("org.walkmod.deadcodecleaner:type=CleanerStatistics,name="
+            + ObjectName.quote(name));
+      if (server.isRegistered(objectName)) {
+         server.unregisterMBean(objectName);
+      }
+      server.registerMBean(this, objectName);
+      return objectName;
+   }
+
+   public void writeSummary(File file) throws IOException {
+      Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+      try {
+         writer.write(toString());
+      } finally {
+         writer.close();
+      }
+   }
+
+   /**
+    * Writes the summary when the JVM exits, because walkmod does not notify
+    * the end of the run to the visitors.
+    */
+   public void writeSummaryOnExit(final File file) {
+      Runtime.getRuntime().addShutdownHook(new Thread("dead-code-cleaner-summary") {
+         @Override
+         public void run() {
+            try {
+               writeSummary(file);
+            } catch (IOException e) {
+               System.err.println("Error writing " + file + ": " + e.getMessage());
+            }
+         }
+      });
+   }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("compilationUnits=").append(getCompilationUnits()).append('\n');
+      sb.append("partialCompilationUnits=").append(getPartialCompilationUnits()).append('\n');
+      sb.append("skippedCompilationUnits=").append(getSkippedCompilationUnits()).append('\n');
+      sb.append("skipRate=").append(getSkipRate()).append('\n');
+      sb.append("wallTimeNanos=").append(getWallTimeNanos()).append('\n');
+      sb.append("visitedNodes=").append(getVisitedNodes()).append('\n');
+      for (Kind kind : Kind.values()) {
+         sb.append("removals.").append(kind.name().toLowerCase()).append('=').append(getRemovals(kind)).append('\n');
+      }
+      sb.append("sweeps=").append(getSweeps()).append('\n');
+      sb.append("foldedConditions=").append(getFoldedConditions()).append('\n');
+      sb.append("savedInstanceBytes=").append(getSavedInstanceBytes()).append('\n');
+      sb.append("exclusionLookups=").append(getExclusionLookups()).append('\n');
+      sb.append("cascadeSteps=").append(getCascadeSteps()).append('\n');
+      sb.append("maxCascadeDepth=").append(getMaxCascadeDepth()).append('\n');
+      sb.append("deepestCascade=").append(getDeepestCascade()).append('\n');
+      sb.append("maxWallTimeNanos=").append(getMaxWallTimeNanos()).append('\n');
+      sb.append("slowestCompilationUnit=").append(getSlowestCompilationUnit()).append('\n');
+      return sb.toString();
+   }
+
+   private static class Peak {
+
+      static final Peak NONE = new Peak(0, "");
+
+      final long value;
+
+      final String name;
+
+      Peak(long value, String name) {
+         this.value = value;
+         this.name = name == null ? "" : name;
+      }
+   }
+}
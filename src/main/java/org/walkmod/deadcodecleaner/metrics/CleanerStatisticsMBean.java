@@ -0,0 +1,63 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.metrics;
+
+public interface CleanerStatisticsMBean {
+
+   long getCompilationUnits();
+
+   long getPartialCompilationUnits();
+
+   long getSkippedCompilationUnits();
+
+   double getSkipRate();
+
+   long getWallTimeNanos();
+
+   long getVisitedNodes();
+
+   long getImportRemovals();
+
+   long getVariableRemovals();
+
+   long getFieldRemovals();
+
+   long getMethodRemovals();
+
+   long getTypeRemovals();
+
+   long getEmptyIfRemovals();
+
+   long getSweeps();
+
+   long getFoldedConditions();
+
+   long getSavedInstanceBytes();
+
+   long getExclusionLookups();
+
+   long getCascadeSteps();
+
+   int getMaxCascadeDepth();
+
+   String getDeepestCascade();
+
+   long getMaxWallTimeNanos();
+
+   String getSlowestCompilationUnit();
+
+   void reset();
+}
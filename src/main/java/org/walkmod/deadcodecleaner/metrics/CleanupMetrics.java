@@ -0,0 +1,165 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.metrics;
+
+import org.walkmod.deadcodecleaner.report.Finding.Kind;
+
+/**
+ * Counters of the cleanup of a single compilation unit. They are updated by
+ * a single thread and added to the {@link CleanerStatistics} at the end.
+ */
+public class CleanupMetrics {
+
+   private String name;
+
+   private long wallTimeNanos;
+
+   private long visitedNodes;
+
+   private final long[] removals = new long[Kind.values().length];
+
+   private long cascadeSteps;
+
+   private int maxCascadeDepth;
+
+   private long sweeps;
+
+   private long savedInstanceBytes;
+
+   private long exclusionLookups;
+
+   private boolean partial;
+
+   /**
+    * Qualified name of the first type of the compilation unit.
+    */
+   public String getName() {
+      return name;
+   }
+
+   public void setName(String name) {
+      this.name = name;
+   }
+
+   public long getWallTimeNanos() {
+      return wallTimeNanos;
+   }
+
+   public void setWallTimeNanos(long wallTimeNanos) {
+      this.wallTimeNanos = wallTimeNanos;
+   }
+
+   /**
+    * Declarations and statements analyzed, including the ones analyzed again
+    * by the cascade.
+    */
+   public long getVisitedNodes() {
+      return visitedNodes;
+   }
+
+   public void visited(int nodes) {
+      visitedNodes += nodes;
+   }
+
+   public long getRemovals(Kind kind) {
+      return removals[kind.ordinal()];
+   }
+
+   public long getRemovals() {
+      long total = 0;
+      for (long count : removals) {
+         total += count;
+      }
+      return total;
+   }
+
+   public void removed(Kind kind) {
+      removals[kind.ordinal()]++;
+   }
+
+   /**
+    * Definitions analyzed again because they have lost their usages.
+    */
+   public long getCascadeSteps() {
+      return cascadeSteps;
+   }
+
+   /**
+    * Longest chain of removals in which each removal leaves the next
+    * definition without usages.
+    */
+   public int getMaxCascadeDepth() {
+      return maxCascadeDepth;
+   }
+
+   public void cascade(int depth) {
+      cascadeSteps++;
+      if (depth > maxCascadeDepth) {
+         maxCascadeDepth = depth;
+      }
+   }
+
+   /**
+    * Containers rebuilt to drop their marked nodes.
+    */
+   public long getSweeps() {
+      return sweeps;
+   }
+
+   public void swept() {
+      sweeps++;
+   }
+
+   /**
+    * Conditions with a constant value whose dead branch has been removed,
+    * which are the removals of {@link Kind#CONDITION}.
+    */
+   public long getFoldedConditions() {
+      return getRemovals(Kind.CONDITION);
+   }
+
+   /**
+    * Estimated bytes that the removed instance fields took in each instance
+    * of their classes, with compressed references.
+    */
+   public long getSavedInstanceBytes() {
+      return savedInstanceBytes;
+   }
+
+   public void savedInstanceBytes(int bytes) {
+      savedInstanceBytes += bytes;
+   }
+
+   public long getExclusionLookups() {
+      return exclusionLookups;
+   }
+
+   public void exclusionLookup() {
+      exclusionLookups++;
+   }
+
+   /**
+    * If the cleanup has been stopped by a budget, so some dead code may
+    * remain.
+    */
+   public boolean isPartial() {
+      return partial;
+   }
+
+   public void setPartial(boolean partial) {
+      this.partial = partial;
+   }
+}
@@ -0,0 +1,109 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.report;
+
+/**
+ * Dead declaration or statement found by the cleaner, with the source range
+ * of the node that would be removed.
+ */
+public class Finding {
+
+   /**
+    * The statements are the empty ones, and the conditions are the constant
+    * ones that are folded into the branch that runs.
+    */
+   public enum Kind {
+      IMPORT, TYPE, METHOD, FIELD, VARIABLE, STATEMENT, CONDITION
+   }
+
+   private final Kind kind;
+
+   private final String name;
+
+   private final int beginLine;
+
+   private final int beginColumn;
+
+   private final int endLine;
+
+   private final int endColumn;
+
+   public Finding(Kind kind, String name, int beginLine, int beginColumn, int endLine, int endColumn) {
+      this.kind = kind;
+      this.name = name;
+      this.beginLine = beginLine;
+      this.beginColumn = beginColumn;
+      this.endLine = endLine;
+      this.endColumn = endColumn;
+   }
+
+   public Kind getKind() {
+      return kind;
+   }
+
+   /**
+    * Fully qualified name, such as <code>foo.Bar#baz(int)</code> for a method
+    * or <code>foo.Bar#baz(int)/x</code> for one of its local variables.
+    */
+   public String getName() {
+      return name;
+   }
+
+   public int getBeginLine() {
+      return beginLine;
+   }
+
+   public int getBeginColumn() {
+      return beginColumn;
+   }
+
+   public int getEndLine() {
+      return endLine;
+   }
+
+   public int getEndColumn() {
+      return endColumn;
+   }
+
+   public String toJson() {
+      StringBuilder sb = new StringBuilder(name.length() + 128);
+      sb.append("{\"kind\":\"").append(kind.name().toLowerCase()).append("\",\"name\":");
+      appendString(name, sb);
+      sb.append(",\"range\":{\"beginLine\":").append(beginLine).append(",\"beginColumn\":").append(beginColumn);
+      sb.append(",\"endLine\":").append(endLine).append(",\"endColumn\":").append(endColumn).append("}}");
+      return sb.toString();
+   }
+
+   private static void appendString(String value, StringBuilder sb) {
+      sb.append('"');
+      for (int i = 0; i < value.length(); i++) {
+         char c = value.charAt(i);
+         if (c == '"' || c == '\\') {
+            sb.append('\\').append(c);
+         } else if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int) c));
+         } else {
+            sb.append(c);
+         }
+      }
+      sb.append('"');
+   }
+
+   @Override
+   public String toString() {
+      return toJson();
+   }
+}
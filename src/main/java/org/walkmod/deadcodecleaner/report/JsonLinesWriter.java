@@ -0,0 +1,61 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.report;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes a JSON object per finding and line. The findings of each compilation
+ * unit are written together, so the listener can be shared by concurrent
+ * runs, and flushed at once.
+ */
+public class JsonLinesWriter implements FindingListener, Closeable {
+
+   private final Writer writer;
+
+   public JsonLinesWriter(Writer writer) {
+      this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+   }
+
+   public JsonLinesWriter(File file) throws IOException {
+      this(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+   }
+
+   @Override
+   public synchronized void found(List<Finding> findings) {
+      try {
+         for (Finding finding : findings) {
+            writer.write(finding.toJson());
+            writer.write('\n');
+         }
+         writer.flush();
+      } catch (IOException e) {
+         throw new RuntimeException("Error writing the findings", e);
+      }
+   }
+
+   @Override
+   public synchronized void close() throws IOException {
+      writer.close();
+   }
+}
@@ -0,0 +1,87 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.report;
+
+/**
+ * Replacement of a range of the source, usually by nothing, that removes a
+ * dead declaration or statement without printing the compilation unit
+ * again. The lines and columns start at 1, as the ones of the parser, and
+ * the end is exclusive.
+ */
+public class SourceEdit {
+
+   private final int beginLine;
+
+   private final int beginColumn;
+
+   private final int endLine;
+
+   private final int endColumn;
+
+   private final String replacement;
+
+   private final String symbol;
+
+   public SourceEdit(int beginLine, int beginColumn, int endLine, int endColumn, String replacement) {
+      this(beginLine, beginColumn, endLine, endColumn, replacement, null);
+   }
+
+   /**
+    * @param symbol
+    *           qualified name of the removed declaration, as the one of its
+    *           {@link Finding}, or null
+    */
+   public SourceEdit(int beginLine, int beginColumn, int endLine, int endColumn, String replacement, String symbol) {
+      this.beginLine = beginLine;
+      this.beginColumn = beginColumn;
+      this.endLine = endLine;
+      this.endColumn = endColumn;
+      this.replacement = replacement;
+      this.symbol = symbol;
+   }
+
+   public int getBeginLine() {
+      return beginLine;
+   }
+
+   public int getBeginColumn() {
+      return beginColumn;
+   }
+
+   public int getEndLine() {
+      return endLine;
+   }
+
+   public int getEndColumn() {
+      return endColumn;
+   }
+
+   /**
+    * @return the text that replaces the range, empty for a deletion
+    */
+   public String getReplacement() {
+      return replacement;
+   }
+
+   public String getSymbol() {
+      return symbol;
+   }
+
+   @Override
+   public String toString() {
+      return beginLine + ":" + beginColumn + "-" + endLine + ":" + endColumn + " \"" + replacement + "\"";
+   }
+}
@@ -0,0 +1,59 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import org.walkmod.deadcodecleaner.metrics.CleanupMetrics;
+
+/**
+ * Limits of the work spent on a single compilation unit. The budget is only
+ * checked between two removals and, once exhausted, it stays exhausted, so
+ * the cleanup stops with the removals already made and the tree remains
+ * consistent.
+ */
+class Budget {
+
+   private final CleanupMetrics metrics;
+
+   private final long maxCascadeSteps;
+
+   private final long maxVisitedNodes;
+
+   private final long maxWallTimeNanos;
+
+   private final long start;
+
+   private boolean exhausted = false;
+
+   public Budget(CleanerConfiguration configuration, CleanupMetrics metrics) {
+      this.metrics = metrics;
+      this.maxCascadeSteps = configuration.getMaxCascadeSteps();
+      this.maxVisitedNodes = configuration.getMaxVisitedNodes();
+      this.maxWallTimeNanos = configuration.getMaxWallTimeMillis() * 1000000L;
+      this.start = maxWallTimeNanos > 0 ? System.nanoTime() : 0;
+   }
+
+   public boolean isExhausted() {
+      if (!exhausted) {
+         exhausted = (maxCascadeSteps > 0 && metrics.getCascadeSteps() >= maxCascadeSteps)
+               || (maxVisitedNodes > 0 && metrics.getVisitedNodes() >= maxVisitedNodes)
+               || (maxWallTimeNanos > 0 && System.nanoTime() - start >= maxWallTimeNanos);
+         if (exhausted) {
+            metrics.setPartial(true);
+         }
+      }
+      return exhausted;
+   }
+}
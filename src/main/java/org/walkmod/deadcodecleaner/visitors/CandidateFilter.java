@@ -0,0 +1,178 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.util.List;
+
+import org.walkmod.javalang.ast.CompilationUnit;
+import org.walkmod.javalang.ast.body.AnnotationDeclaration;
+import org.walkmod.javalang.ast.body.ClassOrInterfaceDeclaration;
+import org.walkmod.javalang.ast.body.EnumDeclaration;
+import org.walkmod.javalang.ast.body.FieldDeclaration;
+import org.walkmod.javalang.ast.body.MethodDeclaration;
+import org.walkmod.javalang.ast.body.ModifierSet;
+import org.walkmod.javalang.ast.expr.ConditionalExpr;
+import org.walkmod.javalang.ast.expr.Expression;
+import org.walkmod.javalang.ast.expr.VariableDeclarationExpr;
+import org.walkmod.javalang.ast.stmt.BlockStmt;
+import org.walkmod.javalang.ast.stmt.EmptyStmt;
+import org.walkmod.javalang.ast.stmt.IfStmt;
+import org.walkmod.javalang.ast.stmt.Statement;
+import org.walkmod.javalang.ast.stmt.TypeDeclarationStmt;
+import org.walkmod.javalang.ast.stmt.WhileStmt;
+import org.walkmod.javalang.visitors.VoidVisitorAdapter;
+
+/**
+ * Syntactic check, on a compilation unit that has only been parsed, of
+ * whether it declares anything that the cleaner could remove with its
+ * configuration: imports, local variables, local classes, empty if
+ * statements, conditions that may be constant when they are folded, and
+ * private types, methods and fields. The compilation units
+ * without candidates do not need the semantic analysis. It does not apply
+ * to the cleanups with a project index, which can remove declarations of
+ * any visibility.
+ */
+public final class CandidateFilter {
+
+   private final CleanerConfiguration configuration;
+
+   public CandidateFilter(CleanerConfiguration configuration) {
+      this.configuration = configuration;
+   }
+
+   public boolean hasCandidates(CompilationUnit cu) {
+      Scanner scanner = new Scanner();
+      cu.accept(scanner, null);
+      return scanner.found;
+   }
+
+   private static boolean isEmpty(Statement stmt) {
+      if (stmt instanceof BlockStmt) {
+         List<Statement> stmts = ((BlockStmt) stmt).getStmts();
+         return stmts == null || stmts.isEmpty();
+      }
+      return stmt == null || stmt instanceof EmptyStmt;
+   }
+
+   /**
+    * Visits the nodes until the first candidate.
+    */
+   private class Scanner extends VoidVisitorAdapter<Object> {
+
+      private boolean found = false;
+
+      @Override
+      public void visit(CompilationUnit n, Object arg) {
+         List<?> imports = n.getImports();
+         found = configuration.isRemoveUnusedImports() && imports != null && !imports.isEmpty();
+         if (!found) {
+            super.visit(n, arg);
+         }
+      }
+
+      @Override
+      public void visit(ClassOrInterfaceDeclaration n, Object arg) {
+         boolean removable = n.isInterface() ? configuration.isRemoveUnusedInterfaces()
+               : configuration.isRemoveUnusedClasses();
+         found = found || (removable && ModifierSet.isPrivate(n.getModifiers()));
+         if (!found) {
+            super.visit(n, arg);
+         }
+      }
+
+      @Override
+      public void visit(EnumDeclaration n, Object arg) {
+         found = found || (configuration.isRemoveUnusedEnumerations() && ModifierSet.isPrivate(n.getModifiers()));
+         if (!found) {
+            super.visit(n, arg);
+         }
+      }
+
+      @Override
+      public void visit(AnnotationDeclaration n, Object arg) {
+         found = found
+               || (configuration.isRemoveUnusedAnnotationTypes() && ModifierSet.isPrivate(n.getModifiers()));
+         if (!found) {
+            super.visit(n, arg);
+         }
+      }
+
+      @Override
+      public void visit(MethodDeclaration n, Object arg) {
+         found = found || (configuration.isRemoveUnusedMethods() && ModifierSet.isPrivate(n.getModifiers()));
+         if (!found) {
+            super.visit(n, arg);
+         }
+      }
+
+      @Override
+      public void visit(FieldDeclaration n, Object arg) {
+         found = found || (configuration.isRemoveUnusedFields() && ModifierSet.isPrivate(n.getModifiers()));
+         if (!found) {
+            super.visit(n, arg);
+         }
+      }
+
+      @Override
+      public void visit(VariableDeclarationExpr n, Object arg) {
+         found = found || configuration.isRemoveUnusedVariables();
+         if (!found) {
+            super.visit(n, arg);
+         }
+      }
+
+      @Override
+      public void visit(TypeDeclarationStmt n, Object arg) {
+         // unused local classes are removed whatever the configuration
+         found = true;
+      }
+
+      @Override
+      public void visit(IfStmt n, Object arg) {
+         found = found || (isEmpty(n.getThenStmt()) && isEmpty(n.getElseStmt())) || isFoldable(n.getCondition());
+         if (!found) {
+            super.visit(n, arg);
+         }
+      }
+
+      @Override
+      public void visit(WhileStmt n, Object arg) {
+         found = found || isFoldable(n.getCondition());
+         if (!found) {
+            super.visit(n, arg);
+         }
+      }
+
+      @Override
+      public void visit(ConditionalExpr n, Object arg) {
+         found = found || isFoldable(n.getCondition());
+         if (!found) {
+            super.visit(n, arg);
+         }
+      }
+
+      private boolean isFoldable(Expression condition) {
+         return configuration.isFoldConstantConditions() && ConstantConditions.mayBeConstant(condition);
+      }
+
+      @Override
+      public void visit(BlockStmt n, Object arg) {
+         if (!found) {
+            super.visit(n, arg);
+         }
+      }
+   }
+}
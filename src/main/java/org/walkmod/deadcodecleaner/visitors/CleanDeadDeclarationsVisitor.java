@@ -15,39 +15,54 @@ You should have received a copy of the GNU Lesser General Public License
 along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
 package org.walkmod.deadcodecleaner.visitors;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
+import javax.management.JMException;
+
+import org.walkmod.deadcodecleaner.metrics.CleanerStatistics;
+import org.walkmod.deadcodecleaner.metrics.CleanupMetrics;
+import org.walkmod.deadcodecleaner.report.FindingListener;
+import org.walkmod.deadcodecleaner.report.JsonLinesWriter;
+import org.walkmod.deadcodecleaner.report.SourceEdit;
 import org.walkmod.javalang.ast.CompilationUnit;
 import org.walkmod.javalang.ast.ImportDeclaration;
+import org.walkmod.javalang.ast.MethodSymbolData;
 import org.walkmod.javalang.ast.Node;
+import org.walkmod.javalang.ast.SymbolData;
 import org.walkmod.javalang.ast.SymbolDefinition;
-import org.walkmod.javalang.ast.SymbolReference;
 import org.walkmod.javalang.ast.body.AnnotationDeclaration;
 import org.walkmod.javalang.ast.body.BodyDeclaration;
 import org.walkmod.javalang.ast.body.ClassOrInterfaceDeclaration;
-import org.walkmod.javalang.ast.body.EnumConstantDeclaration;
+import org.walkmod.javalang.ast.body.ConstructorDeclaration;
 import org.walkmod.javalang.ast.body.EnumDeclaration;
 import org.walkmod.javalang.ast.body.FieldDeclaration;
+import org.walkmod.javalang.ast.body.InitializerDeclaration;
+import org.walkmod.javalang.ast.body.MethodDeclaration;
 import org.walkmod.javalang.ast.body.ModifierSet;
 import org.walkmod.javalang.ast.body.TypeDeclaration;
 import org.walkmod.javalang.ast.body.VariableDeclarator;
+import org.walkmod.javalang.ast.expr.AssignExpr;
+import org.walkmod.javalang.ast.expr.ConditionalExpr;
 import org.walkmod.javalang.ast.expr.Expression;
-import org.walkmod.javalang.ast.expr.LambdaExpr;
-import org.walkmod.javalang.ast.expr.MethodCallExpr;
-import org.walkmod.javalang.ast.expr.ObjectCreationExpr;
 import org.walkmod.javalang.ast.expr.VariableDeclarationExpr;
 import org.walkmod.javalang.ast.stmt.BlockStmt;
 import org.walkmod.javalang.ast.stmt.EmptyStmt;
+import org.walkmod.javalang.ast.stmt.ExpressionStmt;
 import org.walkmod.javalang.ast.stmt.ForStmt;
+import org.walkmod.javalang.ast.stmt.ForeachStmt;
 import org.walkmod.javalang.ast.stmt.IfStmt;
+import org.walkmod.javalang.ast.stmt.LabeledStmt;
 import org.walkmod.javalang.ast.stmt.Statement;
+import org.walkmod.javalang.ast.stmt.SynchronizedStmt;
 import org.walkmod.javalang.ast.stmt.TypeDeclarationStmt;
+import org.walkmod.javalang.ast.stmt.WhileStmt;
 import org.walkmod.javalang.ast.type.ClassOrInterfaceType;
 import org.walkmod.javalang.ast.type.Type;
 import org.walkmod.javalang.compiler.symbols.RequiresSemanticAnalysis;
@@ -62,35 +77,108 @@ import com.alibaba.fastjson.JSONArray;
 @RequiresSemanticAnalysis
 public class CleanDeadDeclarationsVisitor<T> extends VoidVisitorAdapter<T> {
 
-   private Boolean removeUnusedImports = true;
-
-   private Boolean removeUnusedVariables = true;
-
-   private Boolean removeUnusedClasses = true;
+   private volatile CleanerConfiguration configuration;
 
-   private Boolean removeUnusedInterfaces = true;
+   private final CleanupContext context;
 
-   private Boolean removeUnusedAnnotationTypes = true;
+   private final TypeUpdater typeUpdater;
 
-   private Boolean removeUnusedEnumerations = true;
+   private volatile FindingListener findingListener;
 
-   private Boolean removeUnusedMethods = true;
+   private volatile CleanerStatistics statistics;
 
-   private Boolean removeUnusedFields = true;
+   private volatile ProjectIndex projectIndex;
 
-   private Boolean ignoreSerializableMethods = false;
-
-   private Map<String, List<MethodLink>> excludedMethods = new HashMap<String, List<MethodLink>>();
+   public CleanDeadDeclarationsVisitor() {
+      this(CleanerConfiguration.DEFAULT);
+   }
 
-   private Map<String, List<FieldLink>> excludedFields = new HashMap<String, List<FieldLink>>();
+   public CleanDeadDeclarationsVisitor(CleanerConfiguration configuration) {
+      this.configuration = configuration;
+      this.context = null;
+      this.typeUpdater = null;
+   }
 
-   private UnusedDefinitionsRemover remover = new UnusedDefinitionsRemover(this);
+   /**
+    * Visitor of a single run, with the configuration of the shared visitor.
+    */
+   private CleanDeadDeclarationsVisitor(CleanDeadDeclarationsVisitor<T> shared, CleanerConfiguration configuration,
+         FindingListener findingListener) {
+      this.configuration = configuration;
+      this.findingListener = findingListener;
+      this.statistics = shared.statistics;
+      this.projectIndex = shared.projectIndex;
+      this.context = new CleanupContext(this, configuration);
+      this.typeUpdater = new TypeUpdater(context.getRemover());
+   }
 
    @Override
    public void visit(CompilationUnit n, T arg) {
+      // the state lives in a visitor per run, so this one can be shared
+      new CleanDeadDeclarationsVisitor<T>(this, configuration, findingListener).clean(n, arg);
+   }
+
+   /**
+    * Cleans the compilation unit with the current configuration.
+    *
+    * @return if any declaration or statement has been removed, or would be
+    *         removed in report-only mode
+    */
+   public boolean clean(CompilationUnit n) {
+      return measure(n).getRemovals() > 0;
+   }
+
+   /**
+    * Cleans the compilation unit with the current configuration.
+    *
+    * @return the metrics of the cleanup, which tell if it has been stopped by
+    *         a budget
+    */
+   public CleanupMetrics measure(CompilationUnit n) {
+      return new CleanDeadDeclarationsVisitor<T>(this, configuration, findingListener).clean(n, null);
+   }
+
+   /**
+    * Finds the same dead code than {@link #clean(CompilationUnit)}, but
+    * reports it to the listener without modifying the compilation unit or its
+    * semantic information.
+    */
+   public void report(CompilationUnit n, FindingListener listener) {
+      new CleanDeadDeclarationsVisitor<T>(this, configuration.withReportOnly(true), listener).clean(n, null);
+   }
+
+   /**
+    * Finds the same dead code than {@link #clean(CompilationUnit)}, without
+    * modifying the compilation unit, and returns the edits that remove it
+    * from the source, in the order in which it was found.
+    */
+   public List<SourceEdit> plan(CompilationUnit n) {
+      CleanDeadDeclarationsVisitor<T> run = new CleanDeadDeclarationsVisitor<T>(this,
+            configuration.withReportOnly(true), null);
+      run.clean(n, null);
+      PendingRemovals pendingRemovals = run.context.getPendingRemovals();
+      return Edits.toEdits(pendingRemovals.getFindings(), pendingRemovals.getReplacements());
+   }
+
+   /**
+    * Cleans a node visited on its own, such as a type or a statement, with a
+    * visitor of its own run. The dead cycles are only looked for in whole
+    * compilation units.
+    */
+   private void cleanNode(Node n, T arg) {
+      CleanDeadDeclarationsVisitor<T> run = new CleanDeadDeclarationsVisitor<T>(this, configuration, findingListener);
+      long start = System.nanoTime();
+      n.accept(run, arg);
+      run.finish(null, start, Findings.getName(n));
+   }
+
+   private CleanupMetrics clean(CompilationUnit n, T arg) {
+      long start = System.nanoTime();
+      UnusedDefinitionsRemover remover = context.getRemover();
+      PendingRemovals pendingRemovals = context.getPendingRemovals();
       List<ImportDeclaration> imports = n.getImports();
-      if (imports != null && removeUnusedImports) {
-         Iterator<ImportDeclaration> it = imports.iterator();
+      if (imports != null && configuration.isRemoveUnusedImports()) {
+         Iterator<ImportDeclaration> it = pendingRemovals.iterator(imports);
          while (it.hasNext()) {
             ImportDeclaration id = it.next();
             id.accept(remover, it);
@@ -98,117 +186,213 @@ public class CleanDeadDeclarationsVisitor<T> extends VoidVisitorAdapter<T> {
       }
       List<TypeDeclaration> types = n.getTypes();
       if (types != null) {
-         Iterator<TypeDeclaration> it = types.iterator();
+         Iterator<TypeDeclaration> it = pendingRemovals.iterator(types);
          while (it.hasNext()) {
             TypeDeclaration td = it.next();
-            if (removeUnusedClasses) {
+            if (configuration.isRemoveUnusedClasses()) {
                td.accept(remover, it);
             } else {
                td.accept(this, arg);
             }
          }
       }
+      return finish(n, start, types != null && !types.isEmpty() ? Findings.getName(types.get(0)) : null);
+   }
+
+   /**
+    * Removes the orphans of the run and sweeps the marked nodes, or reports
+    * them if the run is read-only, and records the metrics.
+    *
+    * @param cu
+    *           compilation unit whose dead cycles are removed, or null
+    */
+   private CleanupMetrics finish(CompilationUnit cu, long start, String name) {
+      UnusedDefinitionsRemover remover = context.getRemover();
+      PendingRemovals pendingRemovals = context.getPendingRemovals();
+      remover.removeOrphans();
+      if (cu != null) {
+         remover.removeDeadCycles(cu);
+      }
+      if (context.isReadOnly()) {
+         pendingRemovals.countFindings();
+         if (findingListener != null) {
+            findingListener.found(Findings.toFindings(pendingRemovals));
+         }
+      } else {
+         pendingRemovals.sweep();
+         context.getUsageIndex().flush();
+         pendingRemovals.detach();
+      }
+      CleanupMetrics metrics = context.getMetrics();
+      metrics.setWallTimeNanos(System.nanoTime() - start);
+      if (statistics != null) {
+         metrics.setName(name);
+         statistics.record(metrics);
+      }
+      return metrics;
    }
 
-   public boolean isExcluded(Method method) {
-      if (method != null) {
-         List<MethodLink> candidates = excludedMethods.get(method.getName());
-         if (candidates != null) {
-            Iterator<MethodLink> it = candidates.iterator();
-            boolean selected = false;
-            while (it.hasNext() && !selected) {
-               MethodLink next = it.next();
-               String className = next.getClassName();
-               Class<?> clazz = method.getDeclaringClass();
-               while (clazz != null && clazz.isAnonymousClass()) {
-                  clazz = clazz.getSuperclass();
-               }
-               selected = !"".equals(className) && clazz != null && clazz.getName().equals(className);
-               if (selected) {
-                  Class<?>[] params = method.getParameterTypes();
-                  List<String> args = next.getArguments();
-                  if (params.length == args.size()) {
-                     Iterator<String> itArgs = args.iterator();
-                     int i = 0;
-                     while (itArgs.hasNext() && selected) {
-                        String arg = itArgs.next();
-                        selected = params[i].getName().equals(arg);
-                        i++;
-                     }
-                  } else {
-                     selected = false;
-                  }
-               }
-               return selected;
-            }
+   public CleanerConfiguration getConfiguration() {
+      return configuration;
+   }
 
-         }
+   public FindingListener getFindingListener() {
+      return findingListener;
+   }
+
+   /**
+    * Listener of the findings in report-only mode.
+    */
+   public void setFindingListener(FindingListener findingListener) {
+      this.findingListener = findingListener;
+   }
+
+   /**
+    * Writes the findings of the report-only mode as JSON Lines into the file.
+    */
+   public void setReportFile(String reportFile) {
+      try {
+         findingListener = new JsonLinesWriter(new File(reportFile));
+      } catch (IOException e) {
+         throw new RuntimeException("Error opening " + reportFile, e);
       }
-      return false;
    }
 
-   public boolean isExcluded(Field field) {
-      if (field != null) {
-         List<FieldLink> candidates = excludedFields.get(field.getName());
-         if (candidates != null) {
-            Iterator<FieldLink> it = candidates.iterator();
-            boolean selected = false;
-
-            while (it.hasNext() && !selected) {
-               FieldLink next = it.next();
-               String className = next.getClassName();
-               Class<?> clazz = field.getDeclaringClass();
-
-               while (clazz != null && clazz.isAnonymousClass()) {
-                  clazz = clazz.getSuperclass();
-               }
-               selected = !"".equals(className) && clazz != null && clazz.getName().equals(className);
-            }
-            return selected;
-         }
+   public CleanerStatistics getStatistics() {
+      return statistics;
+   }
+
+   /**
+    * Statistics where the metrics of each compilation unit are added.
+    */
+   public void setStatistics(CleanerStatistics statistics) {
+      this.statistics = statistics;
+   }
+
+   /**
+    * Collects statistics, publishes them through JMX and writes their summary
+    * into the file when the JVM exits.
+    */
+   public void setSummaryFile(String summaryFile) {
+      CleanerStatistics statistics = new CleanerStatistics();
+      try {
+         statistics.registerMBean(summaryFile);
+      } catch (JMException e) {
+         throw new RuntimeException("Error registering the statistics of " + summaryFile, e);
       }
+      statistics.writeSummaryOnExit(new File(summaryFile));
+      this.statistics = statistics;
+   }
 
+   public ProjectIndex getProjectIndex() {
+      return projectIndex;
+   }
+
+   /**
+    * Solved index of the whole project. The types and members that it finds
+    * unreachable are removed whatever their visibility.
+    */
+   public void setProjectIndex(ProjectIndex projectIndex) {
+      this.projectIndex = projectIndex;
+   }
+
+   /**
+    * @return if the project index finds the type, method or field
+    *         unreachable from the entry points
+    */
+   boolean isUnreachable(Node n) {
+      ProjectIndex index = projectIndex;
+      if (index == null) {
+         return false;
+      }
+      if (n instanceof TypeDeclaration) {
+         SymbolData sd = ((TypeDeclaration) n).getSymbolData();
+         return sd != null && index.isUnreachable(sd.getClazz());
+      }
+      if (n instanceof MethodDeclaration) {
+         MethodSymbolData msd = ((MethodDeclaration) n).getSymbolData();
+         return msd != null && index.isUnreachable(msd.getMethod());
+      }
+      if (n instanceof VariableDeclarator) {
+         return index.isUnreachable(ProjectIndex.getField((VariableDeclarator) n));
+      }
       return false;
    }
 
+   public Long getMaxCascadeSteps() {
+      return configuration.getMaxCascadeSteps();
+   }
+
+   public void setMaxCascadeSteps(Long maxCascadeSteps) {
+      configuration = configuration.withMaxCascadeSteps(maxCascadeSteps);
+   }
+
+   public Long getMaxVisitedNodes() {
+      return configuration.getMaxVisitedNodes();
+   }
+
+   public void setMaxVisitedNodes(Long maxVisitedNodes) {
+      configuration = configuration.withMaxVisitedNodes(maxVisitedNodes);
+   }
+
+   public Long getMaxWallTimeMillis() {
+      return configuration.getMaxWallTimeMillis();
+   }
+
+   public void setMaxWallTimeMillis(Long maxWallTimeMillis) {
+      configuration = configuration.withMaxWallTimeMillis(maxWallTimeMillis);
+   }
+
+   public Boolean getReportOnly() {
+      return configuration.isReportOnly();
+   }
+
+   public void setReportOnly(Boolean reportOnly) {
+      configuration = configuration.withReportOnly(reportOnly);
+   }
+
+   public boolean isExcluded(Method method) {
+      if (context != null) {
+         context.getMetrics().exclusionLookup();
+      }
+      return configuration.isExcluded(method);
+   }
+
+   public boolean isExcluded(Field field) {
+      if (context != null) {
+         context.getMetrics().exclusionLookup();
+      }
+      return configuration.isExcluded(field);
+   }
+
    public void setExcludedMethods(JSONArray jsonArray) {
+      List<MethodLink> links = new LinkedList<MethodLink>();
       Iterator<Object> it = jsonArray.iterator();
       while (it.hasNext()) {
          String methodRef = it.next().toString();
 
          try {
-            MethodLink ml = JavadocLinkParser.parse(methodRef);
-            List<MethodLink> methods = excludedMethods.get(ml.getName());
-            if (methods == null) {
-               methods = new LinkedList<MethodLink>();
-            }
-            methods.add(ml);
-            excludedMethods.put(ml.getName(), methods);
-
+            links.add(JavadocLinkParser.parse(methodRef));
          } catch (ParseException e) {
             throw new RuntimeException("Error parsing " + methodRef, e);
          }
 
       }
+      configuration = configuration.withExcludedMethods(links);
    }
 
    public void setExcludedFields(JSONArray jsonArray) {
+      List<FieldLink> links = new LinkedList<FieldLink>();
       Iterator<Object> it = jsonArray.iterator();
       while (it.hasNext()) {
          String fieldRef = it.next().toString();
          try {
-            FieldLink fl = JavadocLinkParser.parseField(fieldRef);
-
-            List<FieldLink> fields = excludedFields.get(fl.getName());
-            if (fields == null) {
-               fields = new LinkedList<FieldLink>();
-            }
-            fields.add(fl);
-            excludedFields.put(fl.getName(), fields);
+            links.add(JavadocLinkParser.parseField(fieldRef));
          } catch (ParseException e) {
             throw new RuntimeException("Error parsing " + fieldRef, e);
          }
       }
+      configuration = configuration.withExcludedFields(links);
    }
 
    public void visit(AnnotationDeclaration n, T arg) {
@@ -220,48 +404,47 @@ public class CleanDeadDeclarationsVisitor<T> extends VoidVisitorAdapter<T> {
    }
 
    public void visit(TypeDeclarationStmt n, T arg) {
-
+      if (context == null) {
+         cleanNode(n, arg);
+         return;
+      }
       TypeDeclaration td = n.getTypeDeclaration();
       td.accept(this, arg);
-      List<SymbolReference> usages = td.getUsages();
-      if (usages == null || usages.isEmpty()) {
-         Node stmt = n.getParentNode();
-
-         if (stmt instanceof BlockStmt) {
-
-            BlockStmt block = (BlockStmt) stmt;
-            List<Statement> list = new LinkedList<Statement>(block.getStmts());
-            Iterator<Statement> it2 = list.iterator();
-            while (it2.hasNext()) {
-               if (it2.next() == n) {
-                  it2.remove();
-               }
-            }
-            block.setStmts(list);
+      if (!context.getUsageIndex().isUsed(td)) {
+         removeTypeDeclarationStmt(n);
+      }
+   }
 
-         }
+   void removeTypeDeclarationStmt(TypeDeclarationStmt n) {
+      Node stmt = n.getParentNode();
+
+      if (stmt instanceof BlockStmt && !context.getPendingRemovals().isMarked(n)) {
+         context.getPendingRemovals().mark(((BlockStmt) stmt).getStmts(), n);
+         context.getRemover().removeOrphanBodyReferences(n.getTypeDeclaration());
       }
    }
 
    public void analyzeTypeDeclaration(TypeDeclaration n, T arg) {
+      if (context == null) {
+         cleanNode(n, arg);
+         return;
+      }
       List<BodyDeclaration> members = n.getMembers();
       if (members != null) {
-         Iterator<BodyDeclaration> it = members.iterator();
+         // the unused members are just marked and the cascade of orphan
+         // definitions is resolved later, so each member is visited once
+         Iterator<BodyDeclaration> it = context.getPendingRemovals().iterator(members);
 
          while (it.hasNext()) {
             BodyDeclaration current = it.next();
-            int size = members.size();
             if (current instanceof SymbolDefinition) {
-               current.accept(remover, it);
+               current.accept(context.getRemover(), it);
 
             } else {
                current.accept(this, arg);
             }
-            if (members.size() != size) {
-               it = members.iterator();
-            }
-
          }
+         context.getPendingRemovals().sweep(members);
       }
    }
 
@@ -270,44 +453,36 @@ public class CleanDeadDeclarationsVisitor<T> extends VoidVisitorAdapter<T> {
    }
 
    public void visit(FieldDeclaration n, T arg) {
+      if (context == null) {
+         cleanNode(n, arg);
+         return;
+      }
       boolean isPrivate = ModifierSet.isPrivate(n.getModifiers());
       List<VariableDeclarator> vars = n.getVariables();
       if (vars != null) {
-         Iterator<VariableDeclarator> it = vars.iterator();
+         Iterator<VariableDeclarator> it = context.getPendingRemovals().iterator(vars);
          while (it.hasNext()) {
             VariableDeclarator current = it.next();
-            if (isPrivate && removeUnusedFields) {
-               current.accept(remover, it);
+            if (configuration.isRemoveUnusedFields() && (isPrivate || isUnreachable(current))) {
+               current.accept(context.getRemover(), it);
             } else {
                current.accept(this, arg);
             }
          }
-         if (vars.isEmpty()) {
-            Node parent = n.getParentNode();
-            List<BodyDeclaration> list = null;
-            if (parent instanceof TypeDeclaration) {
-               list = ((TypeDeclaration) parent).getMembers();
-            } else if (parent instanceof ObjectCreationExpr) {
-               list = ((ObjectCreationExpr) parent).getAnonymousClassBody();
-            } else if (parent instanceof EnumConstantDeclaration) {
-               list = ((EnumConstantDeclaration) parent).getClassBody();
-            }
-            Iterator<BodyDeclaration> itB = list.iterator();
-            boolean removed = false;
-            while (itB.hasNext()) {
-               if (itB.next() == n) {
-                  itB.remove();
-                  removed = true;
-               }
-            }
-            if (removed) {
-               Type sr = n.getType();
-               if (sr != null) {
-                  sr.accept(typeUpdater, arg);
-               }
-            }
-            parent.accept(this, arg);
+         removeEmptyField(n);
+      }
+   }
 
+   void removeEmptyField(FieldDeclaration n) {
+      List<VariableDeclarator> vars = n.getVariables();
+      if (vars != null && context.getPendingRemovals().isEmptyAfterSweep(vars)) {
+         List<BodyDeclaration> list = UnusedDefinitionsRemover.getMembers(n.getParentNode());
+         if (list != null && !context.getPendingRemovals().isMarked(n)) {
+            context.getPendingRemovals().mark(list, n);
+            Type sr = n.getType();
+            if (sr != null) {
+               sr.accept(typeUpdater, null);
+            }
          }
       }
    }
@@ -315,45 +490,42 @@ public class CleanDeadDeclarationsVisitor<T> extends VoidVisitorAdapter<T> {
    private boolean isEmptyBlock(Statement stmt) {
       return stmt == null
             || (stmt instanceof EmptyStmt || ((stmt instanceof BlockStmt) && (((BlockStmt) stmt).getStmts() == null)
-                  || ((stmt instanceof BlockStmt)  && ((BlockStmt) stmt).getStmts().isEmpty())));
-   }
-
-   class ConditionCanBeRemoved extends VoidVisitorAdapter<T> {
-
-      boolean canBeRemoved = true;
-
-      @Override
-      public void visit(MethodCallExpr n, T arg) {
-         super.visit(n, arg);
-         canBeRemoved = false;
-      }
-
-      @Override
-      public void visit(LambdaExpr n, T arg) {
-         super.visit(n, arg);
-         canBeRemoved = false;
-      }
-
-      @Override
-      public void visit(ObjectCreationExpr n, T arg) {
-         super.visit(n, arg);
-         canBeRemoved = false;
-      }
+                  || ((stmt instanceof BlockStmt) && context.getPendingRemovals()
+                        .isEmptyAfterSweep(((BlockStmt) stmt).getStmts()))));
    }
-   
 
    @Override
    public void visit(IfStmt n, T arg) {
+      if (context == null) {
+         cleanNode(n, arg);
+         return;
+      }
+      if (configuration.isFoldConstantConditions()) {
+         Boolean value = ConstantConditions.evaluate(n.getCondition());
+         Statement kept = value == null ? null : (value ? n.getThenStmt() : n.getElseStmt());
+         // as in if (!ENABLED) return; the statements that follow must stay reachable
+         if (value != null && (kept == null || canCompleteNormally(kept) || endsItsBody(n))) {
+            fold(n, kept, n.getCondition(), value ? n.getElseStmt() : n.getThenStmt());
+            if (kept != null) {
+               kept.accept(this, arg);
+            }
+            return;
+         }
+      }
       Statement stmt = n.getThenStmt();
       if (isEmptyBlock(stmt)) {
          Statement elseStmt = n.getElseStmt();
          if (isEmptyBlock(elseStmt)) {
-            Expression condition = n.getCondition();
-
-            ConditionCanBeRemoved visitor = new ConditionCanBeRemoved();
-            condition.accept(visitor, arg);
-            if (visitor.canBeRemoved) {
-               n.remove();
+            if (!HasSideEffects.IN_CONDITION.check(n.getCondition())) {
+               Node parent = n.getParentNode();
+               if (parent instanceof BlockStmt) {
+                  context.getPendingRemovals().mark(((BlockStmt) parent).getStmts(), n);
+               } else if (context.isReadOnly()) {
+                  context.getPendingRemovals().markDetached(n);
+               } else {
+                  n.remove();
+                  context.removed(n);
+               }
             }
          } else {
             super.visit(n, arg);
@@ -363,161 +535,305 @@ public class CleanDeadDeclarationsVisitor<T> extends VoidVisitorAdapter<T> {
       }
    }
 
+   @Override
+   public void visit(WhileStmt n, T arg) {
+      if (context == null) {
+         cleanNode(n, arg);
+         return;
+      }
+      if (configuration.isFoldConstantConditions()
+            && Boolean.FALSE.equals(ConstantConditions.evaluate(n.getCondition()))) {
+         fold(n, null, n.getCondition(), n.getBody());
+      } else {
+         super.visit(n, arg);
+      }
+   }
+
+   @Override
+   public void visit(ConditionalExpr n, T arg) {
+      if (context == null) {
+         cleanNode(n, arg);
+         return;
+      }
+      if (configuration.isFoldConstantConditions()) {
+         Boolean value = ConstantConditions.evaluate(n.getCondition());
+         Expression kept = value == null ? null : (value ? n.getThenExpr() : n.getElseExpr());
+         // the type of the expression must not change, as in c ? 1 : 2L
+         if (kept != null && !(kept instanceof AssignExpr) && n.getParentNode() != null
+               && isSameType(kept.getSymbolData(), n.getSymbolData())) {
+            fold(n, kept, n.getCondition(), value ? n.getElseExpr() : n.getThenExpr());
+            kept.accept(this, arg);
+            return;
+         }
+      }
+      super.visit(n, arg);
+   }
+
+   private static boolean isSameType(SymbolData a, SymbolData b) {
+      return a != null && b != null && a.getClazz() != null && a.getClazz().equals(b.getClazz());
+   }
+
+   /**
+    * Conservative check of the rules of the language: the statements that
+    * are not known to complete normally are considered not to.
+    */
+   private static boolean canCompleteNormally(Statement stmt) {
+      if (stmt instanceof BlockStmt) {
+         List<Statement> stmts = ((BlockStmt) stmt).getStmts();
+         return stmts == null || stmts.isEmpty() || canCompleteNormally(stmts.get(stmts.size() - 1));
+      }
+      if (stmt instanceof IfStmt) {
+         IfStmt ifStmt = (IfStmt) stmt;
+         return ifStmt.getElseStmt() == null || canCompleteNormally(ifStmt.getThenStmt())
+               || canCompleteNormally(ifStmt.getElseStmt());
+      }
+      if (stmt instanceof LabeledStmt) {
+         return canCompleteNormally(((LabeledStmt) stmt).getStmt());
+      }
+      if (stmt instanceof SynchronizedStmt) {
+         return canCompleteNormally(((SynchronizedStmt) stmt).getBlock());
+      }
+      return stmt instanceof ExpressionStmt || stmt instanceof EmptyStmt || stmt instanceof TypeDeclarationStmt;
+   }
+
+   /**
+    * If the statement is the last one of a body whose completion does not
+    * decide the reachability of other statements.
+    */
+   private static boolean endsItsBody(Statement stmt) {
+      Node parent = stmt.getParentNode();
+      if (!(parent instanceof BlockStmt)) {
+         return false;
+      }
+      List<Statement> stmts = ((BlockStmt) parent).getStmts();
+      if (stmts.get(stmts.size() - 1) != stmt) {
+         return false;
+      }
+      Node owner = parent.getParentNode();
+      return owner instanceof MethodDeclaration || owner instanceof ConstructorDeclaration
+            || owner instanceof InitializerDeclaration || owner instanceof WhileStmt || owner instanceof ForStmt
+            || owner instanceof ForeachStmt || (owner instanceof BlockStmt && endsItsBody((BlockStmt) parent));
+   }
+
+   /**
+    * Replaces a node with a constant condition by the branch that runs, or
+    * removes it if there is none, and detaches the usages of the condition
+    * and of the dead branch, so the cascade removes what only they used. A
+    * statement without a branch to run that is not inside a block, such as
+    * the body of a loop, is replaced by an empty statement.
+    */
+   private void fold(Node n, Node kept, Node condition, Node dropped) {
+      List<Node> removed = new ArrayList<Node>(2);
+      removed.add(condition);
+      if (dropped != null) {
+         removed.add(dropped);
+      }
+      Node parent = n.getParentNode();
+      PendingRemovals pendingRemovals = context.getPendingRemovals();
+      if (kept == null && parent instanceof BlockStmt) {
+         if (pendingRemovals.isMarked(n)) {
+            return;
+         }
+         pendingRemovals.markFolded(((BlockStmt) parent).getStmts(), n);
+      } else if (!pendingRemovals.replace(n, kept, removed)) {
+         return;
+      } else if (!context.isReadOnly()) {
+         parent.replaceChildNode(n, kept != null ? kept : new EmptyStmt());
+      }
+      for (Node node : removed) {
+         context.getRemover().removeReferences(node);
+      }
+   }
+
+   @Override
+   public void visit(BlockStmt n, T arg) {
+      if (context == null) {
+         cleanNode(n, arg);
+         return;
+      }
+      if (context.getBudget().isExhausted()) {
+         return;
+      }
+      super.visit(n, arg);
+      List<Statement> stmts = n.getStmts();
+      if (stmts != null) {
+         context.getMetrics().visited(stmts.size());
+         // the statements removed while visiting the block are dropped at once
+         context.getPendingRemovals().sweep(stmts);
+      }
+   }
+
    public void visit(VariableDeclarationExpr n, T arg) {
-      if (removeUnusedVariables) {
+      if (context == null) {
+         cleanNode(n, arg);
+         return;
+      }
+      if (configuration.isRemoveUnusedVariables()) {
          List<VariableDeclarator> vars = n.getVars();
          if (vars != null) {
-            Iterator<VariableDeclarator> it = vars.iterator();
+            Iterator<VariableDeclarator> it = context.getPendingRemovals().iterator(vars);
             while (it.hasNext()) {
                VariableDeclarator current = it.next();
-               current.accept(remover, it);
+               current.accept(context.getRemover(), it);
             }
+            removeEmptyVariableDeclaration(n);
+         }
+      }
+   }
 
-            if (vars.isEmpty()) {
-               Node parentNode = n.getParentNode();
-               if (parentNode != null) {
-                  Node stmt = parentNode.getParentNode();
-                  if (stmt instanceof BlockStmt) {
-
-                     BlockStmt block = (BlockStmt) stmt;
-                     List<Statement> list = new LinkedList<Statement>(block.getStmts());
-                     Iterator<Statement> it2 = list.iterator();
-                     boolean removed = false;
-                     while (it2.hasNext()) {
-                        if (it2.next() == parentNode) {
-                           it2.remove();
-                           removed = true;
-                        }
-                     }
-                     block.setStmts(list);
-                     if (removed) {
-                        Type sr = n.getType();
-                        if (sr != null) {
-                           sr.accept(typeUpdater, arg);
-                        }
-                     }
-                  }
+   void removeEmptyVariableDeclaration(VariableDeclarationExpr n) {
+      List<VariableDeclarator> vars = n.getVars();
+      if (vars != null && context.getPendingRemovals().isEmptyAfterSweep(vars)) {
+         Node parentNode = n.getParentNode();
+         if (parentNode != null) {
+            Node stmt = parentNode.getParentNode();
+            if (stmt instanceof BlockStmt && !context.getPendingRemovals().isMarked(parentNode)) {
+               context.getPendingRemovals().mark(((BlockStmt) stmt).getStmts(), parentNode);
+               Type sr = n.getType();
+               if (sr != null) {
+                  sr.accept(typeUpdater, null);
                }
             }
          }
       }
    }
 
-   private TypeUpdater<T> typeUpdater = new TypeUpdater<T>(this);
+   Budget getBudget() {
+      return context.getBudget();
+   }
+
+   CleanupMetrics getMetrics() {
+      return context.getMetrics();
+   }
+
+   PendingRemovals getPendingRemovals() {
+      return context.getPendingRemovals();
+   }
+
+   UsageIndex getUsageIndex() {
+      return context.getUsageIndex();
+   }
+
+   UnusedDefinitionsRemover getRemover() {
+      return context.getRemover();
+   }
 
-   public TypeUpdater<T> getTypeUpdater() {
+   public VoidVisitorAdapter<Object> getTypeUpdater() {
       return typeUpdater;
    }
 
-   private class TypeUpdater<T> extends VoidVisitorAdapter<T> {
+   private static class TypeUpdater extends VoidVisitorAdapter<Object> {
 
-      CleanDeadDeclarationsVisitor<T> visitor;
+      private UnusedDefinitionsRemover remover;
 
-      public TypeUpdater(CleanDeadDeclarationsVisitor<T> visitor) {
-         this.visitor = visitor;
+      public TypeUpdater(UnusedDefinitionsRemover remover) {
+         this.remover = remover;
       }
 
       @Override
-      public void visit(ClassOrInterfaceType n, T ctx) {
+      public void visit(ClassOrInterfaceType n, Object ctx) {
          SymbolDefinition def = n.getSymbolDefinition();
          if (def != null) {
-            Node parent = ((Node) def).getParentNode();
-            List<SymbolReference> usages = def.getUsages();
-            Iterator<SymbolReference> it = usages.iterator();
-            boolean finish = false;
-            while (it.hasNext() && !finish) {
-               SymbolReference ref = it.next();
-               if (ref == n) {
-                  it.remove();
-                  if (parent != null) {
-                     parent.accept(visitor, ctx);
-                  }
-                  finish = true;
-               }
-            }
+            remover.removeUsage(def, n);
          }
 
       }
    }
 
    public Boolean getRemoveUnusedImports() {
-      return removeUnusedImports;
+      return configuration.isRemoveUnusedImports();
    }
 
    public void setRemoveUnusedImports(Boolean removeUnusedImports) {
-      this.removeUnusedImports = removeUnusedImports;
+      configuration = configuration.withRemoveUnusedImports(removeUnusedImports);
    }
 
    public Boolean getRemoveUnusedVariables() {
-      return removeUnusedVariables;
+      return configuration.isRemoveUnusedVariables();
    }
 
    public void setRemoveUnusedVariables(Boolean removeUnusedVariables) {
-      this.removeUnusedVariables = removeUnusedVariables;
+      configuration = configuration.withRemoveUnusedVariables(removeUnusedVariables);
    }
 
    public Boolean getRemoveUnusedTypes() {
-      return removeUnusedClasses;
+      return configuration.isRemoveUnusedClasses();
    }
 
    public void setRemoveUnusedTypes(Boolean removeUnusedTypes) {
-      this.removeUnusedClasses = removeUnusedTypes;
+      configuration = configuration.withRemoveUnusedClasses(removeUnusedTypes);
    }
 
    public Boolean getRemoveUnusedClasses() {
-      return removeUnusedClasses;
+      return configuration.isRemoveUnusedClasses();
    }
 
    public void setRemoveUnusedClasses(Boolean removeUnusedClasses) {
-      this.removeUnusedClasses = removeUnusedClasses;
+      configuration = configuration.withRemoveUnusedClasses(removeUnusedClasses);
    }
 
    public Boolean getRemoveUnusedInterfaces() {
-      return removeUnusedInterfaces;
+      return configuration.isRemoveUnusedInterfaces();
    }
 
    public void setRemoveUnusedInterfaces(Boolean removeUnusedInterfaces) {
-      this.removeUnusedInterfaces = removeUnusedInterfaces;
+      configuration = configuration.withRemoveUnusedInterfaces(removeUnusedInterfaces);
    }
 
    public Boolean getRemoveUnusedAnnotationTypes() {
-      return removeUnusedAnnotationTypes;
+      return configuration.isRemoveUnusedAnnotationTypes();
    }
 
    public void setRemoveUnusedAnnotationTypes(Boolean removeUnusedAnnotationTypes) {
-      this.removeUnusedAnnotationTypes = removeUnusedAnnotationTypes;
+      configuration = configuration.withRemoveUnusedAnnotationTypes(removeUnusedAnnotationTypes);
    }
 
    public Boolean getRemoveUnusedMethods() {
-      return removeUnusedMethods;
+      return configuration.isRemoveUnusedMethods();
    }
 
    public void setRemoveUnusedMethods(Boolean removeUnusedMethods) {
-      this.removeUnusedMethods = removeUnusedMethods;
+      configuration = configuration.withRemoveUnusedMethods(removeUnusedMethods);
    }
 
    public Boolean getRemoveUnusedFields() {
-      return removeUnusedFields;
+      return configuration.isRemoveUnusedFields();
    }
 
    public void setRemoveUnusedFields(Boolean removeUnusedFields) {
-      this.removeUnusedFields = removeUnusedFields;
+      configuration = configuration.withRemoveUnusedFields(removeUnusedFields);
    }
 
    public Boolean getIgnoreSerializableMethods() {
-      return ignoreSerializableMethods;
+      return configuration.isIgnoreSerializableMethods();
    }
 
    public void setIgnoreSerializableMethods(Boolean ignoreSerializableMethods) {
-      this.ignoreSerializableMethods = ignoreSerializableMethods;
+      configuration = configuration.withIgnoreSerializableMethods(ignoreSerializableMethods);
+   }
+
+   public Boolean getFoldConstantConditions() {
+      return configuration.isFoldConstantConditions();
+   }
+
+   public void setFoldConstantConditions(Boolean foldConstantConditions) {
+      configuration = configuration.withFoldConstantConditions(foldConstantConditions);
+   }
+
+   public Boolean getRemoveWriteOnlyFields() {
+      return configuration.isRemoveWriteOnlyFields();
+   }
+
+   public void setRemoveWriteOnlyFields(Boolean removeWriteOnlyFields) {
+      configuration = configuration.withRemoveWriteOnlyFields(removeWriteOnlyFields);
    }
 
    public Boolean getRemoveUnusedEnumerations() {
-      return removeUnusedEnumerations;
+      return configuration.isRemoveUnusedEnumerations();
    }
 
    public void setRemoveUnusedEnumerations(Boolean removeUnusedEnumerations) {
-      this.removeUnusedEnumerations = removeUnusedEnumerations;
+      configuration = configuration.withRemoveUnusedEnumerations(removeUnusedEnumerations);
    }
 
 }
@@ -0,0 +1,299 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+import org.walkmod.javalang.javadoclinks.FieldLink;
+import org.walkmod.javalang.javadoclinks.MethodLink;
+
+/**
+ * Immutable settings of the cleaner. Each change returns a new configuration,
+ * so an instance can be shared by any number of concurrent runs.
+ */
+public final class CleanerConfiguration {
+
+   public static final CleanerConfiguration DEFAULT = new CleanerConfiguration();
+
+   private boolean removeUnusedImports = true;
+
+   private boolean removeUnusedVariables = true;
+
+   private boolean removeUnusedClasses = true;
+
+   private boolean removeUnusedInterfaces = true;
+
+   private boolean removeUnusedAnnotationTypes = true;
+
+   private boolean removeUnusedEnumerations = true;
+
+   private boolean removeUnusedMethods = true;
+
+   private boolean removeUnusedFields = true;
+
+   private boolean ignoreSerializableMethods = false;
+
+   private boolean foldConstantConditions = false;
+
+   private boolean removeWriteOnlyFields = false;
+
+   private boolean reportOnly = false;
+
+   private long maxCascadeSteps = 0;
+
+   private long maxVisitedNodes = 0;
+
+   private long maxWallTimeMillis = 0;
+
+   private ExclusionIndex exclusions = ExclusionIndex.EMPTY;
+
+   private CleanerConfiguration() {
+   }
+
+   private CleanerConfiguration copy() {
+      CleanerConfiguration copy = new CleanerConfiguration();
+      copy.removeUnusedImports = removeUnusedImports;
+      copy.removeUnusedVariables = removeUnusedVariables;
+      copy.removeUnusedClasses = removeUnusedClasses;
+      copy.removeUnusedInterfaces = removeUnusedInterfaces;
+      copy.removeUnusedAnnotationTypes = removeUnusedAnnotationTypes;
+      copy.removeUnusedEnumerations = removeUnusedEnumerations;
+      copy.removeUnusedMethods = removeUnusedMethods;
+      copy.removeUnusedFields = removeUnusedFields;
+      copy.ignoreSerializableMethods = ignoreSerializableMethods;
+      copy.foldConstantConditions = foldConstantConditions;
+      copy.removeWriteOnlyFields = removeWriteOnlyFields;
+      copy.reportOnly = reportOnly;
+      copy.maxCascadeSteps = maxCascadeSteps;
+      copy.maxVisitedNodes = maxVisitedNodes;
+      copy.maxWallTimeMillis = maxWallTimeMillis;
+      copy.exclusions = exclusions;
+      return copy;
+   }
+
+   public boolean isRemoveUnusedImports() {
+      return removeUnusedImports;
+   }
+
+   public CleanerConfiguration withRemoveUnusedImports(boolean removeUnusedImports) {
+      CleanerConfiguration copy = copy();
+      copy.removeUnusedImports = removeUnusedImports;
+      return copy;
+   }
+
+   public boolean isRemoveUnusedVariables() {
+      return removeUnusedVariables;
+   }
+
+   public CleanerConfiguration withRemoveUnusedVariables(boolean removeUnusedVariables) {
+      CleanerConfiguration copy = copy();
+      copy.removeUnusedVariables = removeUnusedVariables;
+      return copy;
+   }
+
+   public boolean isRemoveUnusedClasses() {
+      return removeUnusedClasses;
+   }
+
+   public CleanerConfiguration withRemoveUnusedClasses(boolean removeUnusedClasses) {
+      CleanerConfiguration copy = copy();
+      copy.removeUnusedClasses = removeUnusedClasses;
+      return copy;
+   }
+
+   public boolean isRemoveUnusedInterfaces() {
+      return removeUnusedInterfaces;
+   }
+
+   public CleanerConfiguration withRemoveUnusedInterfaces(boolean removeUnusedInterfaces) {
+      CleanerConfiguration copy = copy();
+      copy.removeUnusedInterfaces = removeUnusedInterfaces;
+      return copy;
+   }
+
+   public boolean isRemoveUnusedAnnotationTypes() {
+      return removeUnusedAnnotationTypes;
+   }
+
+   public CleanerConfiguration withRemoveUnusedAnnotationTypes(boolean removeUnusedAnnotationTypes) {
+      CleanerConfiguration copy = copy();
+      copy.removeUnusedAnnotationTypes = removeUnusedAnnotationTypes;
+      return copy;
+   }
+
+   public boolean isRemoveUnusedEnumerations() {
+      return removeUnusedEnumerations;
+   }
+
+   public CleanerConfiguration withRemoveUnusedEnumerations(boolean removeUnusedEnumerations) {
+      CleanerConfiguration copy = copy();
+      copy.removeUnusedEnumerations = removeUnusedEnumerations;
+      return copy;
+   }
+
+   public boolean isRemoveUnusedMethods() {
+      return removeUnusedMethods;
+   }
+
+   public CleanerConfiguration withRemoveUnusedMethods(boolean removeUnusedMethods) {
+      CleanerConfiguration copy = copy();
+      copy.removeUnusedMethods = removeUnusedMethods;
+      return copy;
+   }
+
+   public boolean isRemoveUnusedFields() {
+      return removeUnusedFields;
+   }
+
+   public CleanerConfiguration withRemoveUnusedFields(boolean removeUnusedFields) {
+      CleanerConfiguration copy = copy();
+      copy.removeUnusedFields = removeUnusedFields;
+      return copy;
+   }
+
+   public boolean isIgnoreSerializableMethods() {
+      return ignoreSerializableMethods;
+   }
+
+   public CleanerConfiguration withIgnoreSerializableMethods(boolean ignoreSerializableMethods) {
+      CleanerConfiguration copy = copy();
+      copy.ignoreSerializableMethods = ignoreSerializableMethods;
+      return copy;
+   }
+
+   /**
+    * The <code>if</code> statements, <code>while</code> loops and
+    * conditional expressions whose condition only depends on literals and
+    * final fields with constant initializers keep just the branch that runs,
+    * and the declarations only used by the other branch become unused.
+    */
+   public boolean isFoldConstantConditions() {
+      return foldConstantConditions;
+   }
+
+   public CleanerConfiguration withFoldConstantConditions(boolean foldConstantConditions) {
+      CleanerConfiguration copy = copy();
+      copy.foldConstantConditions = foldConstantConditions;
+      return copy;
+   }
+
+   /**
+    * The private fields that are only assigned are removed with their
+    * assignments, unless they are volatile, annotated or part of the
+    * serialized form, because their values can be read without a reference
+    * in the source.
+    */
+   public boolean isRemoveWriteOnlyFields() {
+      return removeWriteOnlyFields;
+   }
+
+   public CleanerConfiguration withRemoveWriteOnlyFields(boolean removeWriteOnlyFields) {
+      CleanerConfiguration copy = copy();
+      copy.removeWriteOnlyFields = removeWriteOnlyFields;
+      return copy;
+   }
+
+   /**
+    * The dead declarations are reported to the finding listener and the
+    * compilation units are not modified.
+    */
+   public boolean isReportOnly() {
+      return reportOnly;
+   }
+
+   public CleanerConfiguration withReportOnly(boolean reportOnly) {
+      CleanerConfiguration copy = copy();
+      copy.reportOnly = reportOnly;
+      return copy;
+   }
+
+   /**
+    * Maximum definitions analyzed again by the cascade of each compilation
+    * unit, or 0 for no limit.
+    */
+   public long getMaxCascadeSteps() {
+      return maxCascadeSteps;
+   }
+
+   public CleanerConfiguration withMaxCascadeSteps(long maxCascadeSteps) {
+      CleanerConfiguration copy = copy();
+      copy.maxCascadeSteps = maxCascadeSteps;
+      return copy;
+   }
+
+   /**
+    * Maximum declarations and statements visited in each compilation unit, or
+    * 0 for no limit.
+    */
+   public long getMaxVisitedNodes() {
+      return maxVisitedNodes;
+   }
+
+   public CleanerConfiguration withMaxVisitedNodes(long maxVisitedNodes) {
+      CleanerConfiguration copy = copy();
+      copy.maxVisitedNodes = maxVisitedNodes;
+      return copy;
+   }
+
+   /**
+    * Maximum milliseconds spent in each compilation unit, or 0 for no limit.
+    */
+   public long getMaxWallTimeMillis() {
+      return maxWallTimeMillis;
+   }
+
+   public CleanerConfiguration withMaxWallTimeMillis(long maxWallTimeMillis) {
+      CleanerConfiguration copy = copy();
+      copy.maxWallTimeMillis = maxWallTimeMillis;
+      return copy;
+   }
+
+   public CleanerConfiguration withExcludedMethods(Collection<MethodLink> links) {
+      CleanerConfiguration copy = copy();
+      copy.exclusions = exclusions.withMethods(links);
+      return copy;
+   }
+
+   public CleanerConfiguration withExcludedFields(Collection<FieldLink> links) {
+      CleanerConfiguration copy = copy();
+      copy.exclusions = exclusions.withFields(links);
+      return copy;
+   }
+
+   /**
+    * Text that changes whenever a setting that affects the result changes.
+    */
+   public String getFingerprint() {
+      StringBuilder sb = new StringBuilder();
+      boolean[] flags = { removeUnusedImports, removeUnusedVariables, removeUnusedClasses, removeUnusedInterfaces,
+            removeUnusedAnnotationTypes, removeUnusedEnumerations, removeUnusedMethods, removeUnusedFields,
+            ignoreSerializableMethods, reportOnly, foldConstantConditions, removeWriteOnlyFields };
+      for (boolean flag : flags) {
+         sb.append(flag ? '1' : '0');
+      }
+      return sb.append('|').append(exclusions.getFingerprint()).toString();
+   }
+
+   public boolean isExcluded(Method method) {
+      return exclusions.isExcluded(method);
+   }
+
+   public boolean isExcluded(Field field) {
+      return exclusions.isExcluded(field);
+   }
+}
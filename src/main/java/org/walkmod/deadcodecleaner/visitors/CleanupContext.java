@@ -0,0 +1,75 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import org.walkmod.deadcodecleaner.metrics.CleanupMetrics;
+import org.walkmod.javalang.ast.Node;
+
+/**
+ * State of the cleanup of a single compilation unit. It is created for each
+ * run, so the configured visitor never holds state between runs.
+ */
+class CleanupContext {
+
+   private final CleanupMetrics metrics = new CleanupMetrics();
+
+   private final Budget budget;
+
+   private final PendingRemovals pendingRemovals;
+
+   private final UsageIndex usageIndex = new UsageIndex();
+
+   private final UnusedDefinitionsRemover remover;
+
+   public CleanupContext(CleanDeadDeclarationsVisitor<?> visitor, CleanerConfiguration configuration) {
+      boolean readOnly = configuration.isReportOnly();
+      this.budget = new Budget(configuration, metrics);
+      this.pendingRemovals = new PendingRemovals(readOnly, metrics, budget);
+      this.remover = new UnusedDefinitionsRemover(visitor, readOnly);
+   }
+
+   public boolean isReadOnly() {
+      return pendingRemovals.isReadOnly();
+   }
+
+   public CleanupMetrics getMetrics() {
+      return metrics;
+   }
+
+   public Budget getBudget() {
+      return budget;
+   }
+
+   public PendingRemovals getPendingRemovals() {
+      return pendingRemovals;
+   }
+
+   public UsageIndex getUsageIndex() {
+      return usageIndex;
+   }
+
+   public UnusedDefinitionsRemover getRemover() {
+      return remover;
+   }
+
+   /**
+    * Counts a node removed without marking it, because it is not in a list
+    * that is swept.
+    */
+   public void removed(Node node) {
+      metrics.removed(Findings.getKind(node));
+   }
+}
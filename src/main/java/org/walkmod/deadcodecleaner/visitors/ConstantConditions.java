@@ -0,0 +1,324 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.math.BigInteger;
+
+import org.walkmod.javalang.ast.Node;
+import org.walkmod.javalang.ast.SymbolDefinition;
+import org.walkmod.javalang.ast.SymbolReference;
+import org.walkmod.javalang.ast.body.FieldDeclaration;
+import org.walkmod.javalang.ast.body.ModifierSet;
+import org.walkmod.javalang.ast.body.VariableDeclarator;
+import org.walkmod.javalang.ast.expr.BinaryExpr;
+import org.walkmod.javalang.ast.expr.BooleanLiteralExpr;
+import org.walkmod.javalang.ast.expr.EnclosedExpr;
+import org.walkmod.javalang.ast.expr.Expression;
+import org.walkmod.javalang.ast.expr.FieldAccessExpr;
+import org.walkmod.javalang.ast.expr.IntegerLiteralExpr;
+import org.walkmod.javalang.ast.expr.LongLiteralExpr;
+import org.walkmod.javalang.ast.expr.NameExpr;
+import org.walkmod.javalang.ast.expr.UnaryExpr;
+import org.walkmod.javalang.ast.type.PrimitiveType;
+import org.walkmod.javalang.ast.type.Type;
+
+/**
+ * Evaluates the conditions built from boolean and integer literals and from
+ * final fields initialized with such expressions. The operators follow the
+ * rules of the language, including the int and long overflows, and the
+ * right operand of <code>&amp;&amp;</code> and <code>||</code> may be any
+ * expression when the left one decides the result, because it is never
+ * evaluated. The value of a field is converted to its declared type, and
+ * only the boolean, int and long fields are evaluated.
+ */
+class ConstantConditions {
+
+   /**
+    * Fields followed to find a value, to stop at circular initializers.
+    */
+   private static final int MAX_DEPTH = 16;
+
+   /**
+    * @return the value of the condition, or null if it is not constant
+    */
+   public static Boolean evaluate(Expression condition) {
+      Object value = evaluate(condition, 0);
+      return value instanceof Boolean ? (Boolean) value : null;
+   }
+
+   /**
+    * Syntactic check, on a compilation unit that has only been parsed, of
+    * whether the condition may be constant once its names are resolved.
+    */
+   public static boolean mayBeConstant(Expression e) {
+      if (e instanceof BooleanLiteralExpr || e instanceof IntegerLiteralExpr || e instanceof LongLiteralExpr
+            || e instanceof NameExpr) {
+         return true;
+      }
+      if (e instanceof FieldAccessExpr) {
+         Expression scope = ((FieldAccessExpr) e).getScope();
+         return scope == null || mayBeConstant(scope);
+      }
+      if (e instanceof EnclosedExpr) {
+         return mayBeConstant(((EnclosedExpr) e).getInner());
+      }
+      if (e instanceof UnaryExpr) {
+         return mayBeConstant(((UnaryExpr) e).getExpr());
+      }
+      if (e instanceof BinaryExpr) {
+         return mayBeConstant(((BinaryExpr) e).getLeft()) && mayBeConstant(((BinaryExpr) e).getRight());
+      }
+      return false;
+   }
+
+   private static Object evaluate(Expression e, int depth) {
+      if (e == null || depth > MAX_DEPTH) {
+         return null;
+      }
+      if (e instanceof BooleanLiteralExpr) {
+         return ((BooleanLiteralExpr) e).getValue();
+      }
+      if (e instanceof LongLiteralExpr) {
+         return parse(((LongLiteralExpr) e).getValue(), true);
+      }
+      if (e instanceof IntegerLiteralExpr) {
+         return parse(((IntegerLiteralExpr) e).getValue(), false);
+      }
+      if (e instanceof EnclosedExpr) {
+         return evaluate(((EnclosedExpr) e).getInner(), depth);
+      }
+      if (e instanceof UnaryExpr) {
+         return evaluate((UnaryExpr) e, depth);
+      }
+      if (e instanceof BinaryExpr) {
+         return evaluate((BinaryExpr) e, depth);
+      }
+      if (e instanceof NameExpr || e instanceof FieldAccessExpr) {
+         return evaluate(((SymbolReference) e).getSymbolDefinition(), depth);
+      }
+      return null;
+   }
+
+   private static Object evaluate(SymbolDefinition def, int depth) {
+      if (!(def instanceof VariableDeclarator)) {
+         return null;
+      }
+      VariableDeclarator var = (VariableDeclarator) def;
+      Node parent = var.getParentNode();
+      if (!(parent instanceof FieldDeclaration) || !ModifierSet.isFinal(((FieldDeclaration) parent).getModifiers())
+            || var.getId().getArrayCount() > 0) {
+         return null;
+      }
+      Type type = ((FieldDeclaration) parent).getType();
+      if (!(type instanceof PrimitiveType)) {
+         return null;
+      }
+      Object value = evaluate(var.getInit(), depth + 1);
+      switch (((PrimitiveType) type).getType()) {
+      case Boolean:
+         return value instanceof Boolean ? value : null;
+      case Int:
+         return value instanceof Integer ? value : null;
+      case Long:
+         // the initializer is widened, as in long L = 1
+         return value instanceof Integer || value instanceof Long ? (Object) ((Number) value).longValue() : null;
+      default:
+         return null;
+      }
+   }
+
+   private static Object evaluate(UnaryExpr e, int depth) {
+      Object value = evaluate(e.getExpr(), depth);
+      if (value == null) {
+         return null;
+      }
+      switch (e.getOperator()) {
+      case not:
+         return value instanceof Boolean ? !(Boolean) value : null;
+      case positive:
+         return value instanceof Boolean ? null : value;
+      case negative:
+         if (value instanceof Integer) {
+            return -(Integer) value;
+         }
+         return value instanceof Long ? -(Long) value : null;
+      case inverse:
+         if (value instanceof Integer) {
+            return ~(Integer) value;
+         }
+         return value instanceof Long ? ~(Long) value : null;
+      default:
+         return null;
+      }
+   }
+
+   private static Object evaluate(BinaryExpr e, int depth) {
+      BinaryExpr.Operator op = e.getOperator();
+      Object left = evaluate(e.getLeft(), depth);
+      if (left == null) {
+         return null;
+      }
+      if ((op == BinaryExpr.Operator.and && Boolean.FALSE.equals(left))
+            || (op == BinaryExpr.Operator.or && Boolean.TRUE.equals(left))) {
+         return left;
+      }
+      Object right = evaluate(e.getRight(), depth);
+      if (right == null) {
+         return null;
+      }
+      if (left instanceof Boolean && right instanceof Boolean) {
+         boolean l = (Boolean) left;
+         boolean r = (Boolean) right;
+         switch (op) {
+         case and:
+         case binAnd:
+            return l & r;
+         case or:
+         case binOr:
+            return l | r;
+         case xor:
+         case notEquals:
+            return l ^ r;
+         case equals:
+            return l == r;
+         default:
+            return null;
+         }
+      }
+      if (left instanceof Boolean || right instanceof Boolean) {
+         return null;
+      }
+      if (op == BinaryExpr.Operator.lShift || op == BinaryExpr.Operator.rSignedShift
+            || op == BinaryExpr.Operator.rUnsignedShift) {
+         // the type of a shift is the one of its left operand
+         int distance = ((Number) right).intValue();
+         if (left instanceof Integer) {
+            int l = (Integer) left;
+            return op == BinaryExpr.Operator.lShift ? l << distance
+                  : (op == BinaryExpr.Operator.rSignedShift ? l >> distance : l >>> distance);
+         }
+         long l = (Long) left;
+         return op == BinaryExpr.Operator.lShift ? l << distance
+               : (op == BinaryExpr.Operator.rSignedShift ? l >> distance : l >>> distance);
+      }
+      if (left instanceof Integer && right instanceof Integer) {
+         return evaluate(op, (Integer) left, (Integer) right);
+      }
+      return evaluate(op, ((Number) left).longValue(), ((Number) right).longValue());
+   }
+
+   private static Object evaluate(BinaryExpr.Operator op, int l, int r) {
+      switch (op) {
+      case equals:
+         return l == r;
+      case notEquals:
+         return l != r;
+      case less:
+         return l < r;
+      case greater:
+         return l > r;
+      case lessEquals:
+         return l <= r;
+      case greaterEquals:
+         return l >= r;
+      case plus:
+         return l + r;
+      case minus:
+         return l - r;
+      case times:
+         return l * r;
+      case divide:
+         return r != 0 ? l / r : null;
+      case remainder:
+         return r != 0 ? l % r : null;
+      case binAnd:
+         return l & r;
+      case binOr:
+         return l | r;
+      case xor:
+         return l ^ r;
+      default:
+         return null;
+      }
+   }
+
+   private static Object evaluate(BinaryExpr.Operator op, long l, long r) {
+      switch (op) {
+      case equals:
+         return l == r;
+      case notEquals:
+         return l != r;
+      case less:
+         return l < r;
+      case greater:
+         return l > r;
+      case lessEquals:
+         return l <= r;
+      case greaterEquals:
+         return l >= r;
+      case plus:
+         return l + r;
+      case minus:
+         return l - r;
+      case times:
+         return l * r;
+      case divide:
+         return r != 0 ? l / r : null;
+      case remainder:
+         return r != 0 ? l % r : null;
+      case binAnd:
+         return l & r;
+      case binOr:
+         return l | r;
+      case xor:
+         return l ^ r;
+      default:
+         return null;
+      }
+   }
+
+   /**
+    * @return the value of a decimal, hexadecimal, octal or binary literal,
+    *         or null if it can not be parsed
+    */
+   private static Object parse(String literal, boolean isLong) {
+      if (literal == null) {
+         return null;
+      }
+      String digits = literal.replace("_", "");
+      if (digits.endsWith("L") || digits.endsWith("l")) {
+         digits = digits.substring(0, digits.length() - 1);
+      }
+      int radix = 10;
+      if (digits.startsWith("0x") || digits.startsWith("0X")) {
+         radix = 16;
+         digits = digits.substring(2);
+      } else if (digits.startsWith("0b") || digits.startsWith("0B")) {
+         radix = 2;
+         digits = digits.substring(2);
+      } else if (digits.length() > 1 && digits.startsWith("0")) {
+         radix = 8;
+         digits = digits.substring(1);
+      }
+      try {
+         // the literals in other radixes than 10 may set the sign bit
+         long value = new BigInteger(digits, radix).longValue();
+         return isLong ? (Object) value : (Object) (int) value;
+      } catch (NumberFormatException e) {
+         return null;
+      }
+   }
+}
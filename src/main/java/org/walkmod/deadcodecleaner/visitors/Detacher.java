@@ -0,0 +1,97 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.walkmod.javalang.ast.Node;
+import org.walkmod.javalang.ast.SymbolDefinition;
+import org.walkmod.javalang.ast.SymbolReference;
+
+/**
+ * Severs the links between a removed subtree and the semantic model of the
+ * compilation unit that keeps it. The references inside the subtree are
+ * dropped from the usages of their definitions and from the body references
+ * of the enclosing definitions, and the definitions inside the subtree forget
+ * their own usages, so nothing that is still alive points to the subtree.
+ */
+class Detacher {
+
+   /**
+    * @return the nodes of the subtree
+    */
+   public static int detach(Node root) {
+      Set<Node> subtree = getSubtree(root);
+      for (Node node : subtree) {
+         if (node instanceof SymbolReference) {
+            SymbolReference ref = (SymbolReference) node;
+            SymbolDefinition def = ref.getSymbolDefinition();
+            if (def != null) {
+               if (!subtree.contains(def)) {
+                  removeAll(def.getUsages(), subtree);
+               }
+               ref.setSymbolDefinition(null);
+            }
+         }
+         if (node instanceof SymbolDefinition) {
+            SymbolDefinition def = (SymbolDefinition) node;
+            def.setUsages(null);
+            def.setBodyReferences(null);
+         }
+      }
+      for (Node current = root.getParentNode(); current != null; current = current.getParentNode()) {
+         if (current instanceof SymbolDefinition) {
+            removeAll(((SymbolDefinition) current).getBodyReferences(), subtree);
+         }
+      }
+      return subtree.size();
+   }
+
+   /**
+    * @return the node and all its descendants
+    */
+   public static Set<Node> getSubtree(Node root) {
+      Set<Node> subtree = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+      List<Node> pending = new ArrayList<Node>();
+      pending.add(root);
+      while (!pending.isEmpty()) {
+         Node node = pending.remove(pending.size() - 1);
+         if (subtree.add(node)) {
+            List<Node> children = node.getChildren();
+            if (children != null) {
+               pending.addAll(children);
+            }
+         }
+      }
+      return subtree;
+   }
+
+   private static void removeAll(List<SymbolReference> refs, Set<Node> subtree) {
+      if (refs != null) {
+         Iterator<SymbolReference> it = refs.iterator();
+         while (it.hasNext()) {
+            if (subtree.contains(it.next())) {
+               it.remove();
+            }
+         }
+      }
+   }
+}
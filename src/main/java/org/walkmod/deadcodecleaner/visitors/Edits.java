@@ -0,0 +1,158 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.walkmod.deadcodecleaner.report.Finding;
+import org.walkmod.deadcodecleaner.report.SourceEdit;
+import org.walkmod.javalang.ast.Node;
+import org.walkmod.javalang.ast.body.BodyDeclaration;
+import org.walkmod.javalang.ast.body.FieldDeclaration;
+import org.walkmod.javalang.ast.body.JavadocComment;
+import org.walkmod.javalang.ast.body.VariableDeclarator;
+import org.walkmod.javalang.ast.expr.VariableDeclarationExpr;
+import org.walkmod.javalang.ast.stmt.BlockStmt;
+import org.walkmod.javalang.ast.stmt.ExpressionStmt;
+import org.walkmod.javalang.ast.stmt.Statement;
+
+/**
+ * Translates the nodes marked by a read-only run into the edits that remove
+ * them from the source. A node inside another marked node is removed with
+ * it, a declaration takes its Javadoc with it, a variable that shares its
+ * declaration with live variables takes a comma with it, a statement that is
+ * not inside a block is replaced by an empty statement, and a node replaced
+ * by one of its children loses the text around the child.
+ */
+class Edits {
+
+   /**
+    * @param replacements
+    *           children that take the place of the replaced nodes
+    */
+   public static List<SourceEdit> toEdits(List<Node> nodes, Map<Node, Node> replacements) {
+      Set<Node> marked = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+      marked.addAll(nodes);
+      List<SourceEdit> edits = new ArrayList<SourceEdit>(nodes.size());
+      for (Node node : nodes) {
+         if (hasMarkedAncestor(node, marked, replacements)) {
+            continue;
+         }
+         String symbol = getSymbol(node);
+         Node child = replacements.get(node);
+         if (child != null) {
+            // the text around the child is removed, and the child is kept
+            edits.add(new SourceEdit(node.getBeginLine(), node.getBeginColumn(), child.getBeginLine(),
+                  child.getBeginColumn(), "", symbol));
+            edits.add(new SourceEdit(child.getEndLine(), child.getEndColumn() + 1, node.getEndLine(),
+                  node.getEndColumn() + 1, "", symbol));
+            continue;
+         }
+         if (node instanceof VariableDeclarator) {
+            Node parent = node.getParentNode();
+            List<VariableDeclarator> vars = getVariables(parent);
+            if (vars != null && !marked.containsAll(vars)) {
+               edits.add(toEdit((VariableDeclarator) node, vars, marked, symbol));
+               continue;
+            }
+            // the whole declaration goes away, with its statement if any
+            node = parent instanceof VariableDeclarationExpr ? parent.getParentNode() : parent;
+            boolean removable = node instanceof FieldDeclaration
+                  || (node instanceof ExpressionStmt && node.getParentNode() instanceof BlockStmt);
+            if (!removable || !marked.add(node)) {
+               continue;
+            }
+         }
+         String replacement = "";
+         if (node instanceof Statement && !(node.getParentNode() instanceof BlockStmt)) {
+            replacement = ";";
+         }
+         Node begin = node;
+         if (node instanceof BodyDeclaration) {
+            JavadocComment javadoc = ((BodyDeclaration) node).getJavaDoc();
+            if (javadoc != null && javadoc.getBeginLine() > 0 && isBefore(javadoc, node)) {
+               begin = javadoc;
+            }
+         }
+         edits.add(new SourceEdit(begin.getBeginLine(), begin.getBeginColumn(), node.getEndLine(),
+               node.getEndColumn() + 1, replacement, symbol));
+      }
+      return edits;
+   }
+
+   private static String getSymbol(Node node) {
+      Finding finding = Findings.toFinding(node);
+      return finding != null ? finding.getName() : Findings.getName(node);
+   }
+
+   private static boolean hasMarkedAncestor(Node node, Set<Node> marked, Map<Node, Node> replacements) {
+      Node child = node;
+      for (Node current = node.getParentNode(); current != null; current = current.getParentNode()) {
+         if (marked.contains(current) && replacements.get(current) != child) {
+            return true;
+         }
+         child = current;
+      }
+      return false;
+   }
+
+   private static List<VariableDeclarator> getVariables(Node parent) {
+      if (parent instanceof FieldDeclaration) {
+         return ((FieldDeclaration) parent).getVariables();
+      }
+      if (parent instanceof VariableDeclarationExpr) {
+         return ((VariableDeclarationExpr) parent).getVars();
+      }
+      return null;
+   }
+
+   /**
+    * Removes the variable up to the next one, or from the end of the last
+    * live variable if all the following ones are removed too.
+    */
+   private static SourceEdit toEdit(VariableDeclarator var, List<VariableDeclarator> vars, Set<Node> marked,
+         String symbol) {
+      int index = -1;
+      int lastLive = -1;
+      for (int i = 0; i < vars.size(); i++) {
+         VariableDeclarator current = vars.get(i);
+         if (current == var) {
+            index = i;
+         }
+         if (!marked.contains(current)) {
+            lastLive = i;
+         }
+      }
+      if (index < lastLive) {
+         VariableDeclarator next = vars.get(index + 1);
+         return new SourceEdit(var.getBeginLine(), var.getBeginColumn(), next.getBeginLine(), next.getBeginColumn(),
+               "", symbol);
+      }
+      VariableDeclarator live = vars.get(lastLive);
+      return new SourceEdit(live.getEndLine(), live.getEndColumn() + 1, var.getEndLine(), var.getEndColumn() + 1,
+            "", symbol);
+   }
+
+   private static boolean isBefore(Node a, Node b) {
+      return a.getBeginLine() < b.getBeginLine()
+            || (a.getBeginLine() == b.getBeginLine() && a.getBeginColumn() < b.getBeginColumn());
+   }
+}
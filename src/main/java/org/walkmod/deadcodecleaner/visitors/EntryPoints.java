@@ -0,0 +1,114 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Immutable roots of the project-wide reachability: main methods, members
+ * annotated as entry points (such as tests) and the types or members that are
+ * only accessed through reflection.
+ */
+public final class EntryPoints {
+
+   public static final EntryPoints DEFAULT = new EntryPoints(true, new HashSet<String>(Arrays.asList(
+         "org.junit.Test", "org.junit.Before", "org.junit.After", "org.junit.BeforeClass", "org.junit.AfterClass",
+         "org.junit.jupiter.api.Test", "org.junit.jupiter.api.BeforeEach", "org.junit.jupiter.api.AfterEach",
+         "org.junit.jupiter.api.BeforeAll", "org.junit.jupiter.api.AfterAll")), Collections.<String> emptySet());
+
+   private final boolean mainMethods;
+
+   private final Set<String> annotations;
+
+   private final Set<String> reflective;
+
+   private EntryPoints(boolean mainMethods, Set<String> annotations, Set<String> reflective) {
+      this.mainMethods = mainMethods;
+      this.annotations = Collections.unmodifiableSet(annotations);
+      this.reflective = Collections.unmodifiableSet(reflective);
+   }
+
+   public boolean isMainMethods() {
+      return mainMethods;
+   }
+
+   public EntryPoints withMainMethods(boolean mainMethods) {
+      return new EntryPoints(mainMethods, annotations, reflective);
+   }
+
+   public Set<String> getAnnotations() {
+      return annotations;
+   }
+
+   /**
+    * Adds the qualified names of the annotations whose members are entry
+    * points.
+    */
+   public EntryPoints withAnnotations(Collection<String> names) {
+      Set<String> copy = new HashSet<String>(annotations);
+      copy.addAll(names);
+      return new EntryPoints(mainMethods, copy, reflective);
+   }
+
+   public Set<String> getReflective() {
+      return reflective;
+   }
+
+   /**
+    * Adds the types (<code>pkg.Type</code>), which are kept with all their
+    * members, and the members (<code>pkg.Type#name</code>, any overload) that
+    * are accessed through reflection. Nested types use their binary name.
+    */
+   public EntryPoints withReflective(Collection<String> names) {
+      Set<String> copy = new HashSet<String>(reflective);
+      copy.addAll(names);
+      return new EntryPoints(mainMethods, annotations, copy);
+   }
+
+   /**
+    * Stable text of the entry points, independent of the order in which they
+    * were configured.
+    */
+   public String getFingerprint() {
+      StringBuilder sb = new StringBuilder().append(mainMethods).append('|');
+      for (String name : new TreeSet<String>(annotations)) {
+         sb.append(name).append(';');
+      }
+      sb.append('|');
+      for (String name : new TreeSet<String>(reflective)) {
+         sb.append(name).append(';');
+      }
+      return sb.toString();
+   }
+
+   public boolean isEntryPointAnnotation(Class<?> annotation) {
+      return annotation != null && annotations.contains(annotation.getName());
+   }
+
+   public boolean isReflective(Class<?> clazz) {
+      return !reflective.isEmpty() && clazz != null && reflective.contains(clazz.getName());
+   }
+
+   public boolean isReflective(Class<?> clazz, String member) {
+      return !reflective.isEmpty() && clazz != null
+            && (reflective.contains(clazz.getName()) || reflective.contains(clazz.getName() + "#" + member));
+   }
+}
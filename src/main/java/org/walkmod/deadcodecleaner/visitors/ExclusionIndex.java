@@ -0,0 +1,177 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+import org.walkmod.javalang.javadoclinks.FieldLink;
+import org.walkmod.javalang.javadoclinks.MethodLink;
+
+/**
+ * Immutable index of the excluded methods and fields, keyed by the declaring
+ * class name, the member name and, for methods, the erased parameter types.
+ */
+class ExclusionIndex {
+
+   public static final ExclusionIndex EMPTY = new ExclusionIndex(Collections.<String> emptySet(),
+         Collections.<String> emptySet(), Collections.<String> emptySet(), Collections.<String> emptySet());
+
+   private final Set<String> methods;
+
+   private final Set<String> methodNames;
+
+   private final Set<String> fields;
+
+   private final Set<String> fieldNames;
+
+   /**
+    * Names of the classes that declare the members of anonymous classes. The
+    * anonymous classes are weak keys, so that the index, which may be shared
+    * between runs, does not keep the classes of a project or their loaders,
+    * and the same binary name from another loader is not mistaken for them.
+    */
+   private final Map<Class<?>, String> declaringClassNames = Collections
+         .synchronizedMap(new WeakHashMap<Class<?>, String>());
+
+   private ExclusionIndex(Set<String> methods, Set<String> methodNames, Set<String> fields, Set<String> fieldNames) {
+      this.methods = methods;
+      this.methodNames = methodNames;
+      this.fields = fields;
+      this.fieldNames = fieldNames;
+   }
+
+   public ExclusionIndex withMethods(Collection<MethodLink> links) {
+      Set<String> keys = new HashSet<String>(methods);
+      Set<String> names = new HashSet<String>(methodNames);
+      for (MethodLink link : links) {
+         String className = link.getClassName();
+         if (className != null && !"".equals(className)) {
+            StringBuilder key = memberKey(className, link.getName()).append('(');
+            List<String> args = link.getArguments();
+            if (args != null) {
+               Iterator<String> it = args.iterator();
+               while (it.hasNext()) {
+                  key.append(it.next());
+                  if (it.hasNext()) {
+                     key.append(',');
+                  }
+               }
+            }
+            keys.add(key.append(')').toString());
+            names.add(link.getName());
+         }
+      }
+      return new ExclusionIndex(Collections.unmodifiableSet(keys), Collections.unmodifiableSet(names), fields,
+            fieldNames);
+   }
+
+   public ExclusionIndex withFields(Collection<FieldLink> links) {
+      Set<String> keys = new HashSet<String>(fields);
+      Set<String> names = new HashSet<String>(fieldNames);
+      for (FieldLink link : links) {
+         String className = link.getClassName();
+         if (className != null && !"".equals(className)) {
+            keys.add(memberKey(className, link.getName()).toString());
+            names.add(link.getName());
+         }
+      }
+      return new ExclusionIndex(methods, methodNames, Collections.unmodifiableSet(keys),
+            Collections.unmodifiableSet(names));
+   }
+
+   /**
+    * Stable text of the excluded members, independent of the order in which
+    * they were configured.
+    */
+   public String getFingerprint() {
+      StringBuilder sb = new StringBuilder();
+      for (String key : new TreeSet<String>(methods)) {
+         sb.append(key).append(';');
+      }
+      sb.append('|');
+      for (String key : new TreeSet<String>(fields)) {
+         sb.append(key).append(';');
+      }
+      return sb.toString();
+   }
+
+   public boolean isEmpty() {
+      return methods.isEmpty() && fields.isEmpty();
+   }
+
+   public boolean isExcluded(Method method) {
+      if (method == null || !methodNames.contains(method.getName())) {
+         return false;
+      }
+      String className = getDeclaringClassName(method.getDeclaringClass());
+      if (className == null) {
+         return false;
+      }
+      StringBuilder key = memberKey(className, method.getName()).append('(');
+      Class<?>[] params = method.getParameterTypes();
+      for (int i = 0; i < params.length; i++) {
+         if (i > 0) {
+            key.append(',');
+         }
+         key.append(params[i].getName());
+      }
+      return methods.contains(key.append(')').toString());
+   }
+
+   public boolean isExcluded(Field field) {
+      if (field == null || !fieldNames.contains(field.getName())) {
+         return false;
+      }
+      String className = getDeclaringClassName(field.getDeclaringClass());
+      return className != null && fields.contains(memberKey(className, field.getName()).toString());
+   }
+
+   private String getDeclaringClassName(Class<?> declaringClass) {
+      if (declaringClass == null) {
+         return null;
+      }
+      if (!declaringClass.isAnonymousClass()) {
+         return declaringClass.getName();
+      }
+      String name = declaringClassNames.get(declaringClass);
+      if (name == null) {
+         Class<?> clazz = declaringClass;
+         while (clazz != null && clazz.isAnonymousClass()) {
+            clazz = clazz.getSuperclass();
+         }
+         if (clazz == null) {
+            return null;
+         }
+         name = clazz.getName();
+         declaringClassNames.put(declaringClass, name);
+      }
+      return name;
+   }
+
+   private static StringBuilder memberKey(String className, String name) {
+      return new StringBuilder(className.length() + name.length() + 16).append(className).append('#').append(name);
+   }
+}
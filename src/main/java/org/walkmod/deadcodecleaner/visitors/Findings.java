@@ -0,0 +1,166 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.walkmod.deadcodecleaner.report.Finding;
+import org.walkmod.deadcodecleaner.report.Finding.Kind;
+import org.walkmod.javalang.ast.CompilationUnit;
+import org.walkmod.javalang.ast.ImportDeclaration;
+import org.walkmod.javalang.ast.Node;
+import org.walkmod.javalang.ast.PackageDeclaration;
+import org.walkmod.javalang.ast.body.ConstructorDeclaration;
+import org.walkmod.javalang.ast.body.FieldDeclaration;
+import org.walkmod.javalang.ast.body.MethodDeclaration;
+import org.walkmod.javalang.ast.body.Parameter;
+import org.walkmod.javalang.ast.body.TypeDeclaration;
+import org.walkmod.javalang.ast.body.VariableDeclarator;
+import org.walkmod.javalang.ast.stmt.ExpressionStmt;
+import org.walkmod.javalang.ast.stmt.TypeDeclarationStmt;
+
+/**
+ * Translates the nodes marked by a read-only run into findings.
+ */
+class Findings {
+
+   /**
+    * Findings of the nodes marked by a read-only instance, in marking order.
+    */
+   public static List<Finding> toFindings(PendingRemovals removals) {
+      List<Node> nodes = removals.getFindings();
+      List<Finding> findings = new ArrayList<Finding>(nodes.size());
+      for (Node node : nodes) {
+         Finding finding = toFinding(node, removals.getKind(node));
+         if (finding != null) {
+            findings.add(finding);
+         }
+      }
+      return findings;
+   }
+
+   /**
+    * @return the finding of the node, or null if the node just wraps
+    *         declarations that are reported on their own, such as the
+    *         variables of a field
+    */
+   public static Finding toFinding(Node node) {
+      return toFinding(node, getKind(node));
+   }
+
+   private static Finding toFinding(Node node, Kind kind) {
+      if (kind == null) {
+         return null;
+      }
+      if (node instanceof TypeDeclarationStmt) {
+         node = ((TypeDeclarationStmt) node).getTypeDeclaration();
+      }
+      String name;
+      if (kind == Kind.IMPORT) {
+         ImportDeclaration id = (ImportDeclaration) node;
+         name = (id.isStatic() ? "static " : "") + id.getName() + (id.isAsterisk() ? ".*" : "");
+      } else {
+         name = getName(node);
+      }
+      return new Finding(kind, name, node.getBeginLine(), node.getBeginColumn(), node.getEndLine(),
+            node.getEndColumn());
+   }
+
+   /**
+    * @return the kind of the removed node, or null if the node just wraps
+    *         declarations that are counted on their own
+    */
+   public static Kind getKind(Node node) {
+      if (node instanceof FieldDeclaration || node instanceof ExpressionStmt) {
+         return null;
+      }
+      if (node instanceof ImportDeclaration) {
+         return Kind.IMPORT;
+      }
+      if (node instanceof TypeDeclaration || node instanceof TypeDeclarationStmt) {
+         return Kind.TYPE;
+      }
+      if (node instanceof MethodDeclaration) {
+         return Kind.METHOD;
+      }
+      if (node instanceof VariableDeclarator) {
+         return node.getParentNode() instanceof FieldDeclaration ? Kind.FIELD : Kind.VARIABLE;
+      }
+      return Kind.STATEMENT;
+   }
+
+   /**
+    * Qualified name built from the enclosing types, members and variables.
+    * Members are separated with '#' from their type, and the local
+    * declarations with '/' from their member.
+    */
+   static String getName(Node node) {
+      LinkedList<Node> path = new LinkedList<Node>();
+      for (Node current = node; current != null; current = current.getParentNode()) {
+         path.addFirst(current);
+      }
+      StringBuilder sb = new StringBuilder();
+      boolean inType = false;
+      for (Node current : path) {
+         String segment = null;
+         if (current instanceof CompilationUnit) {
+            PackageDeclaration pkg = ((CompilationUnit) current).getPackage();
+            if (pkg != null) {
+               sb.append(pkg.getName());
+               inType = true;
+            }
+         } else if (current instanceof TypeDeclaration) {
+            if (sb.length() > 0) {
+               sb.append(inType ? '.' : '/');
+            }
+            sb.append(((TypeDeclaration) current).getName());
+            inType = true;
+         } else if (current instanceof MethodDeclaration) {
+            MethodDeclaration md = (MethodDeclaration) current;
+            segment = md.getName() + getParameterTypes(md.getParameters());
+         } else if (current instanceof ConstructorDeclaration) {
+            ConstructorDeclaration cd = (ConstructorDeclaration) current;
+            segment = cd.getName() + getParameterTypes(cd.getParameters());
+         } else if (current instanceof VariableDeclarator) {
+            segment = ((VariableDeclarator) current).getId().getName();
+         } else if (current == node) {
+            segment = node.getClass().getSimpleName();
+         }
+         if (segment != null) {
+            sb.append(inType ? '#' : '/').append(segment);
+            inType = false;
+         }
+      }
+      return sb.toString();
+   }
+
+   private static String getParameterTypes(List<Parameter> params) {
+      StringBuilder sb = new StringBuilder("(");
+      if (params != null) {
+         Iterator<Parameter> it = params.iterator();
+         while (it.hasNext()) {
+            sb.append(it.next().getType());
+            if (it.hasNext()) {
+               sb.append(',');
+            }
+         }
+      }
+      return sb.append(')').toString();
+   }
+}
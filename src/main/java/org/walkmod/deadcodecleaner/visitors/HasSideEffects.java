@@ -0,0 +1,203 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.util.List;
+
+import org.walkmod.javalang.ast.Node;
+import org.walkmod.javalang.ast.expr.ArrayAccessExpr;
+import org.walkmod.javalang.ast.expr.ArrayCreationExpr;
+import org.walkmod.javalang.ast.expr.ArrayInitializerExpr;
+import org.walkmod.javalang.ast.expr.AssignExpr;
+import org.walkmod.javalang.ast.expr.BinaryExpr;
+import org.walkmod.javalang.ast.expr.CastExpr;
+import org.walkmod.javalang.ast.expr.ClassExpr;
+import org.walkmod.javalang.ast.expr.ConditionalExpr;
+import org.walkmod.javalang.ast.expr.EnclosedExpr;
+import org.walkmod.javalang.ast.expr.Expression;
+import org.walkmod.javalang.ast.expr.FieldAccessExpr;
+import org.walkmod.javalang.ast.expr.InstanceOfExpr;
+import org.walkmod.javalang.ast.expr.LambdaExpr;
+import org.walkmod.javalang.ast.expr.MethodCallExpr;
+import org.walkmod.javalang.ast.expr.MethodReferenceExpr;
+import org.walkmod.javalang.ast.expr.ObjectCreationExpr;
+import org.walkmod.javalang.ast.expr.UnaryExpr;
+import org.walkmod.javalang.visitors.GenericVisitorAdapter;
+import org.walkmod.javalang.visitors.VoidVisitorAdapter;
+
+/**
+ * Stateless check of the expressions that can not be removed because they may
+ * have side effects. The instances are shared and the traversal stops at the
+ * first side effect.
+ */
+class HasSideEffects extends GenericVisitorAdapter<Boolean, Object> {
+
+   /**
+    * Method calls, object creations and class literals (which may load a
+    * class) found in an initializer.
+    */
+   public static final HasSideEffects IN_INITIALIZER = new HasSideEffects(true, false, false);
+
+   /**
+    * Method calls, object creations and lambdas found in a condition.
+    */
+   public static final HasSideEffects IN_CONDITION = new HasSideEffects(false, true, false);
+
+   /**
+    * The side effects of an initializer, plus the assignments and the
+    * increments or decrements, found in the value written to a field.
+    */
+   public static final HasSideEffects IN_WRITE = new HasSideEffects(true, false, true);
+
+   private final boolean classExprs;
+
+   private final boolean lambdas;
+
+   private final boolean assignments;
+
+   private HasSideEffects(boolean classExprs, boolean lambdas, boolean assignments) {
+      this.classExprs = classExprs;
+      this.lambdas = lambdas;
+      this.assignments = assignments;
+   }
+
+   public boolean check(Expression expr) {
+      return expr != null && expr.accept(this, null) == Boolean.TRUE;
+   }
+
+   private Boolean check(List<Expression> exprs) {
+      if (exprs != null) {
+         for (int i = 0; i < exprs.size(); i++) {
+            if (check(exprs.get(i))) {
+               return Boolean.TRUE;
+            }
+         }
+      }
+      return Boolean.FALSE;
+   }
+
+   @Override
+   public Boolean visit(MethodCallExpr n, Object arg) {
+      return Boolean.TRUE;
+   }
+
+   @Override
+   public Boolean visit(ObjectCreationExpr n, Object arg) {
+      return Boolean.TRUE;
+   }
+
+   @Override
+   public Boolean visit(ClassExpr n, Object arg) {
+      return classExprs;
+   }
+
+   @Override
+   public Boolean visit(LambdaExpr n, Object arg) {
+      return lambdas || scan(n);
+   }
+
+   @Override
+   public Boolean visit(MethodReferenceExpr n, Object arg) {
+      return scan(n);
+   }
+
+   @Override
+   public Boolean visit(ArrayAccessExpr n, Object arg) {
+      return check(n.getName()) || check(n.getIndex());
+   }
+
+   @Override
+   public Boolean visit(ArrayCreationExpr n, Object arg) {
+      return check(n.getDimensions()) || check(n.getInitializer());
+   }
+
+   @Override
+   public Boolean visit(ArrayInitializerExpr n, Object arg) {
+      return check(n.getValues());
+   }
+
+   @Override
+   public Boolean visit(AssignExpr n, Object arg) {
+      return assignments || check(n.getTarget()) || check(n.getValue());
+   }
+
+   @Override
+   public Boolean visit(BinaryExpr n, Object arg) {
+      return check(n.getLeft()) || check(n.getRight());
+   }
+
+   @Override
+   public Boolean visit(CastExpr n, Object arg) {
+      return check(n.getExpr());
+   }
+
+   @Override
+   public Boolean visit(ConditionalExpr n, Object arg) {
+      return check(n.getCondition()) || check(n.getThenExpr()) || check(n.getElseExpr());
+   }
+
+   @Override
+   public Boolean visit(EnclosedExpr n, Object arg) {
+      return check(n.getInner());
+   }
+
+   @Override
+   public Boolean visit(FieldAccessExpr n, Object arg) {
+      return check(n.getScope());
+   }
+
+   @Override
+   public Boolean visit(InstanceOfExpr n, Object arg) {
+      return check(n.getExpr());
+   }
+
+   @Override
+   public Boolean visit(UnaryExpr n, Object arg) {
+      if (assignments) {
+         UnaryExpr.Operator operator = n.getOperator();
+         if (operator == UnaryExpr.Operator.preIncrement || operator == UnaryExpr.Operator.preDecrement
+               || operator == UnaryExpr.Operator.posIncrement || operator == UnaryExpr.Operator.posDecrement) {
+            return Boolean.TRUE;
+         }
+      }
+      return check(n.getExpr());
+   }
+
+   /**
+    * Lambdas and method references contain statements or types, so they are
+    * fully traversed. They are seldom found in initializers.
+    */
+   private boolean scan(Node n) {
+      boolean[] found = new boolean[1];
+      n.accept(new VoidVisitorAdapter<boolean[]>() {
+         @Override
+         public void visit(MethodCallExpr n, boolean[] found) {
+            found[0] = true;
+         }
+
+         @Override
+         public void visit(ObjectCreationExpr n, boolean[] found) {
+            found[0] = true;
+         }
+
+         @Override
+         public void visit(ClassExpr n, boolean[] found) {
+            found[0] = found[0] || classExprs;
+         }
+      }, found);
+      return found[0];
+   }
+}
@@ -0,0 +1,177 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.walkmod.javalang.ast.Comment;
+import org.walkmod.javalang.ast.CompilationUnit;
+import org.walkmod.javalang.ast.ImportDeclaration;
+import org.walkmod.javalang.ast.PackageDeclaration;
+import org.walkmod.javalang.ast.body.JavadocComment;
+import org.walkmod.javalang.ast.body.TypeDeclaration;
+import org.walkmod.javalang.ast.expr.AnnotationExpr;
+import org.walkmod.javalang.ast.expr.FieldAccessExpr;
+import org.walkmod.javalang.ast.expr.MethodCallExpr;
+import org.walkmod.javalang.ast.expr.NameExpr;
+import org.walkmod.javalang.ast.expr.QualifiedNameExpr;
+import org.walkmod.javalang.ast.type.ClassOrInterfaceType;
+import org.walkmod.javalang.visitors.VoidVisitorAdapter;
+
+/**
+ * Removes the unused imports of a compilation unit that has only been parsed,
+ * without its semantic analysis nor the classpath of the project. An import
+ * of a type or a static member is used if its simple name appears in the
+ * types of the compilation unit as an identifier, a type, an annotation or
+ * a method name, or in the references of its Javadoc tags. The names are not
+ * resolved, so an import can be kept because of an unrelated identifier with
+ * the same name, but it is never removed while it may be used.
+ * <p>
+ * The wildcard imports can not be decided without knowing the members of
+ * the imported packages and types, so they are never removed, and
+ * {@link #hasAmbiguousImports(CompilationUnit)} tells when the semantic
+ * analysis is still needed to clean all the imports.
+ */
+public final class ImportCleaner {
+
+   private static final Pattern JAVADOC_REFERENCE = Pattern
+         .compile("(?:\\{@(?:link|linkplain|value)|@see|@throws|@exception)\\s+([^\\s}(]*(?:\\([^)]*\\))?)");
+
+   private static final Pattern IDENTIFIER = Pattern
+         .compile("[\\p{javaJavaIdentifierStart}][\\p{javaJavaIdentifierPart}]*");
+
+   public boolean hasAmbiguousImports(CompilationUnit cu) {
+      List<ImportDeclaration> imports = cu.getImports();
+      if (imports != null) {
+         for (ImportDeclaration id : imports) {
+            if (id.isAsterisk()) {
+               return true;
+            }
+         }
+      }
+      return false;
+   }
+
+   /**
+    * @return the removed imports
+    */
+   public int clean(CompilationUnit cu) {
+      List<ImportDeclaration> imports = cu.getImports();
+      if (imports == null || imports.isEmpty()) {
+         return 0;
+      }
+      Set<String> names = getUsedNames(cu);
+      List<ImportDeclaration> survivors = new ArrayList<ImportDeclaration>(imports.size());
+      for (ImportDeclaration id : imports) {
+         if (id.isAsterisk() || names.contains(id.getName().getName())) {
+            survivors.add(id);
+         }
+      }
+      int removed = imports.size() - survivors.size();
+      if (removed > 0) {
+         imports.clear();
+         imports.addAll(survivors);
+      }
+      return removed;
+   }
+
+   /**
+    * Simple names that appear in the types, in the annotations of the
+    * package and in the Javadoc comments, but not in the imports themselves.
+    */
+   static Set<String> getUsedNames(CompilationUnit cu) {
+      NameCollector collector = new NameCollector();
+      PackageDeclaration pd = cu.getPackage();
+      if (pd != null && pd.getAnnotations() != null) {
+         // the annotations of a package-info.java
+         for (AnnotationExpr annotation : pd.getAnnotations()) {
+            annotation.accept(collector, null);
+         }
+      }
+      List<TypeDeclaration> types = cu.getTypes();
+      if (types != null) {
+         for (TypeDeclaration td : types) {
+            td.accept(collector, null);
+         }
+      }
+      List<Comment> comments = cu.getComments();
+      if (comments != null) {
+         for (Comment comment : comments) {
+            if (comment instanceof JavadocComment) {
+               collector.addJavadoc(comment.getContent());
+            }
+         }
+      }
+      return collector.names;
+   }
+
+   private static class NameCollector extends VoidVisitorAdapter<Object> {
+
+      private final Set<String> names = new HashSet<String>();
+
+      public void addJavadoc(String content) {
+         if (content != null) {
+            Matcher references = JAVADOC_REFERENCE.matcher(content);
+            while (references.find()) {
+               // the type, the member and the parameter types of the reference
+               Matcher identifiers = IDENTIFIER.matcher(references.group(1));
+               while (identifiers.find()) {
+                  names.add(identifiers.group());
+               }
+            }
+         }
+      }
+
+      @Override
+      public void visit(JavadocComment n, Object arg) {
+         addJavadoc(n.getContent());
+      }
+
+      @Override
+      public void visit(NameExpr n, Object arg) {
+         names.add(n.getName());
+      }
+
+      @Override
+      public void visit(QualifiedNameExpr n, Object arg) {
+         names.add(n.getName());
+         super.visit(n, arg);
+      }
+
+      @Override
+      public void visit(ClassOrInterfaceType n, Object arg) {
+         names.add(n.getName());
+         super.visit(n, arg);
+      }
+
+      @Override
+      public void visit(MethodCallExpr n, Object arg) {
+         names.add(n.getName());
+         super.visit(n, arg);
+      }
+
+      @Override
+      public void visit(FieldAccessExpr n, Object arg) {
+         names.add(n.getField());
+         super.visit(n, arg);
+      }
+   }
+}
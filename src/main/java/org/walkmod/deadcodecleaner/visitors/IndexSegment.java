@@ -0,0 +1,129 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Declarations and references of a single compilation unit, with ids local
+ * to the segment. A segment can be stored and added to another index, so
+ * the sources that have not changed do not need to be analyzed again. The
+ * references of a compilation unit are resolved against the declarations of
+ * the others, so a stored segment is only valid while the signatures of all
+ * the compilation units stay the same.
+ */
+public final class IndexSegment {
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   final String[] names;
+
+   final int[] declared;
+
+   final int[] roots;
+
+   // pairs of ids
+   final int[] edges;
+
+   // pairs of ids of the overridden and the overriding method
+   final int[] overrides;
+
+   private final long signature;
+
+   IndexSegment(String[] names, int[] declared, int[] roots, int[] edges, int[] overrides, long signature) {
+      this.names = names;
+      this.declared = declared;
+      this.roots = roots;
+      this.edges = edges;
+      this.overrides = overrides;
+      this.signature = signature;
+   }
+
+   /**
+    * Hash of the non private types, methods and fields declared by the
+    * compilation unit, with their modifiers, supertypes and generic types.
+    */
+   public long getSignature() {
+      return signature;
+   }
+
+   public void write(DataOutput out) throws IOException {
+      out.writeLong(signature);
+      out.writeInt(names.length);
+      for (String name : names) {
+         byte[] utf8 = name.getBytes(UTF8);
+         out.writeInt(utf8.length);
+         out.write(utf8);
+      }
+      write(declared, out);
+      write(roots, out);
+      write(edges, out);
+      write(overrides, out);
+   }
+
+   private static void write(int[] ids, DataOutput out) throws IOException {
+      out.writeInt(ids.length);
+      for (int id : ids) {
+         out.writeInt(id);
+      }
+   }
+
+   /**
+    * Reads a segment written by {@link #write(DataOutput)}, validating its
+    * ids.
+    *
+    * @throws IllegalArgumentException
+    *            if the buffer does not contain a valid segment
+    */
+   public static IndexSegment read(ByteBuffer buffer) {
+      try {
+         long signature = buffer.getLong();
+         String[] names = new String[buffer.getInt()];
+         for (int i = 0; i < names.length; i++) {
+            byte[] utf8 = new byte[buffer.getInt()];
+            buffer.get(utf8);
+            names[i] = new String(utf8, UTF8);
+         }
+         int[] declared = readIds(buffer, names.length);
+         int[] roots = readIds(buffer, names.length);
+         int[] edges = readIds(buffer, names.length);
+         int[] overrides = readIds(buffer, names.length);
+         if (edges.length % 2 != 0 || overrides.length % 2 != 0) {
+            throw new IllegalArgumentException("Invalid index segment");
+         }
+         return new IndexSegment(names, declared, roots, edges, overrides, signature);
+      } catch (RuntimeException e) {
+         if (e instanceof IllegalArgumentException) {
+            throw e;
+         }
+         throw new IllegalArgumentException("Invalid index segment", e);
+      }
+   }
+
+   private static int[] readIds(ByteBuffer buffer, int names) {
+      int[] ids = new int[buffer.getInt()];
+      for (int i = 0; i < ids.length; i++) {
+         ids[i] = buffer.getInt();
+         if (ids[i] < 0 || ids[i] >= names) {
+            throw new IllegalArgumentException("Invalid index segment");
+         }
+      }
+      return ids;
+   }
+}
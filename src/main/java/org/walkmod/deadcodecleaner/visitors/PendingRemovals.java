@@ -0,0 +1,333 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.walkmod.deadcodecleaner.metrics.CleanupMetrics;
+import org.walkmod.deadcodecleaner.report.Finding.Kind;
+import org.walkmod.javalang.ast.Node;
+
+/**
+ * Nodes marked to be removed from their containers. The containers are not
+ * modified until {@link #sweep()}, which rebuilds each of them just once, and
+ * the swept nodes are released by {@link #detach()}. A read-only instance
+ * never modifies them and keeps the marked nodes in order.
+ */
+class PendingRemovals {
+
+   private final boolean readOnly;
+
+   private List<Node> findings;
+
+   private Map<List<? extends Node>, Set<Node>> pending = new IdentityHashMap<List<? extends Node>, Set<Node>>();
+
+   private Set<Node> marked = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+
+   private List<Node> swept = new ArrayList<Node>();
+
+   private Map<Node, Node> replacements = new IdentityHashMap<Node, Node>();
+
+   private Set<Node> folded = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+
+   private int removals = 0;
+
+   private final CleanupMetrics metrics;
+
+   private final Budget budget;
+
+   public PendingRemovals() {
+      this(false, new CleanupMetrics(), null);
+   }
+
+   /**
+    * @param budget
+    *           budget that ends the iterations once exhausted, or null
+    */
+   public PendingRemovals(boolean readOnly, CleanupMetrics metrics, Budget budget) {
+      this.readOnly = readOnly;
+      this.findings = readOnly ? new ArrayList<Node>() : null;
+      this.metrics = metrics;
+      this.budget = budget;
+   }
+
+   public boolean isReadOnly() {
+      return readOnly;
+   }
+
+   public void mark(List<? extends Node> container, Node node) {
+      mark(container, node, Findings.getKind(node));
+   }
+
+   /**
+    * Marks a node whose constant condition leaves no branch to run.
+    */
+   public void markFolded(List<? extends Node> container, Node node) {
+      if (!marked.contains(node)) {
+         folded.add(node);
+         mark(container, node, Kind.CONDITION);
+      }
+   }
+
+   private void mark(List<? extends Node> container, Node node, Kind kind) {
+      if (marked.add(node)) {
+         counted(kind);
+         if (readOnly) {
+            findings.add(node);
+         } else {
+            Set<Node> nodes = pending.get(container);
+            if (nodes == null) {
+               nodes = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+               pending.put(container, nodes);
+            }
+            nodes.add(node);
+         }
+      }
+   }
+
+   /**
+    * Marks, in a read-only instance, a node that is not inside a list.
+    */
+   public void markDetached(Node node) {
+      if (marked.add(node)) {
+         counted(Findings.getKind(node));
+         findings.add(node);
+      }
+   }
+
+   /**
+    * Marks a node with a constant condition that is replaced by one of its
+    * children, or by an empty statement, outside of the swept containers. A
+    * read-only instance keeps the replacement for the edits, and the others
+    * detach the dropped children with the swept nodes. The caller modifies
+    * the tree, if it is not read-only.
+    *
+    * @param replacement
+    *           child that takes the place of the node, or null
+    * @param dropped
+    *           children that are removed with the node
+    * @return if the node had not been marked yet
+    */
+   public boolean replace(Node node, Node replacement, List<? extends Node> dropped) {
+      if (!marked.add(node)) {
+         return false;
+      }
+      folded.add(node);
+      counted(Kind.CONDITION);
+      if (readOnly) {
+         findings.add(node);
+         replacements.put(node, replacement);
+      } else {
+         swept.addAll(dropped);
+      }
+      return true;
+   }
+
+   /**
+    * Children that take the place of the replaced nodes of a read-only
+    * instance, or null for the removed ones.
+    */
+   public Map<Node, Node> getReplacements() {
+      return replacements;
+   }
+
+   /**
+    * @return the kind of the marked node, or null if it just wraps
+    *         declarations that are counted on their own
+    */
+   public Kind getKind(Node node) {
+      return folded.contains(node) ? Kind.CONDITION : Findings.getKind(node);
+   }
+
+   /**
+    * The marks of a read-only instance are counted in the metrics once the
+    * run ends, by {@link #countFindings()}.
+    */
+   private void counted(Kind kind) {
+      removals++;
+      if (kind != null && !readOnly) {
+         metrics.removed(kind);
+      }
+   }
+
+   /**
+    * Drops the marked nodes of a read-only instance that are inside other
+    * marked nodes, which a real run removes with them, and counts the rest in
+    * the metrics. It is called once, when the run ends.
+    */
+   public void countFindings() {
+      List<Node> outermost = new ArrayList<Node>(findings.size());
+      for (Node node : findings) {
+         if (!hasMarkedAncestor(node)) {
+            outermost.add(node);
+            Kind kind = getKind(node);
+            if (kind != null) {
+               metrics.removed(kind);
+            }
+         }
+      }
+      findings = outermost;
+   }
+
+   /**
+    * If the node is removed with a marked ancestor. The field declarations
+    * and the statements of the variables only wrap them, so they do not hide
+    * the variables, and a replaced node keeps the child that takes its
+    * place.
+    */
+   private boolean hasMarkedAncestor(Node node) {
+      Node child = node;
+      for (Node current = node.getParentNode(); current != null; current = current.getParentNode()) {
+         if (marked.contains(current) && getKind(current) != null && replacements.get(current) != child) {
+            return true;
+         }
+         child = current;
+      }
+      return false;
+   }
+
+   /**
+    * Marked nodes, in marking order, of a read-only instance, without the
+    * ones inside other marked nodes once the run has ended.
+    */
+   public List<Node> getFindings() {
+      return findings;
+   }
+
+   /**
+    * Nodes marked since the creation, including the ones already swept.
+    */
+   public int getRemovals() {
+      return removals;
+   }
+
+   public boolean isMarked(Node node) {
+      return marked.contains(node);
+   }
+
+   public boolean isEmptyAfterSweep(List<? extends Node> container) {
+      for (Node node : container) {
+         if (!marked.contains(node)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Iterates over the container, marking the current node instead of removing
+    * it when {@link Iterator#remove()} is called. The iteration ends early
+    * when the budget is exhausted, leaving the remaining nodes untouched.
+    */
+   public <E extends Node> Iterator<E> iterator(List<E> container) {
+      return new MarkingIterator<E>(container, container.iterator());
+   }
+
+   /**
+    * Iterator that is already positioned on the given node, so that it can be
+    * marked without looking for it inside its container.
+    */
+   public <E extends Node> Iterator<E> iteratorAt(List<E> container, E node) {
+      MarkingIterator<E> it = new MarkingIterator<E>(container, Collections.singletonList(node).iterator());
+      it.next();
+      return it;
+   }
+
+   public <E extends Node> void sweep(List<E> container) {
+      Set<Node> nodes = pending.remove(container);
+      if (nodes != null && !nodes.isEmpty()) {
+         List<E> survivors = new ArrayList<E>(Math.max(container.size() - nodes.size(), 0));
+         for (E node : container) {
+            if (!nodes.contains(node)) {
+               survivors.add(node);
+            } else {
+               swept.add(node);
+            }
+         }
+         container.clear();
+         container.addAll(survivors);
+         metrics.swept();
+      }
+   }
+
+   @SuppressWarnings("unchecked")
+   public void sweep() {
+      if (readOnly) {
+         return;
+      }
+      Iterator<List<? extends Node>> it = new ArrayList<List<? extends Node>>(pending.keySet()).iterator();
+      while (it.hasNext()) {
+         sweep((List<Node>) it.next());
+      }
+      marked.clear();
+   }
+
+   /**
+    * Severs the links from the semantic model to the nodes swept since the
+    * last call, so that they can be collected while the compilation unit is
+    * still in use. It must be called once the usages are flushed.
+    *
+    * @return the nodes detached, including the ones inside the swept nodes
+    */
+   public int detach() {
+      int detached = 0;
+      for (Node node : swept) {
+         detached += Detacher.detach(node);
+      }
+      swept.clear();
+      return detached;
+   }
+
+   private class MarkingIterator<E extends Node> implements Iterator<E> {
+
+      private List<E> container;
+
+      private Iterator<E> it;
+
+      private E current;
+
+      public MarkingIterator(List<E> container, Iterator<E> it) {
+         this.container = container;
+         this.it = it;
+      }
+
+      @Override
+      public boolean hasNext() {
+         return it.hasNext() && (budget == null || !budget.isExhausted());
+      }
+
+      @Override
+      public E next() {
+         current = it.next();
+         metrics.visited(1);
+         return current;
+      }
+
+      @Override
+      public void remove() {
+         if (current == null) {
+            throw new IllegalStateException();
+         }
+         mark(container, current);
+      }
+   }
+}
@@ -0,0 +1,759 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.walkmod.javalang.ast.CompilationUnit;
+import org.walkmod.javalang.ast.FieldSymbolData;
+import org.walkmod.javalang.ast.MethodSymbolData;
+import org.walkmod.javalang.ast.Node;
+import org.walkmod.javalang.ast.SymbolData;
+import org.walkmod.javalang.ast.body.AnnotationDeclaration;
+import org.walkmod.javalang.ast.body.ClassOrInterfaceDeclaration;
+import org.walkmod.javalang.ast.body.EnumDeclaration;
+import org.walkmod.javalang.ast.body.FieldDeclaration;
+import org.walkmod.javalang.ast.body.MethodDeclaration;
+import org.walkmod.javalang.ast.body.TypeDeclaration;
+import org.walkmod.javalang.ast.body.VariableDeclarator;
+import org.walkmod.javalang.ast.expr.AnnotationExpr;
+import org.walkmod.javalang.ast.expr.FieldAccessExpr;
+import org.walkmod.javalang.ast.expr.MarkerAnnotationExpr;
+import org.walkmod.javalang.ast.expr.MethodCallExpr;
+import org.walkmod.javalang.ast.expr.MethodReferenceExpr;
+import org.walkmod.javalang.ast.expr.NameExpr;
+import org.walkmod.javalang.ast.expr.NormalAnnotationExpr;
+import org.walkmod.javalang.ast.expr.QualifiedNameExpr;
+import org.walkmod.javalang.ast.expr.SingleMemberAnnotationExpr;
+import org.walkmod.javalang.ast.type.ClassOrInterfaceType;
+import org.walkmod.javalang.visitors.VoidVisitorAdapter;
+
+/**
+ * Declarations and references of a whole project, to find the types and
+ * members that are not reachable from the entry points, whatever their
+ * visibility. The compilation units are added, from any thread, once their
+ * semantic analysis has finished, and {@link #solve()} is called after the
+ * last one. The symbols are identified by the names of their classes, methods
+ * and fields, so the compilation units can be analyzed apart, and they are
+ * interned into int ids: the index only keeps their UTF-8 names, the
+ * references as pairs of ids and the reachable ids as bits.
+ * <p>
+ * A reference belongs to the innermost type, method or field that contains
+ * it. Constructors, initializers and enum constants belong to their type,
+ * and the references of anonymous and local classes to their enclosing
+ * member. A member needs its type, a method is linked in both directions
+ * with the project methods that it overrides, and the members that override
+ * library methods or that the cleaner would not remove are roots.
+ */
+public class ProjectIndex {
+
+   /**
+    * Synthetic root that owns the references that can not be attributed to a
+    * resolved declaration.
+    */
+   private static final int ROOT = 0;
+
+   private static final Set<String> SERIALIZATION_METHODS = new HashSet<String>(Arrays.asList("readObject",
+         "writeObject", "readObjectNoData", "readResolve", "writeReplace"));
+
+   private final EntryPoints entryPoints;
+
+   private final CleanerConfiguration configuration;
+
+   private final SymbolTable symbols = new SymbolTable();
+
+   private final BitSet declared = new BitSet();
+
+   private final BitSet roots = new BitSet();
+
+   // released by solve(), which only keeps the reachable symbols
+   private IntPairs edges = new IntPairs();
+
+   // pairs of overridden and overriding methods, resolved by solve()
+   private IntPairs overrides = new IntPairs();
+
+   private int references = 0;
+
+   private volatile BitSet reachable;
+
+   public ProjectIndex(EntryPoints entryPoints, CleanerConfiguration configuration) {
+      this.entryPoints = entryPoints;
+      this.configuration = configuration;
+      symbols.intern("");
+      roots.set(ROOT);
+   }
+
+   /**
+    * Adds the declarations and references of an analyzed compilation unit.
+    * The compilation unit is not modified nor referenced afterwards, so it
+    * can be released as soon as this method returns.
+    */
+   public void add(CompilationUnit cu) {
+      add(extract(cu));
+   }
+
+   /**
+    * Extracts the declarations and references of an analyzed compilation
+    * unit, without adding them yet.
+    */
+   public IndexSegment extract(CompilationUnit cu) {
+      Extraction extraction = new Extraction();
+      List<TypeDeclaration> types = cu.getTypes();
+      if (types != null) {
+         for (TypeDeclaration td : types) {
+            td.accept(extraction, ROOT);
+         }
+      }
+      // a member usually references the same symbols many times
+      extraction.edges.deduplicate();
+      return new IndexSegment(extraction.names.toArray(new String[extraction.names.size()]),
+            toArray(extraction.declared), toArray(extraction.roots), extraction.edges.toArray(),
+            extraction.overrides.toArray(), extraction.signature);
+   }
+
+   private static int[] toArray(BitSet bits) {
+      int[] ids = new int[bits.cardinality()];
+      int j = 0;
+      for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+         ids[j++] = i;
+      }
+      return ids;
+   }
+
+   /**
+    * Adds a segment extracted from this index or from another one with the
+    * same entry points and configuration.
+    */
+   public synchronized void add(IndexSegment segment) {
+      if (reachable != null) {
+         throw new IllegalStateException("The project index has already been solved");
+      }
+      int[] global = new int[segment.names.length];
+      for (int i = 0; i < global.length; i++) {
+         global[i] = symbols.intern(segment.names[i]);
+      }
+      for (int id : segment.declared) {
+         declared.set(global[id]);
+      }
+      for (int id : segment.roots) {
+         roots.set(global[id]);
+      }
+      for (int i = 0; i < segment.edges.length; i += 2) {
+         edges.add(global[segment.edges[i]], global[segment.edges[i + 1]]);
+      }
+      for (int i = 0; i < segment.overrides.length; i += 2) {
+         overrides.add(global[segment.overrides[i]], global[segment.overrides[i + 1]]);
+      }
+   }
+
+   /**
+    * Computes the reachable symbols. No compilation unit can be added
+    * afterwards.
+    */
+   public synchronized void solve() {
+      if (reachable != null) {
+         return;
+      }
+      for (int i = 0; i < overrides.size(); i++) {
+         int overridden = overrides.first(i);
+         int overrider = overrides.second(i);
+         if (declared.get(overridden)) {
+            edges.add(overridden, overrider);
+            edges.add(overrider, overridden);
+         } else {
+            roots.set(overrider);
+         }
+      }
+      int size = symbols.size();
+      // adjacency in compressed rows: the targets of i are in
+      // targets[offsets[i]..offsets[i + 1])
+      int[] offsets = new int[size + 1];
+      for (int i = 0; i < edges.size(); i++) {
+         offsets[edges.first(i) + 1]++;
+      }
+      for (int i = 0; i < size; i++) {
+         offsets[i + 1] += offsets[i];
+      }
+      int[] targets = new int[edges.size()];
+      int[] next = Arrays.copyOf(offsets, size);
+      for (int i = 0; i < edges.size(); i++) {
+         targets[next[edges.first(i)]++] = edges.second(i);
+      }
+      BitSet visited = new BitSet(size);
+      int[] queue = new int[size];
+      int tail = 0;
+      for (int i = roots.nextSetBit(0); i >= 0; i = roots.nextSetBit(i + 1)) {
+         visited.set(i);
+         queue[tail++] = i;
+      }
+      for (int head = 0; head < tail; head++) {
+         int symbol = queue[head];
+         for (int j = offsets[symbol]; j < offsets[symbol + 1]; j++) {
+            int target = targets[j];
+            if (!visited.get(target)) {
+               visited.set(target);
+               queue[tail++] = target;
+            }
+         }
+      }
+      references = edges.size();
+      edges = null;
+      overrides = null;
+      reachable = visited;
+   }
+
+   public boolean isUnreachable(Class<?> clazz) {
+      return clazz != null && isUnreachable(key(clazz));
+   }
+
+   public boolean isUnreachable(Method method) {
+      return method != null && isUnreachable(key(method));
+   }
+
+   public boolean isUnreachable(Field field) {
+      return field != null && isUnreachable(key(field));
+   }
+
+   private boolean isUnreachable(String key) {
+      BitSet reachable = this.reachable;
+      if (reachable == null) {
+         throw new IllegalStateException("The project index has not been solved");
+      }
+      int id = symbols.get(key);
+      return id >= 0 && declared.get(id) && !reachable.get(id);
+   }
+
+   /**
+    * Declared types and members, sorted by name, that are not reachable.
+    */
+   public synchronized List<String> getUnreachable() {
+      BitSet reachable = this.reachable;
+      if (reachable == null) {
+         throw new IllegalStateException("The project index has not been solved");
+      }
+      List<String> result = new ArrayList<String>();
+      for (int i = declared.nextSetBit(0); i >= 0; i = declared.nextSetBit(i + 1)) {
+         if (!reachable.get(i)) {
+            result.add(symbols.getName(i));
+         }
+      }
+      Collections.sort(result);
+      return result;
+   }
+
+   public synchronized int getSymbols() {
+      return symbols.size() - 1;
+   }
+
+   /**
+    * Distinct references between symbols.
+    */
+   public synchronized int getReferences() {
+      return edges != null ? edges.size() : references;
+   }
+
+   /**
+    * Estimation of the bytes held by the index.
+    */
+   public synchronized long getFootprint() {
+      long footprint = symbols.getFootprint() + (declared.size() + roots.size()) / 8;
+      if (edges != null) {
+         footprint += edges.getFootprint() + overrides.getFootprint();
+      }
+      BitSet reachable = this.reachable;
+      return reachable != null ? footprint + reachable.size() / 8 : footprint;
+   }
+
+   static String key(Class<?> clazz) {
+      return clazz.getName();
+   }
+
+   static String key(Method method) {
+      StringBuilder sb = new StringBuilder(method.getDeclaringClass().getName()).append('#')
+            .append(method.getName()).append('(');
+      Class<?>[] params = method.getParameterTypes();
+      for (int i = 0; i < params.length; i++) {
+         if (i > 0) {
+            sb.append(',');
+         }
+         sb.append(params[i].getName());
+      }
+      return sb.append(')').toString();
+   }
+
+   static String key(Field field) {
+      return field.getDeclaringClass().getName() + "#" + field.getName();
+   }
+
+   /**
+    * @return the field of a variable of a field declaration, or null if it
+    *         is a local variable or it has not been resolved
+    */
+   static Field getField(VariableDeclarator var) {
+      Node parent = var.getParentNode();
+      if (parent instanceof FieldDeclaration) {
+         FieldDeclaration fd = (FieldDeclaration) parent;
+         List<VariableDeclarator> vars = fd.getVariables();
+         List<FieldSymbolData> fsds = fd.getFieldsSymbolData();
+         if (vars != null && fsds != null && vars.size() == fsds.size()) {
+            for (int i = 0; i < vars.size(); i++) {
+               if (vars.get(i) == var) {
+                  FieldSymbolData fsd = fsds.get(i);
+                  return fsd != null ? fsd.getField() : null;
+               }
+            }
+         }
+      }
+      return null;
+   }
+
+   private static boolean isMain(Method method) {
+      int modifiers = method.getModifiers();
+      Class<?>[] params = method.getParameterTypes();
+      return "main".equals(method.getName()) && Modifier.isPublic(modifiers) && Modifier.isStatic(modifiers)
+            && method.getReturnType() == void.class && params.length == 1 && params[0] == String[].class;
+   }
+
+   /**
+    * Growable list of pairs of ints.
+    */
+   private static class IntPairs {
+
+      private int[] pairs = new int[64];
+
+      private int size = 0;
+
+      public void add(int first, int second) {
+         if (2 * size + 2 > pairs.length) {
+            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+         }
+         pairs[2 * size] = first;
+         pairs[2 * size + 1] = second;
+         size++;
+      }
+
+      public int first(int i) {
+         return pairs[2 * i];
+      }
+
+      public int second(int i) {
+         return pairs[2 * i + 1];
+      }
+
+      public int size() {
+         return size;
+      }
+
+      public long getFootprint() {
+         return 4L * pairs.length;
+      }
+
+      public int[] toArray() {
+         return Arrays.copyOf(pairs, 2 * size);
+      }
+
+      /**
+       * Sorts the pairs and removes the repeated ones.
+       */
+      public void deduplicate() {
+         long[] encoded = new long[size];
+         for (int i = 0; i < size; i++) {
+            encoded[i] = ((long) pairs[2 * i] << 32) | (pairs[2 * i + 1] & 0xffffffffL);
+         }
+         Arrays.sort(encoded);
+         int unique = 0;
+         for (int i = 0; i < encoded.length; i++) {
+            if (i == 0 || encoded[i] != encoded[i - 1]) {
+               pairs[2 * unique] = (int) (encoded[i] >>> 32);
+               pairs[2 * unique + 1] = (int) encoded[i];
+               unique++;
+            }
+         }
+         size = unique;
+      }
+   }
+
+   /**
+    * Symbols of a single compilation unit, with local ids, extracted without
+    * holding the lock of the index. The argument of each visit is the id of
+    * the owner of the references found in the node.
+    */
+   private class Extraction extends VoidVisitorAdapter<Integer> {
+
+      private final Map<String, Integer> ids = new HashMap<String, Integer>();
+
+      private final List<String> names = new ArrayList<String>();
+
+      private final BitSet declared = new BitSet();
+
+      private final BitSet roots = new BitSet();
+
+      private final IntPairs edges = new IntPairs();
+
+      private final IntPairs overrides = new IntPairs();
+
+      private final Map<Class<?>, Method[]> declaredMethods = new IdentityHashMap<Class<?>, Method[]>();
+
+      // FNV-1a of the declarations that other compilation units can resolve
+      private long signature = 0xcbf29ce484222325L;
+
+      public Extraction() {
+         intern("");
+      }
+
+      private int intern(String name) {
+         Integer id = ids.get(name);
+         if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+         }
+         return id;
+      }
+
+      private void sign(String declaration) {
+         for (int i = 0; i < declaration.length(); i++) {
+            signature = (signature ^ declaration.charAt(i)) * 0x100000001b3L;
+         }
+         signature = (signature ^ ';') * 0x100000001b3L;
+      }
+
+      private void sign(Class<?> clazz) {
+         if (Modifier.isPrivate(clazz.getModifiers())) {
+            return;
+         }
+         try {
+            sign(clazz.getModifiers() + " " + clazz.getName() + Arrays.toString(clazz.getTypeParameters())
+                  + " extends " + clazz.getGenericSuperclass() + " implements "
+                  + Arrays.toString(clazz.getGenericInterfaces()));
+         } catch (RuntimeException e) {
+            sign(clazz.getModifiers() + " " + clazz.getName() + " extends " + clazz.getSuperclass()
+                  + " implements " + Arrays.toString(clazz.getInterfaces()));
+         } catch (LinkageError e) {
+            sign(clazz.getModifiers() + " " + clazz.getName());
+         }
+      }
+
+      private void sign(Method method) {
+         if (!Modifier.isPrivate(method.getModifiers())) {
+            try {
+               sign(method.toGenericString());
+            } catch (RuntimeException e) {
+               sign(method.toString());
+            } catch (LinkageError e) {
+               sign(method.toString());
+            }
+         }
+      }
+
+      private void sign(Field field) {
+         if (!Modifier.isPrivate(field.getModifiers())) {
+            try {
+               sign(field.toGenericString());
+            } catch (RuntimeException e) {
+               sign(field.toString());
+            } catch (LinkageError e) {
+               sign(field.toString());
+            }
+         }
+      }
+
+      private void edge(int from, int to) {
+         if (from != to) {
+            edges.add(from, to);
+         }
+      }
+
+      @Override
+      public void visit(ClassOrInterfaceDeclaration n, Integer owner) {
+         boolean removable = n.isInterface() ? configuration.isRemoveUnusedInterfaces()
+               : configuration.isRemoveUnusedClasses();
+         super.visit(n, declare(n, owner, removable));
+      }
+
+      @Override
+      public void visit(EnumDeclaration n, Integer owner) {
+         super.visit(n, declare(n, owner, configuration.isRemoveUnusedEnumerations()));
+      }
+
+      @Override
+      public void visit(AnnotationDeclaration n, Integer owner) {
+         super.visit(n, declare(n, owner, configuration.isRemoveUnusedAnnotationTypes()));
+      }
+
+      private int declare(TypeDeclaration n, int owner, boolean removable) {
+         if (!isIndexed(n)) {
+            return owner;
+         }
+         SymbolData sd = n.getSymbolData();
+         if (sd == null || sd.getClazz() == null) {
+            return ROOT;
+         }
+         Class<?> clazz = sd.getClazz();
+         int type = intern(key(clazz));
+         declared.set(type);
+         sign(clazz);
+         edge(type, owner);
+         if (n.getParentNode() instanceof CompilationUnit) {
+            removable = removable && configuration.isRemoveUnusedClasses();
+         }
+         // the imports of a removed type must be removed too
+         removable = removable && configuration.isRemoveUnusedImports();
+         if (!removable || entryPoints.isReflective(clazz) || hasEntryPointAnnotation(n.getAnnotations())
+               || Boolean.TRUE.equals(n.accept(UnusedDefinitionsRemover.HAS_SUPRESS_WARNING, null))) {
+            roots.set(type);
+         }
+         return type;
+      }
+
+      /**
+       * Types whose members are indexed: the top level types and their
+       * member types, but not the anonymous and local classes.
+       */
+      private boolean isIndexed(TypeDeclaration n) {
+         Node parent = n.getParentNode();
+         return parent instanceof CompilationUnit
+               || (parent instanceof TypeDeclaration && isIndexed((TypeDeclaration) parent));
+      }
+
+      private boolean isMember(Node n) {
+         Node parent = n.getParentNode();
+         return parent instanceof TypeDeclaration && isIndexed((TypeDeclaration) parent);
+      }
+
+      @Override
+      public void visit(MethodDeclaration n, Integer owner) {
+         int symbol = owner;
+         if (isMember(n)) {
+            MethodSymbolData msd = n.getSymbolData();
+            Method method = msd != null ? msd.getMethod() : null;
+            if (method == null) {
+               symbol = ROOT;
+            } else {
+               symbol = intern(key(method));
+               declared.set(symbol);
+               sign(method);
+               edge(symbol, owner);
+               if (!configuration.isRemoveUnusedMethods() || isEntryPoint(n, method)) {
+                  roots.set(symbol);
+               }
+               addOverrides(method, symbol);
+            }
+         }
+         super.visit(n, symbol);
+      }
+
+      private boolean isEntryPoint(MethodDeclaration n, Method method) {
+         Class<?> clazz = method.getDeclaringClass();
+         return (entryPoints.isMainMethods() && isMain(method)) || hasEntryPointAnnotation(n.getAnnotations())
+               || entryPoints.isReflective(clazz, method.getName()) || configuration.isExcluded(method)
+               || (SERIALIZATION_METHODS.contains(method.getName())
+                     && (configuration.isIgnoreSerializableMethods() || Serializable.class.isAssignableFrom(clazz)))
+               || Boolean.TRUE.equals(n.accept(UnusedDefinitionsRemover.HAS_SUPRESS_WARNING, null));
+      }
+
+      /**
+       * Records the methods of the supertypes with the same name and number
+       * of parameters, which is enough to also match the methods overridden
+       * with generic parameters. The methods that override library methods
+       * are called by the library, so they are roots.
+       */
+      private void addOverrides(Method method, int symbol) {
+         int modifiers = method.getModifiers();
+         if (Modifier.isStatic(modifiers) || Modifier.isPrivate(modifiers)) {
+            return;
+         }
+         int arity = method.getParameterTypes().length;
+         Set<Class<?>> seen = Collections.newSetFromMap(new IdentityHashMap<Class<?>, Boolean>());
+         LinkedList<Class<?>> pending = new LinkedList<Class<?>>();
+         addSupertypes(method.getDeclaringClass(), pending);
+         try {
+            while (!pending.isEmpty()) {
+               Class<?> type = pending.removeFirst();
+               if (seen.add(type)) {
+                  for (Method candidate : getDeclaredMethods(type)) {
+                     int candidateModifiers = candidate.getModifiers();
+                     if (candidate.getName().equals(method.getName())
+                           && candidate.getParameterTypes().length == arity
+                           && !Modifier.isStatic(candidateModifiers) && !Modifier.isPrivate(candidateModifiers)) {
+                        if (type.getClassLoader() == null) {
+                           roots.set(symbol);
+                        } else {
+                           overrides.add(intern(key(candidate)), symbol);
+                        }
+                     }
+                  }
+                  addSupertypes(type, pending);
+               }
+            }
+         } catch (LinkageError e) {
+            // a supertype can not be inspected
+            roots.set(symbol);
+         }
+      }
+
+      private void addSupertypes(Class<?> type, List<Class<?>> pending) {
+         if (type.getSuperclass() != null) {
+            pending.add(type.getSuperclass());
+         }
+         pending.addAll(Arrays.asList(type.getInterfaces()));
+      }
+
+      private Method[] getDeclaredMethods(Class<?> type) {
+         Method[] methods = declaredMethods.get(type);
+         if (methods == null) {
+            methods = type.getDeclaredMethods();
+            declaredMethods.put(type, methods);
+         }
+         return methods;
+      }
+
+      @Override
+      public void visit(VariableDeclarator n, Integer owner) {
+         int symbol = owner;
+         if (n.getParentNode() instanceof FieldDeclaration && isMember(n.getParentNode())) {
+            Field field = getField(n);
+            if (field == null) {
+               symbol = ROOT;
+            } else {
+               symbol = intern(key(field));
+               declared.set(symbol);
+               sign(field);
+               edge(symbol, owner);
+               if (!configuration.isRemoveUnusedFields() || isEntryPoint(n, field)) {
+                  roots.set(symbol);
+               }
+            }
+         }
+         super.visit(n, symbol);
+      }
+
+      private boolean isEntryPoint(VariableDeclarator n, Field field) {
+         FieldDeclaration fd = (FieldDeclaration) n.getParentNode();
+         return hasEntryPointAnnotation(fd.getAnnotations())
+               || entryPoints.isReflective(field.getDeclaringClass(), field.getName())
+               || configuration.isExcluded(field) || "serialVersionUID".equals(field.getName())
+               || HasSideEffects.IN_INITIALIZER.check(n.getInit())
+               || Boolean.TRUE.equals(fd.accept(UnusedDefinitionsRemover.HAS_SUPRESS_WARNING, null));
+      }
+
+      private boolean hasEntryPointAnnotation(List<AnnotationExpr> annotations) {
+         if (annotations != null) {
+            for (AnnotationExpr annotation : annotations) {
+               SymbolData sd = annotation.getSymbolData();
+               if (sd != null && entryPoints.isEntryPointAnnotation(sd.getClazz())) {
+                  return true;
+               }
+            }
+         }
+         return false;
+      }
+
+      private void reference(SymbolData sd, int owner) {
+         if (sd == null) {
+            return;
+         }
+         if (sd instanceof MethodSymbolData) {
+            Method method = ((MethodSymbolData) sd).getMethod();
+            if (method != null && method.getDeclaringClass().getClassLoader() != null) {
+               edge(owner, intern(key(method)));
+            }
+         }
+         if (sd instanceof FieldSymbolData) {
+            Field field = ((FieldSymbolData) sd).getField();
+            if (field != null && field.getDeclaringClass().getClassLoader() != null) {
+               edge(owner, intern(key(field)));
+            }
+         }
+         Class<?> clazz = sd.getClazz();
+         while (clazz != null && clazz.isArray()) {
+            clazz = clazz.getComponentType();
+         }
+         // the classes of the bootstrap loader are never part of the project
+         if (clazz != null && clazz.getClassLoader() != null) {
+            edge(owner, intern(key(clazz)));
+         }
+      }
+
+      @Override
+      public void visit(MethodCallExpr n, Integer owner) {
+         reference(n.getSymbolData(), owner);
+         super.visit(n, owner);
+      }
+
+      @Override
+      public void visit(MethodReferenceExpr n, Integer owner) {
+         reference(n.getSymbolData(), owner);
+         super.visit(n, owner);
+      }
+
+      @Override
+      public void visit(FieldAccessExpr n, Integer owner) {
+         reference(n.getSymbolData(), owner);
+         super.visit(n, owner);
+      }
+
+      @Override
+      public void visit(NameExpr n, Integer owner) {
+         reference(n.getSymbolData(), owner);
+         super.visit(n, owner);
+      }
+
+      @Override
+      public void visit(QualifiedNameExpr n, Integer owner) {
+         reference(n.getSymbolData(), owner);
+         super.visit(n, owner);
+      }
+
+      @Override
+      public void visit(ClassOrInterfaceType n, Integer owner) {
+         reference(n.getSymbolData(), owner);
+         super.visit(n, owner);
+      }
+
+      @Override
+      public void visit(MarkerAnnotationExpr n, Integer owner) {
+         reference(n.getSymbolData(), owner);
+         super.visit(n, owner);
+      }
+
+      @Override
+      public void visit(SingleMemberAnnotationExpr n, Integer owner) {
+         reference(n.getSymbolData(), owner);
+         super.visit(n, owner);
+      }
+
+      @Override
+      public void visit(NormalAnnotationExpr n, Integer owner) {
+         reference(n.getSymbolData(), owner);
+         super.visit(n, owner);
+      }
+   }
+}
@@ -0,0 +1,136 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Interner of names into dense int ids. The names are kept as UTF-8 bytes in
+ * a single growable array and the ids in an open addressing table, so that a
+ * symbol costs its encoded name and four ints instead of a string, a boxed
+ * id and a map entry.
+ */
+class SymbolTable {
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   private byte[] bytes = new byte[4096];
+
+   private int length = 0;
+
+   // the name of the id i is in bytes[offsets[i]..offsets[i + 1])
+   private int[] offsets = new int[257];
+
+   private int[] hashes = new int[256];
+
+   private int size = 0;
+
+   // id + 1 of each slot, or 0 if the slot is free
+   private int[] slots = new int[512];
+
+   public int size() {
+      return size;
+   }
+
+   public int intern(String name) {
+      byte[] utf8 = name.getBytes(UTF8);
+      int hash = hash(utf8);
+      int slot = find(utf8, hash);
+      if (slots[slot] != 0) {
+         return slots[slot] - 1;
+      }
+      int id = size++;
+      if (length + utf8.length > bytes.length) {
+         bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + utf8.length));
+      }
+      System.arraycopy(utf8, 0, bytes, length, utf8.length);
+      length += utf8.length;
+      if (id == hashes.length) {
+         hashes = Arrays.copyOf(hashes, hashes.length * 2);
+         offsets = Arrays.copyOf(offsets, hashes.length + 1);
+      }
+      offsets[size] = length;
+      hashes[id] = hash;
+      slots[slot] = id + 1;
+      if (size * 2 > slots.length) {
+         rehash();
+      }
+      return id;
+   }
+
+   /**
+    * @return the id of the name, or -1 if it has not been interned
+    */
+   public int get(String name) {
+      byte[] utf8 = name.getBytes(UTF8);
+      return slots[find(utf8, hash(utf8))] - 1;
+   }
+
+   public String getName(int id) {
+      return new String(bytes, offsets[id], offsets[id + 1] - offsets[id], UTF8);
+   }
+
+   /**
+    * Bytes held by the table.
+    */
+   public long getFootprint() {
+      return bytes.length + 4L * (offsets.length + hashes.length + slots.length);
+   }
+
+   private int find(byte[] utf8, int hash) {
+      int mask = slots.length - 1;
+      int slot = hash & mask;
+      while (slots[slot] != 0 && !matches(slots[slot] - 1, utf8, hash)) {
+         slot = (slot + 1) & mask;
+      }
+      return slot;
+   }
+
+   private boolean matches(int id, byte[] utf8, int hash) {
+      int offset = offsets[id];
+      if (hashes[id] != hash || offsets[id + 1] - offset != utf8.length) {
+         return false;
+      }
+      for (int i = 0; i < utf8.length; i++) {
+         if (bytes[offset + i] != utf8[i]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void rehash() {
+      slots = new int[slots.length * 2];
+      int mask = slots.length - 1;
+      for (int id = 0; id < size; id++) {
+         int slot = hashes[id] & mask;
+         while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+         }
+         slots[slot] = id + 1;
+      }
+   }
+
+   private static int hash(byte[] utf8) {
+      // FNV-1a, with the bits spread over the low ones used by the table
+      int hash = 0x811c9dc5;
+      for (byte b : utf8) {
+         hash = (hash ^ b) * 0x01000193;
+      }
+      return hash ^ (hash >>> 16);
+   }
+}
@@ -0,0 +1,202 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.walkmod.javalang.ast.CompilationUnit;
+import org.walkmod.javalang.ast.Node;
+import org.walkmod.javalang.ast.SymbolDefinition;
+import org.walkmod.javalang.ast.SymbolReference;
+import org.walkmod.javalang.ast.body.AnnotationDeclaration;
+import org.walkmod.javalang.ast.body.BodyDeclaration;
+import org.walkmod.javalang.ast.body.ClassOrInterfaceDeclaration;
+import org.walkmod.javalang.ast.body.EnumDeclaration;
+import org.walkmod.javalang.ast.body.FieldDeclaration;
+import org.walkmod.javalang.ast.body.MethodDeclaration;
+import org.walkmod.javalang.ast.body.ModifierSet;
+import org.walkmod.javalang.ast.body.TypeDeclaration;
+import org.walkmod.javalang.ast.body.VariableDeclarator;
+
+/**
+ * Graph of the private methods, fields and member types of a compilation unit,
+ * with an edge from each member to the members that it uses. The members used
+ * from the rest of the code, or that can not be removed, are the roots, and
+ * the members that are not reachable from them are only used by dead code,
+ * such as cycles of members that use each other.
+ */
+class UnreachableDefinitions {
+
+   private final CleanDeadDeclarationsVisitor<?> visitor;
+
+   private final UnusedDefinitionsRemover remover;
+
+   private final Map<Node, Integer> ids = new IdentityHashMap<Node, Integer>();
+
+   private final List<SymbolDefinition> members = new ArrayList<SymbolDefinition>();
+
+   private final List<List<Integer>> edges = new ArrayList<List<Integer>>();
+
+   public UnreachableDefinitions(CleanDeadDeclarationsVisitor<?> visitor) {
+      this.visitor = visitor;
+      this.remover = visitor.getRemover();
+   }
+
+   public List<SymbolDefinition> find(CompilationUnit cu) {
+      List<TypeDeclaration> types = cu.getTypes();
+      if (types != null) {
+         for (TypeDeclaration td : types) {
+            collect(td.getMembers(), -1);
+         }
+      }
+      boolean[] live = new boolean[members.size()];
+      LinkedList<Integer> pending = new LinkedList<Integer>();
+      for (int i = 0; i < members.size(); i++) {
+         if (isRoot(i)) {
+            live[i] = true;
+            pending.add(i);
+         }
+      }
+      while (!pending.isEmpty()) {
+         for (Integer used : edges.get(pending.removeFirst())) {
+            if (!live[used]) {
+               live[used] = true;
+               pending.add(used);
+            }
+         }
+      }
+      List<SymbolDefinition> dead = new LinkedList<SymbolDefinition>();
+      for (int i = 0; i < live.length; i++) {
+         // the fields are removed with their last variable
+         if (!live[i] && !(members.get(i) instanceof FieldDeclaration)) {
+            dead.add(members.get(i));
+         }
+      }
+      return dead;
+   }
+
+   private void collect(List<BodyDeclaration> declarations, int enclosing) {
+      if (declarations == null) {
+         return;
+      }
+      PendingRemovals pendingRemovals = visitor.getPendingRemovals();
+      for (BodyDeclaration member : declarations) {
+         if (pendingRemovals.isMarked(member)) {
+            continue;
+         }
+         if (member instanceof MethodDeclaration) {
+            MethodDeclaration method = (MethodDeclaration) member;
+            if (ModifierSet.isPrivate(method.getModifiers()) && visitor.getRemoveUnusedMethods()) {
+               add(method, enclosing);
+            }
+         } else if (member instanceof FieldDeclaration) {
+            FieldDeclaration field = (FieldDeclaration) member;
+            List<VariableDeclarator> vars = field.getVariables();
+            if (ModifierSet.isPrivate(field.getModifiers()) && visitor.getRemoveUnusedFields() && vars != null) {
+               // the field holds the references of its type, and it is live
+               // while any of its variables is live
+               int id = add(field, enclosing);
+               for (VariableDeclarator var : vars) {
+                  if (!pendingRemovals.isMarked(var)) {
+                     add(var, id);
+                  }
+               }
+            }
+         } else if (member instanceof TypeDeclaration) {
+            TypeDeclaration td = (TypeDeclaration) member;
+            int id = enclosing;
+            if (ModifierSet.isPrivate(td.getModifiers()) && isRemovableKind(td)) {
+               id = add(td, enclosing);
+            }
+            collect(td.getMembers(), id);
+         }
+      }
+   }
+
+   private boolean isRemovableKind(TypeDeclaration td) {
+      if (td instanceof ClassOrInterfaceDeclaration) {
+         return ((ClassOrInterfaceDeclaration) td).isInterface() ? visitor.getRemoveUnusedInterfaces()
+               : visitor.getRemoveUnusedClasses();
+      } else if (td instanceof EnumDeclaration) {
+         return visitor.getRemoveUnusedEnumerations();
+      } else if (td instanceof AnnotationDeclaration) {
+         return visitor.getRemoveUnusedAnnotationTypes();
+      }
+      return false;
+   }
+
+   private int add(SymbolDefinition member, int enclosing) {
+      int id = members.size();
+      ids.put((Node) member, id);
+      members.add(member);
+      List<Integer> used = new ArrayList<Integer>(2);
+      if (enclosing >= 0) {
+         // a live member keeps its enclosing type
+         used.add(enclosing);
+      }
+      edges.add(used);
+      return id;
+   }
+
+   private boolean isRoot(int id) {
+      SymbolDefinition member = members.get(id);
+      if (!isRemovable(member)) {
+         return true;
+      }
+      boolean root = false;
+      for (SymbolReference ref : visitor.getUsageIndex().getUsages(member)) {
+         int user = getUser((Node) ref);
+         if (user < 0) {
+            root = true;
+         } else if (user != id) {
+            edges.get(user).add(id);
+         }
+      }
+      return root;
+   }
+
+   private boolean isRemovable(SymbolDefinition member) {
+      if (member instanceof MethodDeclaration) {
+         return remover.canBeRemoved((MethodDeclaration) member);
+      } else if (member instanceof VariableDeclarator) {
+         VariableDeclarator var = (VariableDeclarator) member;
+         return remover.canBeRemoved(var) && !remover.isExcluded((FieldDeclaration) var.getParentNode());
+      } else if (member instanceof TypeDeclaration) {
+         return remover.canBeRemoved((TypeDeclaration) member);
+      }
+      return member instanceof FieldDeclaration;
+   }
+
+   /**
+    * @return the innermost member that contains the reference, or -1 if it is
+    *         outside of all of them
+    */
+   private int getUser(Node ref) {
+      Node node = ref.getParentNode();
+      while (node != null) {
+         Integer id = ids.get(node);
+         if (id != null) {
+            return id;
+         }
+         node = node.getParentNode();
+      }
+      return -1;
+   }
+}
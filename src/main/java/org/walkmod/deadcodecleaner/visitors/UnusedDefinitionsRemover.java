@@ -19,11 +19,15 @@ import java.io.Externalizable;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.HashSet;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
+import org.walkmod.javalang.ast.CompilationUnit;
 import org.walkmod.javalang.ast.FieldSymbolData;
 import org.walkmod.javalang.ast.ImportDeclaration;
 import org.walkmod.javalang.ast.MethodSymbolData;
@@ -37,6 +41,7 @@ import org.walkmod.javalang.ast.body.BodyDeclaration;
 import org.walkmod.javalang.ast.body.ClassOrInterfaceDeclaration;
 import org.walkmod.javalang.ast.body.ConstructorDeclaration;
 import org.walkmod.javalang.ast.body.EmptyTypeDeclaration;
+import org.walkmod.javalang.ast.body.EnumConstantDeclaration;
 import org.walkmod.javalang.ast.body.EnumDeclaration;
 import org.walkmod.javalang.ast.body.FieldDeclaration;
 import org.walkmod.javalang.ast.body.MethodDeclaration;
@@ -46,61 +51,80 @@ import org.walkmod.javalang.ast.body.TypeDeclaration;
 import org.walkmod.javalang.ast.body.VariableDeclarator;
 import org.walkmod.javalang.ast.expr.AnnotationExpr;
 import org.walkmod.javalang.ast.expr.ArrayInitializerExpr;
-import org.walkmod.javalang.ast.expr.ClassExpr;
+import org.walkmod.javalang.ast.expr.AssignExpr;
 import org.walkmod.javalang.ast.expr.Expression;
+import org.walkmod.javalang.ast.expr.FieldAccessExpr;
 import org.walkmod.javalang.ast.expr.MarkerAnnotationExpr;
 import org.walkmod.javalang.ast.expr.MemberValuePair;
-import org.walkmod.javalang.ast.expr.MethodCallExpr;
 import org.walkmod.javalang.ast.expr.NormalAnnotationExpr;
 import org.walkmod.javalang.ast.expr.ObjectCreationExpr;
 import org.walkmod.javalang.ast.expr.SingleMemberAnnotationExpr;
 import org.walkmod.javalang.ast.expr.StringLiteralExpr;
+import org.walkmod.javalang.ast.expr.ThisExpr;
 import org.walkmod.javalang.ast.expr.VariableDeclarationExpr;
+import org.walkmod.javalang.ast.stmt.BlockStmt;
+import org.walkmod.javalang.ast.stmt.ExpressionStmt;
 import org.walkmod.javalang.ast.stmt.ForStmt;
 import org.walkmod.javalang.ast.stmt.ForeachStmt;
 import org.walkmod.javalang.ast.stmt.TryStmt;
+import org.walkmod.javalang.ast.stmt.TypeDeclarationStmt;
 import org.walkmod.javalang.ast.type.Type;
 import org.walkmod.javalang.visitors.GenericVisitorAdapter;
-import org.walkmod.javalang.visitors.VoidVisitorAdapter;
 
 public class UnusedDefinitionsRemover extends GenericVisitorAdapter<Boolean, Iterator<? extends Node>> {
 
 	private CleanDeadDeclarationsVisitor<?> siblingsVisitor;
 
+	private LinkedList<SymbolDefinition> orphans = new LinkedList<SymbolDefinition>();
+
+	// number of removals that have led to each orphan
+	private LinkedList<Integer> orphanDepths = new LinkedList<Integer>();
+
+	private int depth = 0;
+
+	private boolean cascading = false;
+
+	private boolean readOnly = false;
+
 	public UnusedDefinitionsRemover(CleanDeadDeclarationsVisitor<?> siblingsVisitor) {
 		this.siblingsVisitor = siblingsVisitor;
 	}
 
+	public UnusedDefinitionsRemover(CleanDeadDeclarationsVisitor<?> siblingsVisitor, boolean readOnly) {
+		this.siblingsVisitor = siblingsVisitor;
+		this.readOnly = readOnly;
+	}
+
 	public Boolean visitTypeDeclaration(TypeDeclaration n, Iterator<? extends Node> it) {
 		boolean removed = false;
-		if (ModifierSet.isPrivate(n.getModifiers())) {
-			List<SymbolReference> usages = n.getUsages();
-			if (usages == null || usages.isEmpty()) {
-				HasSupressWarning warning = new HasSupressWarning();
-				Boolean containsSupressWarnings = n.accept(warning, null);
-				if (containsSupressWarnings == null) {
-					containsSupressWarnings = false;
-				}
-				if (!containsSupressWarnings) {
+		boolean unreachable = siblingsVisitor.isUnreachable(n);
+		if (unreachable || ModifierSet.isPrivate(n.getModifiers())) {
+			if (unreachable || !siblingsVisitor.getUsageIndex().isUsed(n)) {
+				if (canBeRemoved(n)) {
 					it.remove();
 					removed = true;
 					removeOrphanBodyReferences(n);
 				}
 			} else {
-				n.accept(siblingsVisitor, null);
+				visitSiblings(n);
 			}
 		} else {
-			n.accept(siblingsVisitor, null);
+			visitSiblings(n);
 		}
 		return removed;
 	}
 
+	boolean canBeRemoved(TypeDeclaration n) {
+		Boolean containsSupressWarnings = n.accept(HAS_SUPRESS_WARNING, null);
+		return containsSupressWarnings == null || !containsSupressWarnings;
+	}
+
 	public Boolean visit(ClassOrInterfaceDeclaration n, Iterator<? extends Node> it) {
 		if ((siblingsVisitor.getRemoveUnusedClasses() && !n.isInterface())
 				|| siblingsVisitor.getRemoveUnusedInterfaces() && n.isInterface()) {
 			return visitTypeDeclaration(n, it);
 		} else {
-			n.accept(siblingsVisitor, null);
+			visitSiblings(n);
 			return false;
 		}
 	}
@@ -109,7 +133,7 @@ public class UnusedDefinitionsRemover extends GenericVisitorAdapter<Boolean, Ite
 		if (siblingsVisitor.getRemoveUnusedEnumerations()) {
 			return visitTypeDeclaration(n, it);
 		} else {
-			n.accept(siblingsVisitor, null);
+			visitSiblings(n);
 			return false;
 		}
 	}
@@ -118,7 +142,7 @@ public class UnusedDefinitionsRemover extends GenericVisitorAdapter<Boolean, Ite
 		if (siblingsVisitor.getRemoveUnusedAnnotationTypes()) {
 			return visitTypeDeclaration(n, it);
 		} else {
-			n.accept(siblingsVisitor, null);
+			visitSiblings(n);
 			return false;
 		}
 	}
@@ -129,67 +153,73 @@ public class UnusedDefinitionsRemover extends GenericVisitorAdapter<Boolean, Ite
 	
 	@Override
    public Boolean visit(ConstructorDeclaration n, Iterator<? extends Node> it) {
-	   n.accept(siblingsVisitor, null);
+	   visitSiblings(n);
 	   return false;
    }
 
 	public Boolean visit(MethodDeclaration n, Iterator<? extends Node> it) {
 		boolean removed = false;
-		if (siblingsVisitor.getRemoveUnusedMethods() && ModifierSet.isPrivate(n.getModifiers())) {
-			List<SymbolReference> usages = n.getUsages();
-			if (usages == null || usages.isEmpty()) {
-				boolean belongsToSerializableOrExternalizable = belongsToClass(n, Serializable.class);
-				boolean containsAnSerializableMethod = false;
-				HasSupressWarning warning = new HasSupressWarning();
-				Boolean containsSupressWarnings = n.accept(warning, null);
-				if (containsSupressWarnings == null) {
-					containsSupressWarnings = false;
+		boolean unreachable = siblingsVisitor.getRemoveUnusedMethods() && siblingsVisitor.isUnreachable(n);
+		if (unreachable || (siblingsVisitor.getRemoveUnusedMethods() && ModifierSet.isPrivate(n.getModifiers()))) {
+			if (unreachable || !siblingsVisitor.getUsageIndex().isUsed(n)) {
+				if (canBeRemoved(n)) {
+					it.remove();
+					removed = true;
+					removeOrphanBodyReferences(n);
 				}
+			} else {
+				visitSiblings(n);
+			}
+		} else {
+			visitSiblings(n);
+		}
+		return removed;
+	}
 
-				if (belongsToSerializableOrExternalizable || siblingsVisitor.getIgnoreSerializableMethods()) {
-					String name = n.getName();
-					List<Parameter> params = n.getParameters();
-					if ((name.equals("readResolve") || name.equals("readObjectNoData") || name.equals("writeReplace"))
-							&& (params == null || params.isEmpty())) {
-						containsAnSerializableMethod = true;
-					} else if (name.equals("readObject") && params != null && params.size() == 1) {
-						SymbolData sd = params.get(0).getSymbolData();
-						if (sd != null) {
-							containsAnSerializableMethod = sd.getClazz().equals(ObjectInputStream.class);
-						}
-					} else if (name.equals("writeObject") && params != null && params.size() == 1) {
-						SymbolData sd = params.get(0).getSymbolData();
-						if (sd != null) {
-							containsAnSerializableMethod = sd.getClazz().equals(ObjectOutputStream.class);
-						}
-					}
-				} else {
-					belongsToSerializableOrExternalizable = belongsToClass(n, Externalizable.class);
-					String name = n.getName();
-					List<Parameter> params = n.getParameters();
-					if ((name.equals("readResolve") || name.equals("writeReplace"))
-							&& (params == null || params.isEmpty())) {
-						containsAnSerializableMethod = true;
-					}
+	/**
+	 * Checks of an unused private method that prevent its removal.
+	 */
+	boolean canBeRemoved(MethodDeclaration n) {
+		boolean belongsToSerializableOrExternalizable = belongsToClass(n, Serializable.class);
+		boolean containsAnSerializableMethod = false;
+		Boolean containsSupressWarnings = n.accept(HAS_SUPRESS_WARNING, null);
+		if (containsSupressWarnings == null) {
+			containsSupressWarnings = false;
+		}
+		if (belongsToSerializableOrExternalizable || siblingsVisitor.getIgnoreSerializableMethods()) {
+			String name = n.getName();
+			List<Parameter> params = n.getParameters();
+			if ((name.equals("readResolve") || name.equals("readObjectNoData") || name.equals("writeReplace"))
+					&& (params == null || params.isEmpty())) {
+				containsAnSerializableMethod = true;
+			} else if (name.equals("readObject") && params != null && params.size() == 1) {
+				SymbolData sd = params.get(0).getSymbolData();
+				if (sd != null) {
+					containsAnSerializableMethod = sd.getClazz().equals(ObjectInputStream.class);
 				}
-				boolean canBeRemoved = !((belongsToSerializableOrExternalizable
-						|| siblingsVisitor.getIgnoreSerializableMethods()) && containsAnSerializableMethod);
-
-				if (canBeRemoved && !containsSupressWarnings) {
-					MethodSymbolData msd = n.getSymbolData();
-					if (msd == null || !siblingsVisitor.isExcluded(msd.getMethod())) {
-						it.remove();
-						removed = true;
-						removeOrphanBodyReferences(n);
-					}
+			} else if (name.equals("writeObject") && params != null && params.size() == 1) {
+				SymbolData sd = params.get(0).getSymbolData();
+				if (sd != null) {
+					containsAnSerializableMethod = sd.getClazz().equals(ObjectOutputStream.class);
 				}
-			} else {
-				n.accept(siblingsVisitor, null);
 			}
 		} else {
-			n.accept(siblingsVisitor, null);
+			belongsToSerializableOrExternalizable = belongsToClass(n, Externalizable.class);
+			String name = n.getName();
+			List<Parameter> params = n.getParameters();
+			if ((name.equals("readResolve") || name.equals("writeReplace"))
+					&& (params == null || params.isEmpty())) {
+				containsAnSerializableMethod = true;
+			}
 		}
-		return removed;
+		boolean canBeRemoved = !((belongsToSerializableOrExternalizable
+				|| siblingsVisitor.getIgnoreSerializableMethods()) && containsAnSerializableMethod);
+
+		if (canBeRemoved && !containsSupressWarnings) {
+			MethodSymbolData msd = n.getSymbolData();
+			return msd == null || !siblingsVisitor.isExcluded(msd.getMethod());
+		}
+		return false;
 	}
 
 	private boolean belongsToClass(BodyDeclaration n, Class<?> clazz) {
@@ -208,14 +238,12 @@ public class UnusedDefinitionsRemover extends GenericVisitorAdapter<Boolean, Ite
 	public Boolean visit(FieldDeclaration n, Iterator<? extends Node> it) {
 		boolean removed = false;
 		if (siblingsVisitor.getRemoveUnusedFields() && ModifierSet.isPrivate(n.getModifiers())) {
-			List<SymbolReference> usages = n.getUsages();
-			if (usages == null || usages.isEmpty()) {
+			if (!siblingsVisitor.getUsageIndex().isUsed(n)) {
 				boolean belongsToSerializable = belongsToClass(n, Serializable.class);
 				boolean hasSerialVersionUID = false;
 
 				boolean hasRemovableVars = true;
-				HasSupressWarning warning = new HasSupressWarning();
-				Boolean containsSupressWarnings = n.accept(warning, null);
+				Boolean containsSupressWarnings = n.accept(HAS_SUPRESS_WARNING, null);
 				if (containsSupressWarnings == null) {
 					containsSupressWarnings = false;
 				}
@@ -228,79 +256,90 @@ public class UnusedDefinitionsRemover extends GenericVisitorAdapter<Boolean, Ite
 
 						hasSerialVersionUID = vd.getId().getName().equals("serialVersionUID");
 						if (!hasSerialVersionUID) {
-							Set<Node> ctx = new HashSet<Node>();
-							VoidVisitorAdapter<Set<Node>> v = new VoidVisitorAdapter<Set<Node>>() {
-								@Override
-								public void visit(MethodCallExpr n, Set<Node> ctx) {
-									ctx.add(n);
-								}
-
-								@Override
-								public void visit(ObjectCreationExpr n, Set<Node> ctx) {
-									ctx.add(n);
-								}
-
-								@Override
-								public void visit(ClassExpr n, Set<Node> ctx) {
-									ctx.add(n);
-								}
-
-							};
-							Expression expr = vd.getInit();
-							if (expr != null) {
-								expr.accept(v, ctx);
-							}
-							hasRemovableVars = ctx.isEmpty();
+							hasRemovableVars = !HasSideEffects.IN_INITIALIZER.check(vd.getInit());
 						}
 
 					}
 				}
 				boolean canBeRemoved = !(belongsToSerializable && hasSerialVersionUID) && hasRemovableVars;
 				if (canBeRemoved && !containsSupressWarnings) {
-					boolean remove = true;
-					List<FieldSymbolData> listfsd = n.getFieldsSymbolData();
-					if (listfsd != null) {
-						Iterator<FieldSymbolData> itfsd = listfsd.iterator();
-						while(itfsd.hasNext() && remove){
-							FieldSymbolData fsd = itfsd.next();
-							remove = !siblingsVisitor.isExcluded(fsd.getField());
-						}
-					}
-					if (remove) {
+					if (!isExcluded(n)) {
 						it.remove();
 						removeOrphanBodyReferences(n);
 						removed = true;
+						if (vds != null) {
+							for (VariableDeclarator vd : vds) {
+								siblingsVisitor.getMetrics().savedInstanceBytes(getInstanceBytes(n, vd));
+							}
+						}
 						Type sr = n.getType();
 						if (sr != null) {
 							sr.accept(siblingsVisitor.getTypeUpdater(), null);
 						}
 					}
 				} else {
-					n.accept(siblingsVisitor, null);
+					visitSiblings(n);
 				}
 			} else {
-				n.accept(siblingsVisitor, null);
+				visitSiblings(n);
 			}
 		} else {
-			n.accept(siblingsVisitor, null);
+			visitSiblings(n);
 		}
 		return removed;
 	}
 
+	boolean isExcluded(FieldDeclaration n) {
+		List<FieldSymbolData> listfsd = n.getFieldsSymbolData();
+		if (listfsd != null) {
+			Iterator<FieldSymbolData> itfsd = listfsd.iterator();
+			while (itfsd.hasNext()) {
+				FieldSymbolData fsd = itfsd.next();
+				if (siblingsVisitor.isExcluded(fsd.getField())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * If the variable is a field excluded by the configuration. Unlike the
+	 * field declaration, just the symbol data of the variable is checked.
+	 */
+	boolean isExcluded(VariableDeclarator n) {
+		Node parent = n.getParentNode();
+		if (!(parent instanceof FieldDeclaration)) {
+			return false;
+		}
+		List<FieldSymbolData> listfsd = ((FieldDeclaration) parent).getFieldsSymbolData();
+		if (listfsd != null) {
+			String name = n.getId().getName();
+			for (FieldSymbolData fsd : listfsd) {
+				Field field = fsd.getField();
+				if (field != null && field.getName().equals(name) && siblingsVisitor.isExcluded(field)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	@Override
 	public Boolean visit(ImportDeclaration n, Iterator<? extends Node> it) {
 		boolean removed = false;
-		List<SymbolReference> usages = n.getUsages();
-		if (siblingsVisitor.getRemoveUnusedImports() && (usages == null || usages.isEmpty())) {
+		if (siblingsVisitor.getRemoveUnusedImports() && !siblingsVisitor.getUsageIndex().isUsed(n)) {
 			it.remove();
 			removed = true;
 		} else {
-			n.accept(siblingsVisitor, null);
+			visitSiblings(n);
 		}
 		return removed;
 	}
 
-	class HasSupressWarning extends GenericVisitorAdapter<Boolean, Object> {
+	static final HasSupressWarning HAS_SUPRESS_WARNING = new HasSupressWarning();
+
+	static class HasSupressWarning extends GenericVisitorAdapter<Boolean, Object> {
 
 		public HasSupressWarning() {
 
@@ -498,72 +537,166 @@ public class UnusedDefinitionsRemover extends GenericVisitorAdapter<Boolean, Ite
 	@Override
 	public Boolean visit(VariableDeclarator n, Iterator<? extends Node> it) {
 		boolean removed = false;
-		List<SymbolReference> usages = n.getUsages();
-		if (siblingsVisitor.getRemoveUnusedVariables() && usages == null || usages.isEmpty()) {
-			Node parent = n.getParentNode();
-			boolean belongsToSerializable = false;
-			Boolean containsSupressWarnings = false;
-			if (parent instanceof FieldDeclaration) {
-				belongsToSerializable = belongsToClass((FieldDeclaration) parent, Serializable.class);
-			}
-			HasSupressWarning warning = new HasSupressWarning();
-			containsSupressWarnings = n.accept(warning, null);
-			if (containsSupressWarnings == null) {
-				containsSupressWarnings = false;
-			}
-			boolean canBeRemoved = !(belongsToSerializable && n.getId().getName().equals("serialVersionUID"));
-
-			if (parent != null && canBeRemoved) {
-				Node grandParent = parent.getParentNode();
-				if (grandParent instanceof ForeachStmt) {
-					ForeachStmt foreach = (ForeachStmt) grandParent;
-					canBeRemoved = !(foreach.getVariable() == parent);
-				} else if (grandParent instanceof ForStmt) {
-					ForStmt forStmt = (ForStmt) grandParent;
-					List<Expression> initExprs = forStmt.getInit();
-					if (initExprs != null) {
-						for (Expression init : initExprs) {
-							canBeRemoved = canBeRemoved && (init != parent);
-						}
-					}
-				} else if (grandParent instanceof TryStmt) {
-					TryStmt tryStmt = (TryStmt) grandParent;
-					List<VariableDeclarationExpr> vars = tryStmt.getResources();
-					canBeRemoved = !(vars.contains(parent));
+		boolean unused = !siblingsVisitor.getUsageIndex().isUsed(n) || siblingsVisitor.isUnreachable(n);
+		if (unused || isWriteOnly(n)) {
+			if (canBeRemoved(n) && !isExcluded(n)) {
+				it.remove();
+				removed = true;
+				if (!unused) {
+					removeWrites(n);
+				}
+				removeOrphanBodyReferences(n);
+				Node parent = n.getParentNode();
+				if (parent instanceof FieldDeclaration) {
+					siblingsVisitor.getMetrics().savedInstanceBytes(getInstanceBytes((FieldDeclaration) parent, n));
 				}
 			}
+		} else {
+			visitSiblings(n);
+		}
+		return removed;
+	}
 
-			if (canBeRemoved && n.getInit() != null) {
-				Set<Node> ctx = new HashSet<Node>();
-				VoidVisitorAdapter<Set<Node>> v = new VoidVisitorAdapter<Set<Node>>() {
-					@Override
-					public void visit(MethodCallExpr n, Set<Node> ctx) {
-						ctx.add(n);
-					}
+	/**
+	 * If the definition is a private field whose usages just assign it values
+	 * without side effects, in statements that can be removed.
+	 */
+	boolean isWriteOnly(SymbolDefinition def) {
+		if (!siblingsVisitor.getRemoveWriteOnlyFields() || !(def instanceof VariableDeclarator)) {
+			return false;
+		}
+		Node parent = ((Node) def).getParentNode();
+		if (!(parent instanceof FieldDeclaration)) {
+			return false;
+		}
+		FieldDeclaration field = (FieldDeclaration) parent;
+		int modifiers = field.getModifiers();
+		List<AnnotationExpr> annotations = field.getAnnotations();
+		if (!ModifierSet.isPrivate(modifiers) || ModifierSet.isVolatile(modifiers)
+				|| (annotations != null && !annotations.isEmpty())
+				|| (!ModifierSet.isTransient(modifiers) && belongsToClass(field, Serializable.class))) {
+			return false;
+		}
+		Collection<SymbolReference> usages = siblingsVisitor.getUsageIndex().getUsages(def);
+		if (usages.isEmpty()) {
+			return false;
+		}
+		for (SymbolReference usage : usages) {
+			if (getWrite(usage) == null) {
+				return false;
+			}
+		}
+		return true;
+	}
 
-					@Override
-					public void visit(ObjectCreationExpr n, Set<Node> ctx) {
-						ctx.add(n);
-					}
+	/**
+	 * @return the statement that just assigns a value to the field, or null if
+	 *         the reference reads it or the statement can not be removed
+	 */
+	private static ExpressionStmt getWrite(SymbolReference usage) {
+		Node node = (Node) usage;
+		if (node instanceof FieldAccessExpr) {
+			Expression scope = ((FieldAccessExpr) node).getScope();
+			if (scope != null && !(scope instanceof ThisExpr)) {
+				return null;
+			}
+		}
+		Node parent = node.getParentNode();
+		if (!(parent instanceof AssignExpr)) {
+			return null;
+		}
+		AssignExpr assign = (AssignExpr) parent;
+		if (assign.getTarget() != node || assign.getOperator() != AssignExpr.Operator.assign
+				|| HasSideEffects.IN_WRITE.check(assign.getValue())) {
+			return null;
+		}
+		Node stmt = assign.getParentNode();
+		if (stmt instanceof ExpressionStmt && stmt.getParentNode() instanceof BlockStmt) {
+			return (ExpressionStmt) stmt;
+		}
+		return null;
+	}
 
-					@Override
-					public void visit(ClassExpr n, Set<Node> ctx) {
-						ctx.add(n);
-					}
+	private void removeWrites(VariableDeclarator n) {
+		PendingRemovals pendingRemovals = siblingsVisitor.getPendingRemovals();
+		List<SymbolReference> usages = new ArrayList<SymbolReference>(siblingsVisitor.getUsageIndex().getUsages(n));
+		for (SymbolReference usage : usages) {
+			ExpressionStmt stmt = getWrite(usage);
+			if (!pendingRemovals.isMarked(stmt)) {
+				pendingRemovals.mark(((BlockStmt) stmt.getParentNode()).getStmts(), stmt);
+				removeReferences(stmt);
+			}
+		}
+	}
 
-				};
-				n.getInit().accept(v, ctx);
-				canBeRemoved = ctx.isEmpty();
+	/**
+	 * Estimated bytes of the field in each instance of its class, with
+	 * compressed references, or 0 for a static field.
+	 */
+	static int getInstanceBytes(FieldDeclaration field, VariableDeclarator var) {
+		if (ModifierSet.isStatic(field.getModifiers())) {
+			return 0;
+		}
+		List<FieldSymbolData> symbols = field.getFieldsSymbolData();
+		if (symbols != null) {
+			for (FieldSymbolData symbol : symbols) {
+				Field f = symbol.getField();
+				if (f != null && f.getName().equals(var.getId().getName())) {
+					Class<?> type = f.getType();
+					if (type == long.class || type == double.class) {
+						return 8;
+					} else if (type == short.class || type == char.class) {
+						return 2;
+					} else if (type == boolean.class || type == byte.class) {
+						return 1;
+					}
+					return 4;
+				}
 			}
-			if (canBeRemoved && !containsSupressWarnings) {
-				it.remove();
-				removed = true;
-				removeOrphanBodyReferences(n);
+		}
+		return 4;
+	}
+
+	/**
+	 * Checks of an unused variable that prevent its removal.
+	 */
+	boolean canBeRemoved(VariableDeclarator n) {
+		Node parent = n.getParentNode();
+		boolean belongsToSerializable = false;
+		Boolean containsSupressWarnings = false;
+		if (parent instanceof FieldDeclaration) {
+			belongsToSerializable = belongsToClass((FieldDeclaration) parent, Serializable.class);
+		}
+		containsSupressWarnings = n.accept(HAS_SUPRESS_WARNING, null);
+		if (containsSupressWarnings == null) {
+			containsSupressWarnings = false;
+		}
+		boolean canBeRemoved = !(belongsToSerializable && n.getId().getName().equals("serialVersionUID"));
+
+		if (parent != null && canBeRemoved) {
+			Node grandParent = parent.getParentNode();
+			if (grandParent instanceof ForeachStmt) {
+				ForeachStmt foreach = (ForeachStmt) grandParent;
+				canBeRemoved = !(foreach.getVariable() == parent);
+			} else if (grandParent instanceof ForStmt) {
+				ForStmt forStmt = (ForStmt) grandParent;
+				List<Expression> initExprs = forStmt.getInit();
+				if (initExprs != null) {
+					for (Expression init : initExprs) {
+						canBeRemoved = canBeRemoved && (init != parent);
+					}
+				}
+			} else if (grandParent instanceof TryStmt) {
+				TryStmt tryStmt = (TryStmt) grandParent;
+				List<VariableDeclarationExpr> vars = tryStmt.getResources();
+				canBeRemoved = !(vars.contains(parent));
 			}
-		} else {
-			n.accept(siblingsVisitor, null);
 		}
-		return removed;
+
+		if (canBeRemoved) {
+			canBeRemoved = !HasSideEffects.IN_INITIALIZER.check(n.getInit());
+		}
+		return canBeRemoved && !containsSupressWarnings;
 	}
 
 	public void removeOrphanBodyReferences(SymbolDefinition n) {
@@ -576,14 +709,155 @@ public class UnusedDefinitionsRemover extends GenericVisitorAdapter<Boolean, Ite
 				// if the definition has produced the reference, we update the
 				// body references list
 				if (((Node) n).contains((Node) sr)) {
-					refsIt.remove();
-					SymbolDefinition def = sr.getSymbolDefinition();
-					def.getUsages().remove(sr);
-					((Node) def).getParentNode().accept(siblingsVisitor, null);
-					refsIt = references.iterator();
+					if (!readOnly) {
+						refsIt.remove();
+					}
+					removeUsage(sr.getSymbolDefinition(), sr);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Detaches the references of a node that is removed without being a
+	 * definition, such as a dead branch, so the definitions that it uses can
+	 * become unused.
+	 */
+	public void removeReferences(Node n) {
+		Set<Node> subtree = Detacher.getSubtree(n);
+		for (Node node : subtree) {
+			if (node instanceof SymbolReference) {
+				SymbolReference sr = (SymbolReference) node;
+				SymbolDefinition def = sr.getSymbolDefinition();
+				if (def != null && !subtree.contains(def)) {
+					removeUsage(def, sr);
+				}
+			}
+		}
+	}
+
+	public void removeUsage(SymbolDefinition def, SymbolReference sr) {
+		if (def != null) {
+			UsageIndex usageIndex = siblingsVisitor.getUsageIndex();
+			if (usageIndex.removeUsage(def, sr) && (!usageIndex.isUsed(def) || isWriteOnly(def))) {
+				addOrphan(def, depth + 1);
+			}
+		}
+	}
+
+	/**
+	 * Removes, in cascade, the definitions that have lost all their usages
+	 * without visiting again their enclosing nodes.
+	 */
+	public void removeOrphans() {
+		boolean previous = cascading;
+		int previousDepth = depth;
+		cascading = true;
+		try {
+			while (!orphans.isEmpty()) {
+				if (siblingsVisitor.getBudget().isExhausted()) {
+					// the remaining orphans are kept, unused but consistent
+					orphans.clear();
+					orphanDepths.clear();
+					break;
+				}
+				SymbolDefinition def = orphans.removeFirst();
+				depth = orphanDepths.removeFirst();
+				if (!siblingsVisitor.getUsageIndex().isUsed(def) || isWriteOnly(def)) {
+					removeOrphan(def);
+				}
+			}
+		} finally {
+			cascading = previous;
+			depth = previousDepth;
+		}
+	}
+
+	private void addOrphan(SymbolDefinition def, int depth) {
+		orphans.add(def);
+		orphanDepths.add(depth);
+	}
+
+	private void removeOrphan(SymbolDefinition def) {
+		Node node = (Node) def;
+		Node parent = node.getParentNode();
+		PendingRemovals pendingRemovals = siblingsVisitor.getPendingRemovals();
+		if (pendingRemovals.isMarked(node) || parent == null) {
+			return;
+		}
+		siblingsVisitor.getMetrics().cascade(depth);
+		if (node instanceof VariableDeclarator) {
+			VariableDeclarator var = (VariableDeclarator) node;
+			if (parent instanceof FieldDeclaration) {
+				FieldDeclaration field = (FieldDeclaration) parent;
+				if (siblingsVisitor.getRemoveUnusedFields() && ModifierSet.isPrivate(field.getModifiers())
+						&& !pendingRemovals.isMarked(field)) {
+					if (var.accept(this, pendingRemovals.iteratorAt(field.getVariables(), var))) {
+						siblingsVisitor.removeEmptyField(field);
+					}
+				}
+			} else if (parent instanceof VariableDeclarationExpr) {
+				VariableDeclarationExpr expr = (VariableDeclarationExpr) parent;
+				if (siblingsVisitor.getRemoveUnusedVariables()) {
+					if (var.accept(this, pendingRemovals.iteratorAt(expr.getVars(), var))) {
+						siblingsVisitor.removeEmptyVariableDeclaration(expr);
+					}
+				}
+			}
+		} else if (node instanceof ImportDeclaration) {
+			if (parent instanceof CompilationUnit) {
+				ImportDeclaration id = (ImportDeclaration) node;
+				id.accept(this, pendingRemovals.iteratorAt(((CompilationUnit) parent).getImports(), id));
+			}
+		} else if (parent instanceof TypeDeclarationStmt) {
+			siblingsVisitor.removeTypeDeclarationStmt((TypeDeclarationStmt) parent);
+		} else if (node instanceof BodyDeclaration) {
+			List<BodyDeclaration> members = getMembers(parent);
+			if (members != null) {
+				node.accept(this, pendingRemovals.iteratorAt(members, (BodyDeclaration) node));
+			}
+		}
+	}
+
+	/**
+	 * Removes the private members that are only used by other members that
+	 * are not used from anywhere else, such as mutually recursive methods.
+	 */
+	public void removeDeadCycles(CompilationUnit cu) {
+		if (siblingsVisitor.getBudget().isExhausted()) {
+			return;
+		}
+		List<SymbolDefinition> dead = new UnreachableDefinitions(siblingsVisitor).find(cu);
+		if (!dead.isEmpty()) {
+			UsageIndex usageIndex = siblingsVisitor.getUsageIndex();
+			for (SymbolDefinition def : dead) {
+				// all its usages come from other dead definitions
+				List<SymbolReference> refs = new ArrayList<SymbolReference>(usageIndex.getUsages(def));
+				for (SymbolReference ref : refs) {
+					usageIndex.removeUsage(def, ref);
+				}
+				addOrphan(def, 1);
+			}
+			removeOrphans();
+		}
+	}
+
+	static List<BodyDeclaration> getMembers(Node parent) {
+		if (parent instanceof TypeDeclaration) {
+			return ((TypeDeclaration) parent).getMembers();
+		} else if (parent instanceof ObjectCreationExpr) {
+			return ((ObjectCreationExpr) parent).getAnonymousClassBody();
+		} else if (parent instanceof EnumConstantDeclaration) {
+			return ((EnumConstantDeclaration) parent).getClassBody();
+		}
+		return null;
+	}
+
+	private void visitSiblings(Node n) {
+		// while cascading, the node has already been analyzed by the main pass
+		if (!cascading) {
+			n.accept(siblingsVisitor, null);
+		}
+	}
+
 }
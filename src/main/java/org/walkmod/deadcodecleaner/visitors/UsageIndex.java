@@ -0,0 +1,86 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.walkmod.javalang.ast.SymbolDefinition;
+import org.walkmod.javalang.ast.SymbolReference;
+
+/**
+ * Live usages of the definitions of a compilation unit. The usages of a
+ * definition are indexed the first time that one of them is detached, and the
+ * usage lists of the semantic model are updated once, in {@link #flush()}.
+ */
+class UsageIndex {
+
+   private Map<SymbolDefinition, Set<SymbolReference>> usages = new IdentityHashMap<SymbolDefinition, Set<SymbolReference>>();
+
+   public boolean isUsed(SymbolDefinition def) {
+      Set<SymbolReference> refs = usages.get(def);
+      if (refs != null) {
+         return !refs.isEmpty();
+      }
+      List<SymbolReference> list = def.getUsages();
+      return list != null && !list.isEmpty();
+   }
+
+   public Collection<SymbolReference> getUsages(SymbolDefinition def) {
+      Set<SymbolReference> refs = usages.get(def);
+      if (refs != null) {
+         return refs;
+      }
+      List<SymbolReference> list = def.getUsages();
+      if (list == null) {
+         return Collections.emptyList();
+      }
+      return list;
+   }
+
+   /**
+    * Detaches a reference from its definition.
+    *
+    * @return if the reference was a live usage of the definition
+    */
+   public boolean removeUsage(SymbolDefinition def, SymbolReference ref) {
+      Set<SymbolReference> refs = usages.get(def);
+      if (refs == null) {
+         List<SymbolReference> list = def.getUsages();
+         if (list == null || list.isEmpty()) {
+            return false;
+         }
+         refs = Collections.newSetFromMap(new IdentityHashMap<SymbolReference, Boolean>(list.size()));
+         refs.addAll(list);
+         usages.put(def, refs);
+      }
+      return refs.remove(ref);
+   }
+
+   public void flush() {
+      for (Map.Entry<SymbolDefinition, Set<SymbolReference>> entry : usages.entrySet()) {
+         List<SymbolReference> list = entry.getKey().getUsages();
+         if (list != null && list.size() != entry.getValue().size()) {
+            list.retainAll(entry.getValue());
+         }
+      }
+      usages.clear();
+   }
+}
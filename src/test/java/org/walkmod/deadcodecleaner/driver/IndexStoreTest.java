@@ -0,0 +1,107 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+ 
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.driver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.walkmod.deadcodecleaner.visitors.CleanerConfiguration;
+import org.walkmod.deadcodecleaner.visitors.EntryPoints;
+import org.walkmod.deadcodecleaner.visitors.IndexSegment;
+
+public class IndexStoreTest {
+
+	@Test
+	public void testCompactionKeepsTheLiveRecords() throws Exception {
+		File file = File.createTempFile("index", ".bin");
+		file.deleteOnExit();
+		byte[] a = IndexStore.getKey("a".getBytes("UTF-8"));
+		byte[] b = IndexStore.getKey("b".getBytes("UTF-8"));
+		IndexStore store = new IndexStore(file, null, CleanerConfiguration.DEFAULT, EntryPoints.DEFAULT);
+		for (int i = 0; i < 10; i++) {
+			store.put("A", a, i, segment(i));
+		}
+		store.put("B", b, 7, segment(7));
+		store.put("C", b, 7, segment(7));
+		store.remove("C");
+		long before = file.length();
+		Assert.assertTrue(store.compact());
+		Assert.assertEquals(0, store.getDeadBytes());
+		Assert.assertTrue(file.length() < before);
+		Assert.assertEquals(9, store.get("A", a, 9).getSignature());
+		Assert.assertNull(store.get("A", a, 8));
+
+		// the records appended after the compaction follow the live ones
+		store.put("D", a, 1, segment(1));
+		store.close();
+		store = new IndexStore(file, null, CleanerConfiguration.DEFAULT, EntryPoints.DEFAULT);
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("A", "B", "D")), store.getNames());
+		Assert.assertEquals(7, store.get("B", b, 7).getSignature());
+		Assert.assertEquals(1, store.get("D", a, 1).getSignature());
+		Assert.assertFalse(store.compact());
+		store.close();
+	}
+
+	@Test
+	public void testCompactedFilesKeptAsideReplaceTheStore() throws Exception {
+		File file = File.createTempFile("index", ".bin");
+		file.deleteOnExit();
+		File pending = new File(file.getPath() + ".compact");
+		pending.deleteOnExit();
+		byte[] a = IndexStore.getKey("a".getBytes("UTF-8"));
+		IndexStore store = new IndexStore(file, null, CleanerConfiguration.DEFAULT, EntryPoints.DEFAULT);
+		store.put("A", a, 1, segment(1));
+		store.put("B", a, 2, segment(2));
+		store.close();
+		byte[] compacted = Files.readAllBytes(file.toPath());
+		store = new IndexStore(file, null, CleanerConfiguration.DEFAULT, EntryPoints.DEFAULT);
+		store.remove("B");
+		store.close();
+
+		// the file kept aside by a compaction that could not replace the store
+		Files.write(pending.toPath(), compacted);
+		store = new IndexStore(file, null, CleanerConfiguration.DEFAULT, EntryPoints.DEFAULT);
+		Assert.assertFalse(pending.exists());
+		Assert.assertEquals(new HashSet<String>(Arrays.asList("A", "B")), store.getNames());
+		Assert.assertEquals(2, store.get("B", a, 2).getSignature());
+		store.close();
+	}
+
+	private static IndexSegment segment(long signature) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeLong(signature);
+		out.writeInt(1);
+		byte[] name = "p.Foo".getBytes("UTF-8");
+		out.writeInt(name.length);
+		out.write(name);
+		// declared, roots, edges and overrides
+		out.writeInt(1);
+		out.writeInt(0);
+		out.writeInt(0);
+		out.writeInt(0);
+		out.writeInt(0);
+		out.flush();
+		return IndexSegment.read(ByteBuffer.wrap(bytes.toByteArray()));
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+ 
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.driver;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.walkmod.deadcodecleaner.metrics.CleanerStatistics;
+import org.walkmod.deadcodecleaner.visitors.CleanDeadDeclarationsVisitor;
+import org.walkmod.deadcodecleaner.visitors.CleanerConfiguration;
+import org.walkmod.javalang.ASTManager;
+import org.walkmod.javalang.ast.CompilationUnit;
+import org.walkmod.javalang.test.SemanticTest;
+
+public class ParallelCleanerTest extends SemanticTest {
+
+	@Test
+	public void testResultsFollowTheOrderOfTheSources() throws Exception {
+		List<SourceUnit> sources = new ArrayList<SourceUnit>();
+		for (int i = 0; i < 20; i++) {
+			// the semantic analysis of the tests is not thread safe
+			String code = "public class Foo" + i + " { private void bar(){} }";
+			sources.add(new Compiled("Foo" + i, code, compile(code)));
+		}
+		sources.add(5, new Compiled("Broken", "", null) {
+			@Override
+			public CompilationUnit load() throws Exception {
+				throw new IllegalStateException("broken");
+			}
+		});
+
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		visitor.setRemoveUnusedMethods(false);
+		List<CleanResult> results = new ParallelCleaner(visitor, 4).clean(sources);
+
+		Assert.assertEquals(sources.size(), results.size());
+		for (int i = 0; i < results.size(); i++) {
+			CleanResult result = results.get(i);
+			Assert.assertEquals(sources.get(i).getName(), result.getName());
+			if (i == 5) {
+				Assert.assertFalse(result.isSuccessful());
+				Assert.assertEquals("broken", result.getError().getMessage());
+			} else {
+				Assert.assertTrue(result.isSuccessful());
+				Assert.assertEquals(1, result.getCompilationUnit().getTypes().get(0).getMembers().size());
+			}
+		}
+	}
+
+	@Test
+	public void testSourcesAtTheirFixpointAreCached() throws Exception {
+		File file = File.createTempFile("fixpoints", ".txt");
+		file.deleteOnExit();
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>();
+
+		String clean = "public class Foo { public void bar(){} }";
+		String dirty = "public class Bar { private void bar(){} }";
+		List<Compiled> sources = new ArrayList<Compiled>();
+		sources.add(new Compiled("Foo", clean, compile(clean)));
+		sources.add(new Compiled("Bar", dirty, compile(dirty)));
+		ParallelCleaner cleaner = new ParallelCleaner(visitor, 2);
+		cleaner.setCache(new FixpointCache(file, null, visitor.getConfiguration()));
+		List<CleanResult> results = cleaner.clean(sources);
+		Assert.assertFalse(results.get(0).isCached());
+		Assert.assertFalse(results.get(1).isCached());
+
+		cleaner.setCache(new FixpointCache(file, null, visitor.getConfiguration()));
+		results = cleaner.clean(sources);
+		Assert.assertTrue(results.get(0).isCached());
+		Assert.assertNull(results.get(0).getCompilationUnit());
+		Assert.assertEquals(1, sources.get(0).loads);
+		Assert.assertFalse(results.get(1).isCached());
+		Assert.assertEquals(2, sources.get(1).loads);
+
+		visitor.setRemoveUnusedMethods(false);
+		cleaner.setCache(new FixpointCache(file, null, visitor.getConfiguration()));
+		results = cleaner.clean(sources);
+		Assert.assertFalse(results.get(0).isCached());
+	}
+
+	@Test
+	public void testSourcesWithoutCandidatesAreSkipped() throws Exception {
+		String[] code = { "public class A { public void a() { a(); } }", "public class B { private void b() {} }",
+				"import java.util.List; public class C { }", "public class D { public void d() { if (true) { } } }" };
+		List<Compiled> sources = new ArrayList<Compiled>();
+		for (int i = 0; i < code.length; i++) {
+			sources.add(new Compiled("S" + i, code[i], compile(code[i])));
+		}
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		CleanerStatistics statistics = new CleanerStatistics();
+		visitor.setStatistics(statistics);
+		ParallelCleaner cleaner = new ParallelCleaner(visitor, 2);
+		cleaner.setCandidateFilter(true);
+		List<CleanResult> results = cleaner.clean(sources);
+		Assert.assertTrue(results.get(0).isSkipped());
+		Assert.assertNull(results.get(0).getCompilationUnit());
+		Assert.assertEquals(0, sources.get(0).loads);
+		for (int i = 1; i < code.length; i++) {
+			Assert.assertFalse(results.get(i).isSkipped());
+			Assert.assertEquals(1, sources.get(i).loads);
+		}
+		Assert.assertEquals(1, statistics.getSkippedCompilationUnits());
+		Assert.assertEquals(0.25, statistics.getSkipRate(), 0.001);
+
+		visitor.setRemoveUnusedMethods(false);
+		results = cleaner.clean(sources);
+		Assert.assertTrue(results.get(1).isSkipped());
+		Assert.assertFalse(results.get(2).isSkipped());
+
+		String folded = "public class E { public int e(int x) { if (false) { x++; } return x; } }";
+		sources = new ArrayList<Compiled>();
+		sources.add(new Compiled("E", folded, compile(folded)));
+		Assert.assertTrue(cleaner.clean(sources).get(0).isSkipped());
+		visitor.setFoldConstantConditions(true);
+		Assert.assertFalse(cleaner.clean(sources).get(0).isSkipped());
+	}
+
+	@Test
+	public void testSkippedSourcesAreCached() throws Exception {
+		File file = File.createTempFile("fixpoints", ".txt");
+		file.deleteOnExit();
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		String code = "public class A { public void a() { a(); } }";
+		List<Compiled> sources = new ArrayList<Compiled>();
+		sources.add(new Compiled("A", code, compile(code)));
+		ParallelCleaner cleaner = new ParallelCleaner(visitor, 2);
+		cleaner.setCandidateFilter(true);
+		cleaner.setCache(new FixpointCache(file, null, visitor.getConfiguration()));
+		Assert.assertTrue(cleaner.clean(sources).get(0).isSkipped());
+
+		cleaner.setCache(new FixpointCache(file, null, visitor.getConfiguration()));
+		Assert.assertTrue(cleaner.clean(sources).get(0).isCached());
+		Assert.assertEquals(0, sources.get(0).loads);
+	}
+
+	@Test
+	public void testImportsOnlyNeedTheSemanticAnalysisOfWildcards() throws Exception {
+		String plain = "import java.util.List; import java.util.Map; public class A { List<String> a; }";
+		String wildcard = "import java.util.*; public class B { List<String> b; }";
+		List<Compiled> sources = new ArrayList<Compiled>();
+		sources.add(new Compiled("A", plain, compile(plain)));
+		sources.add(new Compiled("B", wildcard, compile(wildcard)));
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>(
+				CleanerConfiguration.DEFAULT.withRemoveUnusedVariables(false).withRemoveUnusedClasses(false)
+						.withRemoveUnusedInterfaces(false).withRemoveUnusedEnumerations(false)
+						.withRemoveUnusedAnnotationTypes(false).withRemoveUnusedMethods(false)
+						.withRemoveUnusedFields(false));
+		List<CleanResult> results = new ParallelCleaner(visitor, 2).clean(sources);
+		Assert.assertEquals(0, sources.get(0).loads);
+		Assert.assertEquals(1, results.get(0).getCompilationUnit().getImports().size());
+		Assert.assertEquals(1, sources.get(1).loads);
+		Assert.assertEquals(1, results.get(1).getCompilationUnit().getImports().size());
+
+		// the sources are decoded with their own encoding
+		String latin = "import java.util.List; public class C { String c = \"\u00e9\"; }";
+		sources.clear();
+		sources.add(new Compiled("C", latin, compile(latin), Charset.forName("ISO-8859-1")));
+		CompilationUnit cu = new ParallelCleaner(visitor, 2).clean(sources).get(0).getCompilationUnit();
+		Assert.assertTrue(cu.getImports() == null || cu.getImports().isEmpty());
+		Assert.assertTrue(cu.toString().contains("\u00e9"));
+	}
+
+	static class Compiled implements SourceUnit {
+
+		private String name;
+
+		private String code;
+
+		private CompilationUnit cu;
+
+		private Charset charset;
+
+		int loads = 0;
+
+		public Compiled(String name, String code, CompilationUnit cu) {
+			this(name, code, cu, Charset.forName("UTF-8"));
+		}
+
+		public Compiled(String name, String code, CompilationUnit cu, Charset charset) {
+			this.name = name;
+			this.code = code;
+			this.cu = cu;
+			this.charset = charset;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+
+		@Override
+		public byte[] getContent() throws IOException {
+			return code.getBytes(charset);
+		}
+
+		@Override
+		public CompilationUnit parse() throws Exception {
+			return ASTManager.parse(new String(getContent(), charset));
+		}
+
+		@Override
+		public CompilationUnit load() throws Exception {
+			loads++;
+			return cu;
+		}
+	}
+}
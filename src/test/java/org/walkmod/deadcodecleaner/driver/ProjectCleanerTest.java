@@ -0,0 +1,158 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+ 
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.driver;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.walkmod.deadcodecleaner.driver.ParallelCleanerTest.Compiled;
+import org.walkmod.deadcodecleaner.visitors.CleanDeadDeclarationsVisitor;
+import org.walkmod.deadcodecleaner.visitors.EntryPoints;
+import org.walkmod.javalang.ast.CompilationUnit;
+import org.walkmod.javalang.ast.body.BodyDeclaration;
+import org.walkmod.javalang.ast.body.FieldDeclaration;
+import org.walkmod.javalang.ast.body.MethodDeclaration;
+import org.walkmod.javalang.test.SemanticTest;
+
+public class ProjectCleanerTest extends SemanticTest {
+
+	private static final String[] PROJECT = {
+			"package p; public class Main { public static void main(String[] args) { new Task().run(); Util.used(); } }",
+			"package p; public class Util { public int counter; public static void used() {} "
+					+ "public static void unused() { helper(); } private static void helper() {} }",
+			"package p; public class Task implements Runnable { public void run() {} public void extra() {} "
+					+ "@Deprecated public void kept() {} }",
+			"package p; public class Orphan { public void foo() { Util.unused(); } }" };
+
+	@Test
+	public void testRemoveUnreachableMembersOfAnyVisibility() throws Exception {
+		List<Compiled> sources = compileProject("");
+		ProjectCleaner cleaner = new ProjectCleaner(new CleanDeadDeclarationsVisitor<Object>(),
+				EntryPoints.DEFAULT.withReflective(Arrays.asList("p.Task#kept")), 2);
+		List<CleanResult> results = cleaner.clean(sources);
+		Assert.assertEquals(Arrays.asList("p.Orphan", "p.Orphan#foo()", "p.Task#extra()", "p.Util#counter",
+				"p.Util#helper()", "p.Util#unused()"), cleaner.getProjectIndex().getUnreachable());
+
+		Assert.assertEquals(1, members(results.get(0)).size());
+		Assert.assertEquals("used", ((MethodDeclaration) members(results.get(1)).get(0)).getName());
+		Assert.assertEquals(1, members(results.get(1)).size());
+		List<BodyDeclaration> task = members(results.get(2));
+		Assert.assertEquals(2, task.size());
+		Assert.assertEquals("run", ((MethodDeclaration) task.get(0)).getName());
+		Assert.assertEquals("kept", ((MethodDeclaration) task.get(1)).getName());
+		Assert.assertTrue(results.get(3).getCompilationUnit().getTypes().isEmpty());
+		for (BodyDeclaration member : members(results.get(1))) {
+			Assert.assertFalse(member instanceof FieldDeclaration);
+		}
+	}
+
+	@Test
+	public void testSourcesThatCanNotBeIndexedDisableTheProjectIndex() throws Exception {
+		List<Compiled> sources = new ArrayList<Compiled>();
+		sources.add(new Compiled("Util", PROJECT[1], compile(PROJECT[1])));
+		sources.add(new Compiled("Broken", "", null));
+		ProjectCleaner cleaner = new ProjectCleaner(new CleanDeadDeclarationsVisitor<Object>(), EntryPoints.DEFAULT, 2);
+		cleaner.clean(sources);
+		Assert.assertNull(cleaner.getProjectIndex());
+		// only the private helper would be removed, and it is used
+		Assert.assertEquals(4, sources.get(0).load().getTypes().get(0).getMembers().size());
+	}
+
+	@Test
+	public void testStoredSegmentsAreReused() throws Exception {
+		File file = File.createTempFile("index", ".bin");
+		file.deleteOnExit();
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		EntryPoints entryPoints = EntryPoints.DEFAULT.withReflective(Arrays.asList("p.Task#kept"));
+		List<String> unreachable = Arrays.asList("p.Orphan", "p.Orphan#foo()", "p.Task#extra()", "p.Util#counter",
+				"p.Util#helper()", "p.Util#unused()");
+
+		List<Compiled> sources = compileProject("");
+		ProjectCleaner cleaner = new ProjectCleaner(visitor, entryPoints, 2);
+		IndexStore store = new IndexStore(file, null, visitor.getConfiguration(), entryPoints);
+		cleaner.setIndexStore(store);
+		cleaner.clean(sources);
+		store.close();
+		Assert.assertEquals(unreachable, cleaner.getProjectIndex().getUnreachable());
+		Assert.assertEquals(2, sources.get(0).loads);
+
+		// a crash in the middle of an append
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(raf.length());
+			raf.writeInt(1000);
+			raf.writeInt(0);
+		} finally {
+			raf.close();
+		}
+		sources = compileProject("");
+		store = new IndexStore(file, null, visitor.getConfiguration(), entryPoints);
+		cleaner.setIndexStore(store);
+		cleaner.clean(sources);
+		store.close();
+		Assert.assertEquals(unreachable, cleaner.getProjectIndex().getUnreachable());
+		for (Compiled source : sources) {
+			Assert.assertEquals(1, source.loads);
+		}
+
+		// the same signatures, so only the changed source is analyzed again
+		sources = compileProject(" ");
+		store = new IndexStore(file, null, visitor.getConfiguration(), entryPoints);
+		cleaner.setIndexStore(store);
+		sources.set(1, compileProject("").get(1));
+		cleaner.clean(sources);
+		Assert.assertEquals(unreachable, cleaner.getProjectIndex().getUnreachable());
+		Assert.assertEquals(2, sources.get(0).loads);
+		Assert.assertEquals(1, sources.get(1).loads);
+
+		// without a source, the rest of the project must be analyzed again
+		sources = compileProject(" ");
+		sources.remove(3);
+		cleaner.clean(sources);
+		store.close();
+		Assert.assertEquals(Arrays.asList("p.Task#extra()", "p.Util#counter", "p.Util#helper()", "p.Util#unused()"),
+				cleaner.getProjectIndex().getUnreachable());
+		Assert.assertEquals(2, sources.get(1).loads);
+		store = new IndexStore(file, null, visitor.getConfiguration(), entryPoints);
+		Assert.assertFalse(store.getNames().contains("Source3"));
+		store.close();
+	}
+
+	/**
+	 * @param suffix
+	 *            appended to the content of the sources, to change their key
+	 */
+	private List<Compiled> compileProject(String suffix) throws Exception {
+		List<Compiled> sources = new ArrayList<Compiled>();
+		for (int i = 0; i < PROJECT.length; i++) {
+			// each source is analyzed with the rest of the project in its classpath
+			List<String> code = new ArrayList<String>(Arrays.asList(PROJECT));
+			code.add(0, code.remove(i));
+			sources.add(new Compiled("Source" + i, PROJECT[i] + suffix, compile(code.toArray(new String[code.size()]))));
+		}
+		return sources;
+	}
+
+	private static List<BodyDeclaration> members(CleanResult result) {
+		CompilationUnit cu = result.getCompilationUnit();
+		return cu.getTypes().get(0).getMembers();
+	}
+}
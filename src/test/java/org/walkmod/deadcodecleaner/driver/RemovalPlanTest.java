@@ -0,0 +1,185 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+ 
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.driver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.walkmod.deadcodecleaner.driver.ParallelCleanerTest.Compiled;
+import org.walkmod.deadcodecleaner.report.SourceEdit;
+import org.walkmod.deadcodecleaner.visitors.CleanDeadDeclarationsVisitor;
+import org.walkmod.javalang.ast.CompilationUnit;
+import org.walkmod.javalang.test.SemanticTest;
+
+public class RemovalPlanTest extends SemanticTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String FOO = "public class Foo {\n    private int a;\n    public void bar() {}\n}\n";
+
+	private static final String BAR = "import java.util.List;\npublic class Bar {\n    public void bar() {\n"
+			+ "        int x = 1;\n    }\n}\n";
+
+	private static final String CLEAN = "public class Baz {\n    public void baz() {}\n}\n";
+
+	@Test
+	public void testPlansAreAppliedWithoutTheAnalysis() throws Exception {
+		List<Compiled> sources = new ArrayList<Compiled>();
+		sources.add(new Compiled("Foo.java", FOO, compile(FOO)));
+		sources.add(new Compiled("Bar.java", BAR, compile(BAR)));
+		sources.add(new Compiled("Baz.java", CLEAN, compile(CLEAN)));
+		RemovalPlan plan = new ParallelCleaner(new CleanDeadDeclarationsVisitor<Object>(), 2).plan(sources);
+		Assert.assertEquals(2, plan.getNames().size());
+		Assert.assertEquals("Foo#a", plan.getEdits("Foo.java").get(0).getSymbol());
+
+		File file = File.createTempFile("plan", ".bin");
+		file.deleteOnExit();
+		plan.write(file);
+		RemovalPlan read = RemovalPlan.read(file);
+		Assert.assertEquals(plan.getNames(), read.getNames());
+		Assert.assertEquals(plan.getEdits("Bar.java").size(), read.getEdits("Bar.java").size());
+		List<String> symbols = new ArrayList<String>();
+		for (SourceEdit edit : read.getEdits("Bar.java")) {
+			symbols.add(edit.getSymbol());
+		}
+		Assert.assertTrue(symbols.contains("java.util.List"));
+
+		File root = createSources();
+		Assert.assertTrue(read.apply(root, UTF8) > 0);
+		Assert.assertEquals("public class Foo {\n    public void bar() {}\n}\n", read(new File(root, "Foo.java")));
+		Assert.assertEquals("public class Bar {\n    public void bar() {\n    }\n}\n", read(new File(root, "Bar.java")));
+		Assert.assertEquals(CLEAN, read(new File(root, "Baz.java")));
+	}
+
+	@Test
+	public void testStalePlansAreRejected() throws Exception {
+		List<Compiled> sources = new ArrayList<Compiled>();
+		sources.add(new Compiled("Foo.java", FOO, compile(FOO)));
+		sources.add(new Compiled("Bar.java", BAR, compile(BAR)));
+		RemovalPlan plan = new ParallelCleaner(new CleanDeadDeclarationsVisitor<Object>(), 2).plan(sources);
+
+		File root = createSources();
+		String changed = BAR.replace("int x = 1;", "int x = 2;");
+		write(new File(root, "Bar.java"), changed);
+		Assert.assertEquals(Arrays.asList("Bar.java"), plan.getStale(root));
+		try {
+			plan.apply(root, UTF8);
+			Assert.fail("stale plan applied");
+		} catch (IOException e) {
+			Assert.assertEquals(FOO, read(new File(root, "Foo.java")));
+			Assert.assertEquals(changed, read(new File(root, "Bar.java")));
+		}
+	}
+
+	@Test
+	public void testPlansOutsideOfTheRootAreRejected() throws Exception {
+		List<Compiled> sources = new ArrayList<Compiled>();
+		sources.add(new Compiled("Foo.java", FOO, compile(FOO)));
+		RemovalPlan plan = new ParallelCleaner(new CleanDeadDeclarationsVisitor<Object>(), 2).plan(sources);
+		List<SourceEdit> edits = plan.getEdits("Foo.java");
+
+		File root = createSources();
+		File outside = new File(root.getParentFile(), root.getName() + "-Foo.java");
+		write(outside, FOO);
+		String[] names = { "../" + outside.getName(), outside.getAbsolutePath(), "sub/../../" + outside.getName() };
+		for (String name : names) {
+			RemovalPlan escaping = new RemovalPlan();
+			escaping.add("Foo.java", FOO.getBytes("UTF-8"), edits);
+			escaping.add(name, FOO.getBytes("UTF-8"), edits);
+			try {
+				escaping.apply(root, UTF8);
+				Assert.fail("source outside of the root patched: " + name);
+			} catch (IOException e) {
+				Assert.assertEquals(FOO, read(new File(root, "Foo.java")));
+				Assert.assertEquals(FOO, read(outside));
+			}
+		}
+	}
+
+	@Test
+	public void testFailedSourcesAreRecorded() throws Exception {
+		List<Compiled> sources = new ArrayList<Compiled>();
+		sources.add(new Compiled("Foo.java", FOO, compile(FOO)));
+		sources.add(new Compiled("Broken.java", "", null) {
+			@Override
+			public CompilationUnit load() throws Exception {
+				throw new IllegalStateException("broken");
+			}
+		});
+		sources.add(new Compiled("Baz.java", CLEAN, compile(CLEAN)));
+		RemovalPlan plan = new ParallelCleaner(new CleanDeadDeclarationsVisitor<Object>(), 2).plan(sources);
+		Assert.assertFalse(plan.isComplete());
+		Assert.assertEquals(Arrays.asList("Foo.java"), new ArrayList<String>(plan.getNames()));
+		Assert.assertEquals(Arrays.asList("Broken.java"), new ArrayList<String>(plan.getFailures().keySet()));
+
+		File file = File.createTempFile("plan", ".bin");
+		file.deleteOnExit();
+		plan.write(file);
+		RemovalPlan read = RemovalPlan.read(file);
+		Assert.assertFalse(read.isComplete());
+		Assert.assertEquals(plan.getFailures(), read.getFailures());
+
+		// an incomplete plan is only applied if the caller accepts it
+		File root = createSources();
+		try {
+			read.apply(root, UTF8);
+			Assert.fail("incomplete plan applied");
+		} catch (IOException e) {
+			Assert.assertEquals(FOO, read(new File(root, "Foo.java")));
+		}
+		Assert.assertTrue(read.apply(root, UTF8, true) > 0);
+		Assert.assertEquals("public class Foo {\n    public void bar() {}\n}\n", read(new File(root, "Foo.java")));
+	}
+
+	private static File createSources() throws IOException {
+		File root = File.createTempFile("sources", "");
+		Assert.assertTrue(root.delete() && root.mkdir());
+		root.deleteOnExit();
+		write(new File(root, "Foo.java"), FOO);
+		write(new File(root, "Bar.java"), BAR);
+		write(new File(root, "Baz.java"), CLEAN);
+		return root;
+	}
+
+	private static void write(File file, String code) throws IOException {
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(code.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			byte[] content = new byte[(int) raf.length()];
+			raf.readFully(content);
+			return new String(content, "UTF-8");
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+ 
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.driver;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.walkmod.deadcodecleaner.report.SourceEdit;
+import org.walkmod.deadcodecleaner.visitors.CleanDeadDeclarationsVisitor;
+import org.walkmod.javalang.ast.CompilationUnit;
+import org.walkmod.javalang.test.SemanticTest;
+
+public class SourcePatcherTest extends SemanticTest {
+
+	@Test
+	public void testOnlyTheRemovedRangesChange() throws Exception {
+		String code = "package p;\nimport java.util.List;\nimport java.util.Map;\n\npublic class Foo {\n"
+				+ "    private int a = 1, b = 2;\n    public Map<String, String> m;\n    /** Unused. */\n"
+				+ "    private void unused() {}\n    public int bar(int x) {\n        if (x > 0) {}\n"
+				+ "        return a + x;\n    }\n}\n";
+		CompilationUnit cu = compile(code);
+		List<SourceEdit> edits = new CleanDeadDeclarationsVisitor<Object>().plan(cu);
+		Assert.assertFalse(edits.isEmpty());
+
+		File file = File.createTempFile("Foo", ".java");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(code.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		long written = new SourcePatcher().patch(file, edits);
+		Assert.assertEquals("package p;\nimport java.util.Map;\n\npublic class Foo {\n    private int a = 1;\n"
+				+ "    public Map<String, String> m;\n    public int bar(int x) {\n        return a + x;\n    }\n}\n",
+				read(file));
+		Assert.assertEquals(file.length(), written);
+	}
+
+	@Test
+	public void testFoldedConditionsKeepTheLiveBranch() throws Exception {
+		String code = "public class Foo {\n    private static final boolean DEBUG = false;\n"
+				+ "    public int bar(int x) {\n        if (DEBUG) {\n            x--;\n        } else {\n"
+				+ "            x++;\n        }\n        return DEBUG ? 0 : x;\n    }\n}\n";
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		visitor.setFoldConstantConditions(true);
+		List<SourceEdit> edits = visitor.plan(compile(code));
+		byte[] patched = new SourcePatcher().apply(code.getBytes("UTF-8"), edits);
+		Assert.assertEquals("public class Foo {\n    public int bar(int x) {\n        {\n            x++;\n        }\n"
+				+ "        return x;\n    }\n}\n", new String(patched, "UTF-8"));
+	}
+
+	@Test
+	public void testTabsMoveToTheTabStopsOfTheParser() throws Exception {
+		String code = "public class Foo {\n\tprivate int a = 1,\tb = 2;\n\tprivate void unused() {}\n"
+				+ "\tpublic int bar() {\n\t\tint x = 0, \ty = 1;\n\t\treturn a + x;\n\t}\n}\n";
+		List<SourceEdit> edits = new CleanDeadDeclarationsVisitor<Object>().plan(compile(code));
+		byte[] patched = new SourcePatcher().apply(code.getBytes("UTF-8"), edits);
+		Assert.assertEquals("public class Foo {\n\tprivate int a = 1;\n\tpublic int bar() {\n\t\tint x = 0;\n"
+				+ "\t\treturn a + x;\n\t}\n}\n", new String(patched, "UTF-8"));
+	}
+
+	@Test
+	public void testColumnsCountTheDecodedChars() throws Exception {
+		// a two bytes char, and a supplementary char that takes four bytes and two columns
+		String code = "public class Foo {\n\tprivate String s = \"\u00e4\ud834\udd1e\", t = \"\u00e4\";\n"
+				+ "\tpublic String bar() {\n\t\treturn s;\n\t}\n}\n";
+		List<SourceEdit> edits = new CleanDeadDeclarationsVisitor<Object>().plan(compile(code));
+		byte[] patched = new SourcePatcher().apply(code.getBytes("UTF-8"), edits);
+		String expected = "public class Foo {\n\tprivate String s = \"\u00e4\ud834\udd1e\";\n"
+				+ "\tpublic String bar() {\n\t\treturn s;\n\t}\n}\n";
+		Assert.assertEquals(expected, new String(patched, "UTF-8"));
+
+		code = "public class Foo {\n\tprivate String s = \"\u00e4\u00f6\", t = \"\u00e4\";\n"
+				+ "\tpublic String bar() {\n\t\treturn s;\n\t}\n}\n";
+		edits = new CleanDeadDeclarationsVisitor<Object>().plan(compile(code));
+		Charset latin1 = Charset.forName("ISO-8859-1");
+		patched = new SourcePatcher(latin1).apply(code.getBytes(latin1), edits);
+		expected = "public class Foo {\n\tprivate String s = \"\u00e4\u00f6\";\n"
+				+ "\tpublic String bar() {\n\t\treturn s;\n\t}\n}\n";
+		Assert.assertEquals(expected, new String(patched, latin1));
+	}
+
+	@Test
+	public void testUnparseablePatchesAreNotWritten() throws Exception {
+		String code = "public class Foo { }\n";
+		File file = File.createTempFile("Foo", ".java");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(code.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+		List<SourceEdit> edits = Arrays.asList(new SourceEdit(1, 18, 1, 19, ""));
+		Assert.assertEquals(-1, new SourcePatcher().patch(file, edits));
+		Assert.assertEquals(code, read(file));
+	}
+
+	private static String read(File file) throws Exception {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			byte[] content = new byte[(int) raf.length()];
+			raf.readFully(content);
+			return new String(content, "UTF-8");
+		} finally {
+			raf.close();
+		}
+	}
+}
@@ -15,21 +15,43 @@ You should have received a copy of the GNU Lesser General Public License
 along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
 package org.walkmod.deadcodecleaner.visitors;
 
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
 import javax.lang.model.SourceVersion;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
+import org.walkmod.deadcodecleaner.metrics.CleanerStatistics;
+import org.walkmod.deadcodecleaner.metrics.CleanupMetrics;
+import org.walkmod.deadcodecleaner.report.Finding;
+import org.walkmod.deadcodecleaner.report.FindingListener;
+import org.walkmod.deadcodecleaner.report.JsonLinesWriter;
+import org.walkmod.javalang.ASTManager;
 import org.walkmod.javalang.ast.CompilationUnit;
+import org.walkmod.javalang.ast.ImportDeclaration;
+import org.walkmod.javalang.ast.SymbolReference;
 import org.walkmod.javalang.ast.body.BodyDeclaration;
+import org.walkmod.javalang.ast.body.ConstructorDeclaration;
 import org.walkmod.javalang.ast.body.FieldDeclaration;
 import org.walkmod.javalang.ast.body.MethodDeclaration;
 import org.walkmod.javalang.ast.body.VariableDeclarator;
+import org.walkmod.javalang.ast.expr.Expression;
+import org.walkmod.javalang.ast.expr.NameExpr;
 import org.walkmod.javalang.ast.expr.ObjectCreationExpr;
 import org.walkmod.javalang.ast.expr.VariableDeclarationExpr;
+import org.walkmod.javalang.ast.stmt.BlockStmt;
+import org.walkmod.javalang.ast.stmt.EmptyStmt;
 import org.walkmod.javalang.ast.stmt.ExpressionStmt;
+import org.walkmod.javalang.ast.stmt.ForStmt;
+import org.walkmod.javalang.ast.stmt.IfStmt;
+import org.walkmod.javalang.ast.stmt.ReturnStmt;
 import org.walkmod.javalang.ast.stmt.Statement;
 import org.walkmod.javalang.test.SemanticTest;
 
@@ -87,12 +109,12 @@ public class CleanDeadDeclarationsVisitorTest extends SemanticTest {
 	}
 	
 	@Test
-   public void testRemoveUnusedMethods5() throws Exception {
-      CompilationUnit cu = compile(
-            "import java.util.Map; public class Foo { private Map checkHas; private void bar(String s){ checkHas = null;} public String getName(String x) { bar(x); return \"name\";}}");
-      cu.accept(new CleanDeadDeclarationsVisitor<Object>(), null);
-      Assert.assertEquals(3, cu.getTypes().get(0).getMembers().size());
-   }
+	public void testRemoveUnusedMethods5() throws Exception {
+		CompilationUnit cu = compile(
+				"import java.util.Map; public class Foo { private Map checkHas; private void bar(String s){ checkHas = null;} public String getName(String x) { bar(x); return \"name\";}}");
+		cu.accept(new CleanDeadDeclarationsVisitor<Object>(), null);
+		Assert.assertEquals(3, cu.getTypes().get(0).getMembers().size());
+	}
 
 	@Test
 	public void testRemoveRecursiveMethods() throws Exception {
@@ -102,6 +124,43 @@ public class CleanDeadDeclarationsVisitorTest extends SemanticTest {
 		Assert.assertEquals(0, cu.getTypes().get(0).getMembers().size());
 	}
 
+	@Test
+	public void testRemoveDeadCycles() throws Exception {
+		CompilationUnit cu = compile("public class Foo { private void a(){ b(); } private void b(){ a(); new N().run(); } "
+				+ "private class N { void run(){ a(); } } private int f; private void g(){ f = h(); } private int h(){ g(); return f; } "
+				+ "public void live(){ c(); } private void c(){ d(); } private void d(){ c(); } }");
+		cu.accept(new CleanDeadDeclarationsVisitor<Object>(), null);
+		List<BodyDeclaration> members = cu.getTypes().get(0).getMembers();
+		Assert.assertEquals(3, members.size());
+		Assert.assertEquals("live", ((MethodDeclaration) members.get(0)).getName());
+	}
+
+	@Test
+	public void testKeepCyclesWithSuppressedWarnings() throws Exception {
+		CompilationUnit cu = compile("public class Foo { private void a(){ b(); } @SuppressWarnings(\"unused\") private void b(){ a(); } }");
+		cu.accept(new CleanDeadDeclarationsVisitor<Object>(), null);
+		Assert.assertEquals(2, cu.getTypes().get(0).getMembers().size());
+	}
+
+	@Test
+	public void testRemoveInCascade() throws Exception {
+		CompilationUnit cu = compile(
+				"import java.util.List; public class Foo { private List a; private void bar(){ a = null; zzz(); } private void zzz(){} }");
+		cu.accept(new CleanDeadDeclarationsVisitor<Object>(), null);
+		Assert.assertTrue(cu.getTypes().get(0).getMembers().isEmpty());
+		Assert.assertTrue(cu.getImports().isEmpty());
+	}
+
+	@Test
+	public void testRemoveMembersOrphanedByLaterMembers() throws Exception {
+		CompilationUnit cu = compile(
+				"public class Foo { private int x; private void a(){ x++; } public void c(){} private void b(){ a(); } }");
+		cu.accept(new CleanDeadDeclarationsVisitor<Object>(), null);
+		List<BodyDeclaration> members = cu.getTypes().get(0).getMembers();
+		Assert.assertEquals(1, members.size());
+		Assert.assertEquals("c", ((MethodDeclaration) members.get(0)).getName());
+	}
+
 	@Test
 	public void testRemoveUnusedFields() throws Exception {
 		CompilationUnit cu = compile("public class Foo { private String bar; }");
@@ -299,6 +358,86 @@ public class CleanDeadDeclarationsVisitorTest extends SemanticTest {
 		Assert.assertTrue(cu.getImports().isEmpty());
 	}
 
+	@Test
+	public void testUsageIndexFlushesTheDetachedUsages() throws Exception {
+		CompilationUnit cu = compile("public class Foo { private int a; public int bar() { return a; } "
+				+ "public int baz() { return a + 1; } }");
+		VariableDeclarator def = ((FieldDeclaration) cu.getTypes().get(0).getMembers().get(0)).getVariables().get(0);
+		Assert.assertEquals(2, def.getUsages().size());
+		SymbolReference ref = def.getUsages().get(0);
+		UsageIndex index = new UsageIndex();
+		Assert.assertTrue(index.removeUsage(def, ref));
+		Assert.assertFalse(index.removeUsage(def, ref));
+		Assert.assertEquals(1, index.getUsages(def).size());
+		// the semantic model is only updated by the flush
+		Assert.assertEquals(2, def.getUsages().size());
+		index.flush();
+		Assert.assertEquals(1, def.getUsages().size());
+		Assert.assertNotSame(ref, def.getUsages().get(0));
+		Assert.assertTrue(index.isUsed(def));
+		Assert.assertEquals(1, index.getUsages(def).size());
+	}
+
+	@Test
+	public void testDetachedUsagesAreNotSeenByLaterPasses() throws Exception {
+		CompilationUnit cu = compile("public class Foo { private int a; private int b; private void dead() { a++; } "
+				+ "public int get() { return b; } }");
+		List<BodyDeclaration> members = cu.getTypes().get(0).getMembers();
+		VariableDeclarator a = ((FieldDeclaration) members.get(0)).getVariables().get(0);
+		VariableDeclarator b = ((FieldDeclaration) members.get(1)).getVariables().get(0);
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		visitor.setRemoveUnusedFields(false);
+		cu.accept(visitor, null);
+		Assert.assertEquals(3, members.size());
+		Assert.assertTrue(a.getUsages() == null || a.getUsages().isEmpty());
+		Assert.assertEquals(1, b.getUsages().size());
+
+		visitor.setRemoveUnusedFields(true);
+		cu.accept(visitor, null);
+		members = cu.getTypes().get(0).getMembers();
+		Assert.assertEquals(2, members.size());
+		Assert.assertSame(b, ((FieldDeclaration) members.get(0)).getVariables().get(0));
+		Assert.assertEquals(1, b.getUsages().size());
+	}
+
+	@Test
+	public void testRemoveManyUnusedVariables() throws Exception {
+		CompilationUnit cu = compile(chainOfVariables(1000));
+		cu.accept(new CleanDeadDeclarationsVisitor<Object>(), null);
+		MethodDeclaration md = (MethodDeclaration) cu.getTypes().get(0).getMembers().get(0);
+		Assert.assertEquals(2, md.getBody().getStmts().size());
+	}
+
+	@Test
+	public void testRemoveManyUnusedVariablesAllocatesLinearly() throws Exception {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+		compile(chainOfVariables(1000)).accept(new CleanDeadDeclarationsVisitor<Object>(), null);
+		CompilationUnit small = compile(chainOfVariables(1000));
+		CompilationUnit large = compile(chainOfVariables(2000));
+		long threadId = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(threadId);
+		small.accept(new CleanDeadDeclarationsVisitor<Object>(), null);
+		long allocatedSmall = threads.getThreadAllocatedBytes(threadId) - before;
+		before = threads.getThreadAllocatedBytes(threadId);
+		large.accept(new CleanDeadDeclarationsVisitor<Object>(), null);
+		long allocatedLarge = threads.getThreadAllocatedBytes(threadId) - before;
+		// copying the block for each removed statement would allocate four times more for twice the statements
+		Assert.assertTrue("allocated " + allocatedSmall + " and " + allocatedLarge + " bytes",
+				allocatedLarge < 3 * allocatedSmall);
+	}
+
+	private static String chainOfVariables(int size) {
+		StringBuilder code = new StringBuilder("public class Foo{ public int bar() { int x0 = 0; ");
+		for (int i = 1; i < size; i++) {
+			code.append("int x").append(i).append(" = x").append(i - 1).append("; ");
+		}
+		return code.append("int y = 1; return y; }}").toString();
+	}
+
 	@Test
 	public void testSuppressWarningsOnMethods() throws Exception {
 		CompilationUnit cu = compile("public class Foo { @SuppressWarnings(\"unused\") private void foo(){} }");
@@ -444,6 +583,21 @@ public class CleanDeadDeclarationsVisitorTest extends SemanticTest {
 		Assert.assertEquals(1, cu.getTypes().get(0).getMembers().size());
 	}
 	
+	@Test
+	public void testExcludedMethodsWithTheSameName() throws Exception{
+		String code = "public class Foo{ private void _syncIO() {} private void _syncIO(String s) {} private void close() {} }";
+		CompilationUnit cu = compile(code);
+		CleanDeadDeclarationsVisitor<?> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		List<Object> content = new LinkedList<Object>();
+		content.add("Bar#_syncIO()");
+		content.add("Foo#_syncIO(java.lang.String)");
+		content.add("Foo#_syncIO()");
+		JSONArray array = new JSONArray(content);
+		visitor.setExcludedMethods(array);
+		cu.accept(visitor, null);
+		Assert.assertEquals(2, cu.getTypes().get(0).getMembers().size());
+	}
+
 	@Test
 	public void testExcludedFields() throws Exception{
 		String code = "public class Foo{ private String name; }";
@@ -457,34 +611,425 @@ public class CleanDeadDeclarationsVisitorTest extends SemanticTest {
 		Assert.assertEquals(1, cu.getTypes().get(0).getMembers().size());
 	}
 	
+	@Test
+	public void testSideEffectsChecksDoNotAllocate() throws Exception {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+		CompilationUnit cu = compile(
+				"public class Foo { private int x = 1; private int y = (x + 2) * 3 - (x > 5 ? -x : 7); private int z = x + bar(); private int bar() { return 1; } }");
+		List<BodyDeclaration> members = cu.getTypes().get(0).getMembers();
+		Expression pure = ((FieldDeclaration) members.get(1)).getVariables().get(0).getInit();
+		Expression impure = ((FieldDeclaration) members.get(2)).getVariables().get(0).getInit();
+		Assert.assertFalse(HasSideEffects.IN_INITIALIZER.check(pure));
+		Assert.assertTrue(HasSideEffects.IN_INITIALIZER.check(impure));
+
+		int iterations = 100000;
+		for (int i = 0; i < iterations; i++) {
+			HasSideEffects.IN_INITIALIZER.check(pure);
+			HasSideEffects.IN_CONDITION.check(impure);
+		}
+		long threadId = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < iterations; i++) {
+			HasSideEffects.IN_INITIALIZER.check(pure);
+			HasSideEffects.IN_CONDITION.check(impure);
+		}
+		long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+		// a single allocation per check would be several bytes per iteration
+		Assert.assertTrue("allocated " + allocated + " bytes", allocated < iterations);
+	}
+
+	@Test
+	public void testSharedVisitor() throws Exception {
+		CleanerConfiguration configuration = CleanerConfiguration.DEFAULT.withRemoveUnusedFields(false);
+		Assert.assertTrue(CleanerConfiguration.DEFAULT.isRemoveUnusedFields());
+
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>(configuration);
+		CompilationUnit cu1 = compile("public class Foo { private int x; private void bar(){} }");
+		CompilationUnit cu2 = compile("public class Foo { private int y; private void bar(){} public void baz(){ bar(); } }");
+		cu1.accept(visitor, null);
+		cu2.accept(visitor, null);
+		Assert.assertEquals(1, cu1.getTypes().get(0).getMembers().size());
+		Assert.assertEquals(3, cu2.getTypes().get(0).getMembers().size());
+		Assert.assertSame(configuration, visitor.getConfiguration());
+	}
+
+	@Test
+	public void testSharedVisitorOnNodes() throws Exception {
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		CompilationUnit cu = compile("public class Foo { private void bar(){} public int baz(){ int x = 1; if (true) { } return 0; } }");
+		MethodDeclaration md = (MethodDeclaration) cu.getTypes().get(0).getMembers().get(1);
+		md.accept(visitor, null);
+		Assert.assertEquals(1, md.getBody().getStmts().size());
+		cu.getTypes().get(0).accept(visitor, null);
+		Assert.assertEquals(1, cu.getTypes().get(0).getMembers().size());
+	}
+
+	@Test
+	public void testReportOnly() throws Exception {
+		CompilationUnit cu = compile("package foo; import java.util.List; public class Foo { private void bar(){ zzz(); } "
+				+ "public void baz(){ int x = 1; } private void zzz(){} }");
+		final List<String> names = new LinkedList<String>();
+		StringWriter out = new StringWriter();
+		final JsonLinesWriter writer = new JsonLinesWriter(out);
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		visitor.report(cu, new FindingListener() {
+			@Override
+			public void found(List<Finding> findings) {
+				for (Finding finding : findings) {
+					names.add(finding.getKind() + " " + finding.getName());
+				}
+				writer.found(findings);
+			}
+		});
+		Assert.assertEquals(4, names.size());
+		Assert.assertTrue(names.contains("IMPORT java.util.List"));
+		Assert.assertTrue(names.contains("METHOD foo.Foo#bar()"));
+		Assert.assertTrue(names.contains("METHOD foo.Foo#zzz()"));
+		Assert.assertTrue(names.contains("VARIABLE foo.Foo#baz()/x"));
+		String[] lines = out.toString().split("\n");
+		Assert.assertEquals(4, lines.length);
+		Assert.assertTrue(lines[0].startsWith("{\"kind\":\"import\",\"name\":\"java.util.List\",\"range\":{"));
+
+		// neither the tree nor the semantic information have changed
+		Assert.assertEquals(1, cu.getImports().size());
+		Assert.assertEquals(3, cu.getTypes().get(0).getMembers().size());
+		Assert.assertTrue(visitor.clean(cu));
+		Assert.assertEquals(0, cu.getImports().size());
+		Assert.assertEquals(1, cu.getTypes().get(0).getMembers().size());
+	}
+
+	@Test
+	public void testReportOnlyTheOutermostRemovals() throws Exception {
+		CompilationUnit cu = compile("public class Foo { private void bar(){ int x = 1; if (x > 0) { } } "
+				+ "public void baz(){ } }");
+		final List<String> names = new LinkedList<String>();
+		CleanerStatistics statistics = new CleanerStatistics();
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		visitor.setStatistics(statistics);
+		visitor.report(cu, new FindingListener() {
+			@Override
+			public void found(List<Finding> findings) {
+				for (Finding finding : findings) {
+					names.add(finding.getKind() + " " + finding.getName());
+				}
+			}
+		});
+		Assert.assertEquals(Arrays.asList("METHOD Foo#bar()"), names);
+		Assert.assertEquals(1, statistics.getMethodRemovals());
+		Assert.assertEquals(0, statistics.getVariableRemovals());
+		Assert.assertEquals(0, statistics.getEmptyIfRemovals());
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		CompilationUnit cu = compile("import java.util.List; public class Foo { private void yyy(){} "
+				+ "private void zzz(){ yyy(); } private void bar(){ zzz(); } public void baz(){ int x = 1; } }");
+		CleanerStatistics statistics = new CleanerStatistics();
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		visitor.setStatistics(statistics);
+		cu.accept(visitor, null);
+		Assert.assertEquals(1, statistics.getCompilationUnits());
+		Assert.assertEquals(1, statistics.getImportRemovals());
+		Assert.assertEquals(3, statistics.getMethodRemovals());
+		Assert.assertEquals(1, statistics.getVariableRemovals());
+		Assert.assertEquals(2, statistics.getMaxCascadeDepth());
+		Assert.assertEquals("Foo", statistics.getDeepestCascade());
+		Assert.assertTrue(statistics.getVisitedNodes() >= 6);
+		Assert.assertTrue(statistics.getSweeps() > 0);
+		Assert.assertTrue(statistics.toString().contains("removals.method=3"));
+		statistics.reset();
+		Assert.assertEquals(0, statistics.getCompilationUnits());
+		Assert.assertEquals(0, statistics.getMaxCascadeDepth());
+	}
+
+	@Test
+	public void testBudgets() throws Exception {
+		StringBuilder code = new StringBuilder("public class Foo { ");
+		for (int i = 9; i >= 0; i--) {
+			code.append("private int m").append(i).append("() { return ");
+			code.append(i < 9 ? "m" + (i + 1) + "()" : "0").append("; } ");
+		}
+		CompilationUnit cu = compile(code.append("}").toString());
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>(
+				CleanerConfiguration.DEFAULT.withMaxCascadeSteps(2));
+		CleanupMetrics metrics = visitor.measure(cu);
+		Assert.assertTrue(metrics.isPartial());
+		Assert.assertEquals(2, metrics.getCascadeSteps());
+		Assert.assertEquals(7, cu.getTypes().get(0).getMembers().size());
+		// the remaining dead code is found by a run without budget
+		Assert.assertFalse(new CleanDeadDeclarationsVisitor<Object>().measure(cu).isPartial());
+		Assert.assertEquals(0, cu.getTypes().get(0).getMembers().size());
+
+		cu = compile("import java.util.List; import java.util.Map; public class Foo { }");
+		visitor = new CleanDeadDeclarationsVisitor<Object>();
+		visitor.setMaxVisitedNodes(1L);
+		Assert.assertTrue(visitor.measure(cu).isPartial());
+		Assert.assertEquals(1, cu.getImports().size());
+		Assert.assertEquals("java.util.Map", cu.getImports().get(0).getName().toString());
+	}
+
+	@Test
+	public void testProjectIndexFootprint() throws Exception {
+		CorpusGenerator generator = corpus().scale(20);
+		ProjectIndex index = new ProjectIndex(EntryPoints.DEFAULT.withReflective(Arrays.asList("corpus.Foo#r0")),
+				CleanerConfiguration.DEFAULT);
+		index.add(compile(generator.generate(42)));
+		index.solve();
+		Assert.assertTrue(index.getSymbols() > 1000);
+		Assert.assertTrue(index.getReferences() > 0);
+		Assert.assertTrue(index.getFootprint() / index.getSymbols() < 200);
+		Assert.assertTrue(index.getUnreachable().contains("corpus.Foo#q0()"));
+		Assert.assertFalse(index.getUnreachable().contains("corpus.Foo#r0()"));
+	}
+
+	@Test
+	public void testCleanGeneratedCorpus() throws Exception {
+		CorpusGenerator generator = corpus();
+		CompilationUnit cu = compile(generator.generate(42));
+		cu.accept(new CleanDeadDeclarationsVisitor<Object>(), null);
+		Assert.assertEquals(generator.getExpectedMembers(), cu.getTypes().get(0).getMembers().size());
+		Assert.assertEquals(generator.getExpectedImports(), cu.getImports().size());
+	}
+
+	/**
+	 * Times a 100x corpus several times, so it only runs with
+	 * -Ddeadcodecleaner.scaling=true.
+	 */
+	@Test
+	public void testCleanerScalesWithTheCorpusSize() throws Exception {
+		Assume.assumeTrue(Boolean.getBoolean("deadcodecleaner.scaling"));
+		double maxExponent = Double.parseDouble(System.getProperty("deadcodecleaner.scaling.exponent", "1.5"));
+		CorpusGenerator generator = corpus();
+		// warm up, so that the smaller sizes are not measured in interpreted mode
+		timeCleaner(generator.scale(10));
+		long[] times = new long[3];
+		int factor = 1;
+		for (int i = 0; i < times.length; i++) {
+			times[i] = timeCleaner(generator.scale(factor));
+			factor *= 10;
+		}
+		double exponent = Math.log((double) times[2] / Math.max(times[1], 1)) / Math.log(10);
+		Assert.assertTrue("1x: " + times[0] + "ns, 10x: " + times[1] + "ns, 100x: " + times[2] + "ns, exponent "
+				+ exponent + " > " + maxExponent, exponent <= maxExponent);
+	}
+
+	private CorpusGenerator corpus() {
+		CorpusGenerator generator = new CorpusGenerator();
+		generator.setMembers(50);
+		generator.setDeadPercentage(60);
+		generator.setCascadeDepth(5);
+		generator.setCycles(2);
+		generator.setNestedTypes(4);
+		generator.setLocalTypes(4);
+		generator.setImports(10);
+		return generator;
+	}
+
+	/**
+	 * Best of three runs over the same generated corpus, excluding the semantic
+	 * analysis.
+	 */
+	private long timeCleaner(CorpusGenerator generator) throws Exception {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < 3; i++) {
+			CompilationUnit cu = compile(generator.generate(i));
+			long start = System.nanoTime();
+			cu.accept(new CleanDeadDeclarationsVisitor<Object>(), null);
+			best = Math.min(best, System.nanoTime() - start);
+			Assert.assertEquals(generator.getExpectedMembers(), cu.getTypes().get(0).getMembers().size());
+		}
+		return best;
+	}
+
 	@Test
 	public void testRemoveEmptyIf() throws Exception{
-	   String code = "public class Foo{ public void x(){ if (1 == 1); }}";
-	   CompilationUnit cu = compile(code);
-	   CleanDeadDeclarationsVisitor<?> visitor = new CleanDeadDeclarationsVisitor<Object>();
-	   cu.accept(visitor, null);
-	   MethodDeclaration md = (MethodDeclaration)cu.getTypes().get(0).getMembers().get(0);
-	   Assert.assertTrue(md.getBody().getStmts().isEmpty());
-	}
-
-	@Test
-   public void testRemoveEmptyIf2() throws Exception{
-      String code = "public class Foo{ public void x(){ if (1 == 1){} }}";
-      CompilationUnit cu = compile(code);
-      CleanDeadDeclarationsVisitor<?> visitor = new CleanDeadDeclarationsVisitor<Object>();
-      cu.accept(visitor, null);
-      MethodDeclaration md = (MethodDeclaration)cu.getTypes().get(0).getMembers().get(0);
-      Assert.assertTrue(md.getBody().getStmts().isEmpty());
-   }
+		String code = "public class Foo{ public void x(){ if (1 == 1); }}";
+		CompilationUnit cu = compile(code);
+		CleanDeadDeclarationsVisitor<?> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		cu.accept(visitor, null);
+		MethodDeclaration md = (MethodDeclaration)cu.getTypes().get(0).getMembers().get(0);
+		Assert.assertTrue(md.getBody().getStmts().isEmpty());
+	}
+
+	@Test
+	public void testRemoveEmptyIf2() throws Exception{
+		String code = "public class Foo{ public void x(){ if (1 == 1){} }}";
+		CompilationUnit cu = compile(code);
+		CleanDeadDeclarationsVisitor<?> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		cu.accept(visitor, null);
+		MethodDeclaration md = (MethodDeclaration)cu.getTypes().get(0).getMembers().get(0);
+		Assert.assertTrue(md.getBody().getStmts().isEmpty());
+	}
 	
 	@Test
 	public void testRemoveConditions() throws Exception {
-	   String code = "import java.io.File; public class Foo{ public void x(){ File x; }}";
-	   CompilationUnit cu = compile(code);
-      CleanDeadDeclarationsVisitor<?> visitor = new CleanDeadDeclarationsVisitor<Object>();
-      visitor.setRemoveUnusedImports(false);
-      cu.accept(visitor, null);
-      Assert.assertFalse(cu.getImports().isEmpty());
+		String code = "import java.io.File; public class Foo{ public void x(){ File x; }}";
+		CompilationUnit cu = compile(code);
+		CleanDeadDeclarationsVisitor<?> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		visitor.setRemoveUnusedImports(false);
+		cu.accept(visitor, null);
+		Assert.assertFalse(cu.getImports().isEmpty());
 	   
 	}
+
+	@Test
+	public void testFoldConstantConditions() throws Exception {
+		String code = "import java.util.List; public class Foo { private static final boolean DEBUG = false; "
+				+ "private static final boolean ENABLED = false; private static final int LEVEL = 2; "
+				+ "private void trace(List<String> s) { } "
+				+ "public int bar(int x) { if (DEBUG) { trace(null); } "
+				+ "if (LEVEL > 1 && !DEBUG) { x++; } else { x--; } return DEBUG ? 0 : x; } "
+				+ "public int baz(int x) { if (!ENABLED) return 0; for (int i = 0; i < x; i++) if (DEBUG) x--; "
+				+ "return x; } public void qux() { if (!ENABLED) return; } }";
+		CompilationUnit cu = compile(code);
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		cu.accept(visitor, null);
+		Assert.assertEquals(7, cu.getTypes().get(0).getMembers().size());
+
+		cu = compile(code);
+		CleanerStatistics statistics = new CleanerStatistics();
+		visitor.setStatistics(statistics);
+		visitor.setFoldConstantConditions(true);
+		cu.accept(visitor, null);
+		Assert.assertTrue(cu.getImports().isEmpty());
+		List<BodyDeclaration> members = cu.getTypes().get(0).getMembers();
+		Assert.assertEquals(4, members.size());
+		List<Statement> stmts = ((MethodDeclaration) members.get(1)).getBody().getStmts();
+		Assert.assertEquals(2, stmts.size());
+		Assert.assertEquals(1, ((BlockStmt) stmts.get(0)).getStmts().size());
+		Assert.assertTrue(((ReturnStmt) stmts.get(1)).getExpr() instanceof NameExpr);
+
+		// the return that is not the last statement keeps its if, so the rest stays reachable
+		stmts = ((MethodDeclaration) members.get(2)).getBody().getStmts();
+		Assert.assertEquals(3, stmts.size());
+		Assert.assertTrue(stmts.get(0) instanceof IfStmt);
+		Assert.assertTrue(((ForStmt) stmts.get(1)).getBody() instanceof EmptyStmt);
+		stmts = ((MethodDeclaration) members.get(3)).getBody().getStmts();
+		Assert.assertEquals(1, stmts.size());
+		Assert.assertTrue(stmts.get(0) instanceof ReturnStmt);
+		Assert.assertEquals(5, statistics.getFoldedConditions());
+		Assert.assertEquals(0, statistics.getEmptyIfRemovals());
+	}
+
+	@Test
+	public void testConstantFieldsTakeTheirDeclaredType() throws Exception {
+		String code = "public class Foo { private static final long L = 1; private static final long A = 2147483647; "
+				+ "private static final double D = 1; public int bar(int x) { if ((L << 32) == 1) { x++; } "
+				+ "if (A + 1 > 0) { x--; } if (D / 2 == 0) { x = 0; } return x; } }";
+		CompilationUnit cu = compile(code);
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		CleanerStatistics statistics = new CleanerStatistics();
+		visitor.setStatistics(statistics);
+		visitor.setFoldConstantConditions(true);
+		cu.accept(visitor, null);
+		List<BodyDeclaration> members = cu.getTypes().get(0).getMembers();
+		Assert.assertEquals(2, members.size());
+		List<Statement> stmts = ((MethodDeclaration) members.get(1)).getBody().getStmts();
+		Assert.assertEquals(3, stmts.size());
+		Assert.assertEquals("x--;", ((BlockStmt) stmts.get(0)).getStmts().get(0).toString().trim());
+		Assert.assertTrue(stmts.get(1) instanceof IfStmt);
+		Assert.assertEquals(2, statistics.getFoldedConditions());
+	}
+
+	@Test
+	public void testRemoveWriteOnlyFields() throws Exception {
+		String code = "public class Foo { private int hits; private long last; private volatile int state; "
+				+ "private String name; public Foo(long t) { this.hits = 0; last = t; state = 1; name = null; } "
+				+ "public String getName() { return name; } }";
+		CompilationUnit cu = compile(code);
+		CleanDeadDeclarationsVisitor<Object> visitor = new CleanDeadDeclarationsVisitor<Object>();
+		cu.accept(visitor, null);
+		Assert.assertEquals(6, cu.getTypes().get(0).getMembers().size());
+
+		cu = compile(code);
+		CleanerStatistics statistics = new CleanerStatistics();
+		visitor.setStatistics(statistics);
+		visitor.setRemoveWriteOnlyFields(true);
+		cu.accept(visitor, null);
+		List<BodyDeclaration> members = cu.getTypes().get(0).getMembers();
+		Assert.assertEquals(4, members.size());
+		Assert.assertEquals(2, ((ConstructorDeclaration) members.get(2)).getBlock().getStmts().size());
+		Assert.assertEquals(12, statistics.getSavedInstanceBytes());
+
+		cu = compile(code);
+		List<Object> content = new LinkedList<Object>();
+		content.add("Foo#hits");
+		visitor.setExcludedFields(new JSONArray(content));
+		cu.accept(visitor, null);
+		members = cu.getTypes().get(0).getMembers();
+		Assert.assertEquals(5, members.size());
+		Assert.assertEquals(3, ((ConstructorDeclaration) members.get(3)).getBlock().getStmts().size());
+
+		// the writes that also increment or assign another variable are kept
+		code = "public class Foo { private static int nextId; private int id; private int x; private int y; "
+				+ "public Foo() { this.id = nextId++; this.x = y = 0; } }";
+		cu = compile(code);
+		cu.accept(visitor, null);
+		members = cu.getTypes().get(0).getMembers();
+		Assert.assertEquals(5, members.size());
+		Assert.assertEquals(2, ((ConstructorDeclaration) members.get(4)).getBlock().getStmts().size());
+	}
+
+	@Test
+	public void testImportsWithoutSemanticAnalysis() throws Exception {
+		String code = "import java.util.List; import java.util.Map; import java.util.Set; import java.io.File; "
+				+ "import java.util.concurrent.*; import static java.util.Collections.emptyList; "
+				+ "import static java.util.Collections.sort; "
+				+ "/** Uses {@link Set#add(Object)} and {@link #foo(File)}. */ "
+				+ "public class Foo { public List<String> foo(java.io.File f) { return emptyList(); } }";
+		CompilationUnit cu = ASTManager.parse(code);
+		ImportCleaner cleaner = new ImportCleaner();
+		Assert.assertTrue(cleaner.hasAmbiguousImports(cu));
+		Assert.assertEquals(2, cleaner.clean(cu));
+		List<String> kept = new LinkedList<String>();
+		for (ImportDeclaration id : cu.getImports()) {
+			kept.add(id.getName().getName());
+		}
+		Assert.assertEquals(Arrays.asList("List", "Set", "File", "concurrent", "emptyList"), kept);
+	}
+
+	@Test
+	public void testImportsOfPackageAnnotations() throws Exception {
+		String code = "@XmlSchema(namespace = \"urn:foo\") package foo; "
+				+ "import javax.xml.bind.annotation.XmlSchema; import java.util.List;";
+		CompilationUnit cu = ASTManager.parse(code);
+		Assert.assertEquals(1, new ImportCleaner().clean(cu));
+		Assert.assertEquals("XmlSchema", cu.getImports().get(0).getName().getName());
+	}
+
+	@Test
+	public void testRemovedSubtreesAreReleased() throws Exception {
+		String code = "public class Foo { private int a = 1; private int b; "
+				+ "private void unused() { b = helper(a); } private int helper(int x) { return x; } "
+				+ "public void bar() { } }";
+		CompilationUnit cu = compile(code);
+		List<BodyDeclaration> members = cu.getTypes().get(0).getMembers();
+		List<WeakReference<BodyDeclaration>> removed = new LinkedList<WeakReference<BodyDeclaration>>();
+		for (BodyDeclaration member : members.subList(0, 4)) {
+			Assert.assertTrue(member instanceof FieldDeclaration || member instanceof MethodDeclaration);
+			removed.add(new WeakReference<BodyDeclaration>(member));
+		}
+		members = null;
+		cu.accept(new CleanDeadDeclarationsVisitor<Object>(), null);
+		Assert.assertEquals(1, cu.getTypes().get(0).getMembers().size());
+		for (int i = 0; i < 10 && !isCollected(removed); i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		Assert.assertTrue(isCollected(removed));
+		Assert.assertEquals("bar", ((MethodDeclaration) cu.getTypes().get(0).getMembers().get(0)).getName());
+	}
+
+	private static boolean isCollected(List<WeakReference<BodyDeclaration>> refs) {
+		for (WeakReference<BodyDeclaration> ref : refs) {
+			if (ref.get() != null) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
@@ -0,0 +1,256 @@
+/*
+ Copyright (C) 2015 Raquel Pau and Albert Coroleu.
+
+Walkmod is free software: you can redistribute it and/or modify
+it under the terms of the GNU Lesser General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+Walkmod is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU Lesser General Public License for more details.
+
+You should have received a copy of the GNU Lesser General Public License
+along with Walkmod.  If not, see <http://www.gnu.org/licenses/>.*/
+package org.walkmod.deadcodecleaner.visitors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded generator of compilable sources to stress the cleaner. It generates
+ * the class <code>corpus.Foo</code>, whose public methods are the roots of the
+ * live code, and the class <code>corpus.lib.Lib</code>, whose nested classes
+ * are imported by <code>Foo</code>. The same seed and settings always generate
+ * the same sources.
+ */
+public class CorpusGenerator {
+
+	private int members = 100;
+
+	private int deadPercentage = 50;
+
+	private int cascadeDepth = 5;
+
+	private int cycles = 0;
+
+	private int nestedTypes = 0;
+
+	private int localTypes = 0;
+
+	private int imports = 0;
+
+	private int expectedMembers;
+
+	private int expectedImports;
+
+	public int getMembers() {
+		return members;
+	}
+
+	/**
+	 * Private fields and methods of <code>Foo</code>, besides the public roots,
+	 * the cycles and the nested types.
+	 */
+	public void setMembers(int members) {
+		this.members = members;
+	}
+
+	public int getDeadPercentage() {
+		return deadPercentage;
+	}
+
+	/**
+	 * Percentage of the members, nested types and imports that are not
+	 * reachable from the public methods.
+	 */
+	public void setDeadPercentage(int deadPercentage) {
+		this.deadPercentage = deadPercentage;
+	}
+
+	public int getCascadeDepth() {
+		return cascadeDepth;
+	}
+
+	/**
+	 * Length of the call chains between dead methods. Only the head of each
+	 * chain is unused before the cleaner starts.
+	 */
+	public void setCascadeDepth(int cascadeDepth) {
+		this.cascadeDepth = cascadeDepth;
+	}
+
+	public int getCycles() {
+		return cycles;
+	}
+
+	/**
+	 * Pairs of dead private methods that call each other.
+	 */
+	public void setCycles(int cycles) {
+		this.cycles = cycles;
+	}
+
+	public int getNestedTypes() {
+		return nestedTypes;
+	}
+
+	public void setNestedTypes(int nestedTypes) {
+		this.nestedTypes = nestedTypes;
+	}
+
+	public int getLocalTypes() {
+		return localTypes;
+	}
+
+	/**
+	 * Unused local classes declared inside the public methods.
+	 */
+	public void setLocalTypes(int localTypes) {
+		this.localTypes = localTypes;
+	}
+
+	public int getImports() {
+		return imports;
+	}
+
+	public void setImports(int imports) {
+		this.imports = imports;
+	}
+
+	/**
+	 * Copy with all the counts multiplied by the given factor.
+	 */
+	public CorpusGenerator scale(int factor) {
+		CorpusGenerator copy = new CorpusGenerator();
+		copy.setMembers(members * factor);
+		copy.setDeadPercentage(deadPercentage);
+		copy.setCascadeDepth(cascadeDepth);
+		copy.setCycles(cycles * factor);
+		copy.setNestedTypes(nestedTypes * factor);
+		copy.setLocalTypes(localTypes * factor);
+		copy.setImports(imports * factor);
+		return copy;
+	}
+
+	/**
+	 * Members of <code>Foo</code> that the cleaner must keep for the last
+	 * generated sources.
+	 */
+	public int getExpectedMembers() {
+		return expectedMembers;
+	}
+
+	/**
+	 * Imports of <code>Foo</code> that the cleaner must keep for the last
+	 * generated sources.
+	 */
+	public int getExpectedImports() {
+		return expectedImports;
+	}
+
+	/**
+	 * @return the source of <code>Foo</code> followed by the source of
+	 *         <code>Lib</code>
+	 */
+	public String[] generate(long seed) {
+		Random random = new Random(seed);
+		int liveMembers = members - dead(members);
+		int liveTypes = nestedTypes - dead(nestedTypes);
+		int liveImports = imports - dead(imports);
+		int roots = Math.max(1, liveMembers / 50);
+
+		List<StringBuilder> bodies = new ArrayList<StringBuilder>(roots);
+		for (int i = 0; i < roots; i++) {
+			bodies.add(new StringBuilder("int s = 0; "));
+		}
+		List<String> decls = new ArrayList<String>();
+
+		for (int i = 0; i < liveMembers; i++) {
+			StringBuilder body = bodies.get(random.nextInt(roots));
+			if (random.nextBoolean()) {
+				decls.add("private int f" + i + " = " + i + "; ");
+				body.append("s += f").append(i).append("; ");
+			} else {
+				decls.add("private int p" + i + "(int x) { return x + " + i + "; } ");
+				body.append("s += p").append(i).append("(s); ");
+			}
+		}
+
+		int deadMembers = members - liveMembers;
+		int deadFields = deadMembers / 3;
+		int deadMethods = deadMembers - deadFields;
+		int depth = Math.max(cascadeDepth, 1);
+		for (int i = 0; i < deadFields; i++) {
+			decls.add("private int d" + i + "; ");
+		}
+		for (int i = 0; i < deadMethods; i++) {
+			StringBuilder method = new StringBuilder("private int q").append(i).append("() { return ");
+			if ((i + 1) % depth != 0 && i + 1 < deadMethods) {
+				method.append('q').append(i + 1).append("()");
+			} else if (deadFields > 0) {
+				method.append('d').append(random.nextInt(deadFields));
+			} else {
+				method.append('0');
+			}
+			decls.add(method.append("; } ").toString());
+		}
+
+		for (int i = 0; i < cycles; i++) {
+			decls.add("private int a" + i + "(int x) { return x > 0 ? b" + i + "(x - 1) : 0; } ");
+			decls.add("private int b" + i + "(int x) { return x > 0 ? a" + i + "(x - 1) : 0; } ");
+		}
+
+		for (int i = 0; i < nestedTypes; i++) {
+			decls.add("private static class N" + i + " { int v = " + i + "; } ");
+			if (i < liveTypes) {
+				bodies.get(random.nextInt(roots)).append("s += new N").append(i).append("().v; ");
+			}
+		}
+
+		for (int i = 0; i < localTypes; i++) {
+			bodies.get(random.nextInt(roots)).append("class L").append(i).append(" { } ");
+		}
+
+		for (int i = 0; i < liveImports; i++) {
+			bodies.get(random.nextInt(roots)).append("s += new T").append(i).append("().hashCode(); ");
+		}
+
+		Collections.shuffle(decls, random);
+
+		StringBuilder foo = new StringBuilder("package corpus; ");
+		List<String> importDecls = new ArrayList<String>(imports);
+		for (int i = 0; i < imports; i++) {
+			importDecls.add("import corpus.lib.Lib.T" + i + "; ");
+		}
+		Collections.shuffle(importDecls, random);
+		for (String importDecl : importDecls) {
+			foo.append(importDecl);
+		}
+		foo.append("public class Foo { ");
+		for (int i = 0; i < roots; i++) {
+			foo.append("public int r").append(i).append("() { ").append(bodies.get(i)).append("return s; } ");
+		}
+		for (String decl : decls) {
+			foo.append(decl);
+		}
+		foo.append("}");
+
+		StringBuilder lib = new StringBuilder("package corpus.lib; public class Lib { ");
+		for (int i = 0; i < imports; i++) {
+			lib.append("public static class T").append(i).append(" { } ");
+		}
+		lib.append("}");
+
+		expectedMembers = roots + liveMembers + liveTypes;
+		expectedImports = liveImports;
+		return new String[] { foo.toString(), lib.toString() };
+	}
+
+	private int dead(int count) {
+		return count * deadPercentage / 100;
+	}
+}